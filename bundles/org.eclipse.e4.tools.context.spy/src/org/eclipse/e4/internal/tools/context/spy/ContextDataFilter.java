@@ -12,8 +12,9 @@ package org.eclipse.e4.internal.tools.context.spy;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Map;
+import java.util.Collections;
 import java.util.Set;
+import java.util.WeakHashMap;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -34,8 +35,15 @@ public class ContextDataFilter extends ViewerFilter {
 	@Inject
 	Logger log;
 
+	@Inject
+	private ContextSearchIndex searchIndex;
+
 	private String pattern;
 
+	/** The contexts found by the last search, they are highlighted */
+	private final Set<IEclipseContext> matchingContexts = Collections
+			.newSetFromMap(new WeakHashMap<IEclipseContext, Boolean>());
+
 	// Implements the filter for the data table content
 	@Override
 	public boolean select(Viewer viewer, Object parentElement, Object element) {
@@ -77,86 +85,50 @@ public class ContextDataFilter extends ViewerFilter {
 
 	/**
 	 * This method search for an object and check if it contains the text or a
-	 * pattern matching this text
+	 * pattern matching this text. The texts of the contexts are kept by the
+	 * search index until the contexts change.
 	 */
+	@SuppressWarnings("restriction")
 	public boolean containsText(IEclipseContext ctx) {
-		// It is useless to store the values in a map, because context changes
-		// everytime and it should be tracked.
-		Collection<String> values = computeValues(ctx);
-
-		// Search if string is just in one of the values... manage ignore case
-		// and contain...
-		boolean found = false;
-		for (String s : values) {
-			if (matchText(s)) {
-				found = true;
-				break;
-			}
+		if (pattern == null)
+			return false;
+		if (!(ctx instanceof EclipseContext)) {
+			log.warn("Warning : the received EclipseContext has not the expected type. It is a : "
+					+ ctx.getClass().toString());
+			return false;
 		}
-		return found;
+		return searchIndex.containsText((EclipseContext) ctx, pattern);
 	}
 
-	public boolean matchText(String text) {
-		return ((text == null) || (pattern == null)) ? false : text.toLowerCase().contains(pattern);
+	/** @return the lowercase pattern, null if there is nothing to search */
+	public String getPattern() {
+		return pattern;
 	}
 
-	/**
-	 * Extract all string values in context
-	 *
-	 * @param ctx
-	 * @return
-	 */
-	@SuppressWarnings("restriction")
-	private Collection<String> computeValues(IEclipseContext ctx) {
-		Collection<String> result = new ArrayList<String>();
-		if (ctx instanceof EclipseContext) {
-			// Search for all strings in this context (values and context
-			// function)
-
-			EclipseContext currentContext = (EclipseContext) ctx;
-			extractStringsFromMap(currentContext.localData(), result);
-
-			// Search also in context functions
-			extractStringsFromMap(currentContext.localContextFunction(), result);
-
-			// Search for the inherited values injected using this context but
-			// defined in
-			// parent
-			// Keep only the names that are not already displayed in local
-			// values
-			Collection<String> localKeys = currentContext.localData().keySet();
-			Collection<String> localContextFunctionsKeys = currentContext.localContextFunction().keySet();
-
-			if (currentContext.getRawListenerNames() != null) {
-				for (String name : currentContext.getRawListenerNames()) {
-					if (!localKeys.contains(name) && !localContextFunctionsKeys.contains(name))
-						result.add(name);
-				}
-			}
-
-		} else {
-			log.warn("Warning : the received EclipseContext has not the expected type. It is a : "
-					+ ctx.getClass().toString());
-		}
+	public boolean isMatching(IEclipseContext ctx) {
+		return matchingContexts.contains(ctx);
+	}
 
-		return result;
+	public void addMatchingContexts(Collection<IEclipseContext> contexts) {
+		matchingContexts.addAll(contexts);
 	}
 
-	/**
-	 *
-	 * @param map
-	 *            the map to extract the strings (keys and values)
-	 * @param result
-	 *            the result to fill with strings
-	 */
-	private void extractStringsFromMap(Map<String, Object> map, Collection<String> result) {
-		for (Map.Entry<String, Object> entry : map.entrySet()) {
-			result.add(entry.getKey().toString());
-			Object value = entry.getValue();
-			if (value != null) {
-				result.add(value.toString());
-			}
-		}
+	/** @return a copy of the contexts found by the last search */
+	public Collection<IEclipseContext> getMatchingContexts() {
+		return new ArrayList<IEclipseContext>(matchingContexts);
+	}
+
+	public void clearMatchingContexts() {
+		matchingContexts.clear();
+	}
+
+	/** Forget the texts of the contexts, to see the values changed in place */
+	public void resetSearchIndex() {
+		searchIndex.clear();
+	}
+
+	public boolean matchText(String text) {
+		return ((text == null) || (pattern == null)) ? false : text.toLowerCase().contains(pattern);
 	}
 
 }
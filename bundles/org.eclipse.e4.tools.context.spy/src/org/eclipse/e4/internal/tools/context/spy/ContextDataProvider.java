@@ -12,7 +12,7 @@ package org.eclipse.e4.internal.tools.context.spy;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
@@ -53,6 +53,7 @@ public class ContextDataProvider extends ColumnLabelProvider implements ITreeCon
 	static final String INHERITED_INJECTED_VALUE_NODE = "Inherited values injected or updated using this context";
 
 	private static final String NO_VALUES_FOUND = "No values found";
+	private static final String COMPUTED_VALUE = "%s   (computed in %.1f ms)";
 	private static final String UPDATED_IN_CLASS = "Updated in class :";
 	private static final String INJECTED_IN_FIELD = "Injected in field :";
 	private static final String INJECTED_IN_METHOD = "Injected in method :";
@@ -71,6 +72,9 @@ public class ContextDataProvider extends ColumnLabelProvider implements ITreeCon
 	@Inject
 	private ContextDataFilter contextFilter;
 
+	@Inject
+	private ContextFunctionValueCache functionValueCache;
+
 	/** Store the selected context (initialized in inputChanged) */
 	@SuppressWarnings("restriction")
 	private static EclipseContext selectedContext;
@@ -115,15 +119,10 @@ public class ContextDataProvider extends ColumnLabelProvider implements ITreeCon
 			result.addAll(selectedContext.localData().entrySet());
 
 			// For context function, we have to compute the value (if possible),
-			// and display it as a standard value
-			Map<String, Object> cfValues = new HashMap<String, Object>();
+			// and display it as a standard value. The values are cached until
+			// the context changes
 			for (String key : selectedContext.localContextFunction().keySet())
-				try {
-					cfValues.put(key, selectedContext.get(key));
-				} catch (Exception e) {
-					cfValues.put(key, NO_VALUE_COULD_BE_COMPUTED + " (Exception : " + e.getClass().getName() + ")");
-				}
-			result.addAll(cfValues.entrySet());
+				result.add(functionValueCache.getValue(selectedContext, key));
 			return result.toArray();
 
 		} else if (inputElement == INHERITED_INJECTED_VALUE_NODE) {
@@ -150,7 +149,8 @@ public class ContextDataProvider extends ColumnLabelProvider implements ITreeCon
 		} else if (inputElement instanceof String) {
 			// This is the name of a raw listener in the inherited injected
 			// value part
-			return selectedContext.getListeners((String) inputElement).toArray();
+			Set<Computation> listeners = getListeners(inputElement);
+			return (listeners == null) ? EMPTY_RESULT : listeners.toArray();
 		}
 
 		return EMPTY_RESULT;
@@ -166,7 +166,13 @@ public class ContextDataProvider extends ColumnLabelProvider implements ITreeCon
 		if (selectedContext == null)
 			return null;
 
-		if (element instanceof Map.Entry) {
+		if (element instanceof ContextFunctionValue && !displayKey) {
+			ContextFunctionValue functionValue = (ContextFunctionValue) element;
+			if (functionValue.getException() != null)
+				return NO_VALUE_COULD_BE_COMPUTED + " (Exception : "
+						+ functionValue.getException().getClass().getName() + ")";
+			return String.format(COMPUTED_VALUE, functionValue.getValue(), functionValue.getComputationMillis());
+		} else if (element instanceof Map.Entry) {
 			Map.Entry<String, Object> mapEntry = (Map.Entry<String, Object>) element;
 			Object o = displayKey ? mapEntry.getKey() : mapEntry.getValue();
 			return (o == null) ? "null" : o.toString();
@@ -260,8 +266,14 @@ public class ContextDataProvider extends ColumnLabelProvider implements ITreeCon
 		} else if (isAContextKeyFunction(element)) {
 			String key = (String) ((Map.Entry<?, ?>) element).getKey();
 			String fname = selectedContext.localContextFunction().get(key).getClass().getCanonicalName();
-
-			return "This value is created by the Context Function : " + fname;
+			String tooltip = "This value is created by the Context Function : " + fname;
+			if (element instanceof ContextFunctionValue) {
+				ContextFunctionValue functionValue = (ContextFunctionValue) element;
+				tooltip += String.format("\n\nComputed in %.3f ms", functionValue.getComputationMillis());
+				if (functionValue.getException() != null)
+					tooltip += "\n\nThe computation has thrown : " + functionValue.getException();
+			}
+			return tooltip;
 		} else {
 			if (hasChildren(element))
 				return "Expand this node to see where this value is injected or updated";
@@ -331,18 +343,34 @@ public class ContextDataProvider extends ColumnLabelProvider implements ITreeCon
 				// Ask the context to know if there are listeners for this value
 				Map.Entry<String, Object> mapEntry = (Map.Entry<String, Object>) element;
 				String key = mapEntry.getKey();
-				return selectedContext.getListeners(key);
+				return withoutCacheTrackers(selectedContext.getListeners(key));
 
 			} else if (element instanceof String) {
 				// Ask the context to know if there are listeners for this raw
 				// listener name
-				return selectedContext.getListeners((String) element);
+				return withoutCacheTrackers(selectedContext.getListeners((String) element));
 			}
 		}
 		return null;
 
 	}
 
+	/** The spy must not display the trackers of its own cache */
+	@SuppressWarnings("restriction")
+	private Set<Computation> withoutCacheTrackers(Set<Computation> listeners) {
+		if (listeners == null)
+			return null;
+		Set<Computation> result = null;
+		for (Computation listener : listeners) {
+			if (ContextFunctionValueCache.isCacheTracker(listener)) {
+				if (result == null)
+					result = new HashSet<Computation>(listeners);
+				result.remove(listener);
+			}
+		}
+		return result == null ? listeners : result;
+	}
+
 	private void initializeImageRegistry() {
 		Bundle b = FrameworkUtil.getBundle(this.getClass());
 		imgReg = new ImageRegistry();
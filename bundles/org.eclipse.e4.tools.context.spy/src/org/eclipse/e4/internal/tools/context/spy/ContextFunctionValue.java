@@ -0,0 +1,70 @@
+/*******************************************************************************
+ * Copyright (c) 2014 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.context.spy;
+
+import java.util.Map;
+
+/**
+ * The value computed by a context function, with the time taken to compute it
+ * and the exception thrown if any. It is displayed as the other local values
+ * of the context.
+ *
+ * @see ContextFunctionValueCache
+ */
+public class ContextFunctionValue implements Map.Entry<String, Object> {
+
+	private final String key;
+	private final Object value;
+	private final long computationNanos;
+	private final Exception exception;
+
+	public ContextFunctionValue(String key, Object value, long computationNanos, Exception exception) {
+		this.key = key;
+		this.value = value;
+		this.computationNanos = computationNanos;
+		this.exception = exception;
+	}
+
+	@Override
+	public String getKey() {
+		return key;
+	}
+
+	/** @return the computed value, null if an exception has been thrown */
+	@Override
+	public Object getValue() {
+		return value;
+	}
+
+	@Override
+	public Object setValue(Object value) {
+		throw new UnsupportedOperationException("The value of a context function can not be set");
+	}
+
+	public long getComputationNanos() {
+		return computationNanos;
+	}
+
+	/** @return the computation time in milliseconds */
+	public double getComputationMillis() {
+		return computationNanos / 1000000.0;
+	}
+
+	/** @return the exception thrown by the computation or null */
+	public Exception getException() {
+		return exception;
+	}
+
+	@Override
+	public String toString() {
+		return key + "=" + value;
+	}
+}
@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * Copyright (c) 2014 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.context.spy;
+
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import javax.inject.Singleton;
+
+import org.eclipse.e4.core.contexts.IEclipseContext;
+import org.eclipse.e4.core.contexts.RunAndTrack;
+import org.eclipse.e4.core.di.annotations.Creatable;
+import org.eclipse.e4.core.internal.contexts.Computation;
+import org.eclipse.e4.core.internal.contexts.EclipseContext;
+import org.eclipse.e4.core.internal.contexts.IContextDisposalListener;
+import org.eclipse.e4.core.internal.contexts.TrackableComputationExt;
+
+/**
+ * Keeps the values computed by the context functions, so the spy does not call
+ * them again (and create services, inject objects or throw exceptions) each
+ * time the data tree is refreshed.
+ *
+ * Each value is computed in a RunAndTrack, which is notified by the context
+ * when the value of the key or one of the values used by the function changes.
+ * The cached value is then removed, it is computed again when it is displayed.
+ * These trackers are listeners of the context, they are hidden by the data
+ * provider (see {@link #isCacheTracker(Computation)}).
+ */
+@Creatable
+@Singleton
+@SuppressWarnings("restriction")
+public class ContextFunctionValueCache {
+
+	private static final String TRACKER_NAME = "Context spy tracker of the context function value";
+
+	/** The runnable of a tracking computation, null when it cannot be read */
+	private static final Field trackedRunnableField = getRunnableField();
+
+	private final Map<EclipseContext, Map<String, ValueTracker>> trackers = new WeakHashMap<EclipseContext, Map<String, ValueTracker>>();
+
+	private final IContextDisposalListener disposalListener = new IContextDisposalListener() {
+		@Override
+		public void disposed(IEclipseContext context) {
+			synchronized (ContextFunctionValueCache.this) {
+				trackers.remove(context);
+			}
+		}
+	};
+
+	/**
+	 * @return the cached value of the context function, it is computed when it
+	 *         is not cached
+	 */
+	public ContextFunctionValue getValue(EclipseContext context, String key) {
+		synchronized (this) {
+			Map<String, ValueTracker> contextTrackers = trackers.get(context);
+			ValueTracker tracker = contextTrackers != null ? contextTrackers.get(key) : null;
+			if (tracker != null && tracker.value != null) {
+				return tracker.value;
+			}
+		}
+
+		// The function is called outside of the lock, it can wait for other
+		// threads modifying the contexts
+		ValueTracker tracker = new ValueTracker(key);
+		context.runAndTrack(tracker);
+
+		synchronized (this) {
+			if (tracker.valid) {
+				Map<String, ValueTracker> contextTrackers = trackers.get(context);
+				if (contextTrackers == null) {
+					contextTrackers = new HashMap<String, ValueTracker>();
+					trackers.put(context, contextTrackers);
+					context.notifyOnDisposal(disposalListener);
+				}
+				contextTrackers.put(key, tracker);
+			}
+		}
+		return tracker.value;
+	}
+
+	/** @return true if the computation runs a tracker of this cache */
+	public static boolean isCacheTracker(Computation computation) {
+		if (trackedRunnableField == null || !(computation instanceof TrackableComputationExt))
+			return false;
+		try {
+			return trackedRunnableField.get(computation) instanceof ValueTracker;
+		} catch (IllegalAccessException e) {
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	private static Field getRunnableField() {
+		try {
+			Field f = TrackableComputationExt.class.getDeclaredField("runnable");
+			f.setAccessible(true);
+			return f;
+		} catch (SecurityException e) {
+			e.printStackTrace();
+		} catch (NoSuchFieldException e) {
+			e.printStackTrace();
+		}
+		return null;
+	}
+
+	private synchronized void invalidate(IEclipseContext context, ValueTracker tracker) {
+		Map<String, ValueTracker> contextTrackers = trackers.get(context);
+		if (contextTrackers != null && contextTrackers.get(tracker.key) == tracker) {
+			contextTrackers.remove(tracker.key);
+		}
+	}
+
+	private class ValueTracker extends RunAndTrack {
+		private final String key;
+
+		private ContextFunctionValue value;
+
+		private volatile boolean valid = true;
+
+		ValueTracker(String key) {
+			this.key = key;
+		}
+
+		@Override
+		public boolean changed(IEclipseContext context) {
+			if (value == null) {
+				value = compute(context);
+				return true;
+			}
+			// A value used to compute the cached one has changed
+			valid = false;
+			invalidate(context, this);
+			return false;
+		}
+
+		private ContextFunctionValue compute(IEclipseContext context) {
+			long start = System.nanoTime();
+			try {
+				Object result = context.get(key);
+				return new ContextFunctionValue(key, result, System.nanoTime() - start, null);
+			} catch (Exception e) {
+				return new ContextFunctionValue(key, null, System.nanoTime() - start, e);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return TRACKER_NAME;
+		}
+	}
+}
@@ -0,0 +1,604 @@
+/*******************************************************************************
+ * Copyright (c) 2014 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.context.spy;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Stack;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.eclipse.e4.core.contexts.IEclipseContext;
+import org.eclipse.e4.core.contexts.RunAndTrack;
+import org.eclipse.e4.core.di.annotations.Creatable;
+import org.eclipse.e4.core.internal.contexts.Computation;
+import org.eclipse.e4.core.internal.contexts.ContextObjectSupplier.ContextInjectionListener;
+import org.eclipse.e4.core.internal.contexts.EclipseContext;
+import org.eclipse.e4.core.internal.contexts.TrackableComputationExt;
+import org.eclipse.e4.core.internal.contexts.ValueComputation;
+import org.eclipse.e4.core.services.log.Logger;
+
+/**
+ * Profiles the lookups done in the contexts and the injections they trigger.
+ * For each context and key, it counts the lookups, the lookups answered by the
+ * values already computed in the context (cache hits) and the parent contexts
+ * walked by the other ones. It also counts the calls of the context functions
+ * and the recomputations of the injected objects, with the time spent in them.
+ *
+ * EclipseContext has no hook for this. The first time a context is profiled,
+ * its tables of the local values and of the computed values are wrapped by
+ * counting tables, and the stack of the running computations is replaced by a
+ * stack measuring the time spent in each computation. The counting tables
+ * forward to the original ones, so a thread still holding a table of either
+ * kind does not lose its changes. The original tables and stack are put back
+ * when the profiling is stopped, each thread keeps its stack of computations.
+ * These classes use internal fields of EclipseContext, they should be updated
+ * if its internal structure changes.
+ *
+ * The lookups are counted when the computed values table is read, so the
+ * invalidation of a computed value is also counted as a cache hit.
+ */
+@Creatable
+@Singleton
+@SuppressWarnings("restriction")
+public class ContextInjectionProfiler {
+
+	private static Field localValuesField;
+	private static Field localValueComputationsField;
+	private static Field currentComputationField;
+	private static Field valueNameField;
+	private static Field valueContextField;
+	private static Field trackedRunnableField;
+	private static Field trackedContextField;
+
+	/** The profiler notified by the computation stacks, null when stopped */
+	private static volatile ContextInjectionProfiler activeProfiler;
+
+	/** The lookup being resolved by each thread */
+	private static final ThreadLocal<Lookup> currentLookup = new ThreadLocal<Lookup>() {
+		@Override
+		protected Lookup initialValue() {
+			return new Lookup();
+		}
+	};
+
+	@Inject
+	Logger log;
+
+	private final Map<EclipseContext, ContextProfile> profiles = new WeakHashMap<EclipseContext, ContextProfile>();
+
+	private long startTime;
+
+	private long profiledNanos;
+
+	/**
+	 * Start to profile the contexts of the hierarchy
+	 *
+	 * @param roots
+	 *            the root contexts of the hierarchy
+	 */
+	public void start(Collection<IEclipseContext> roots) {
+		synchronized (this) {
+			if (activeProfiler == this)
+				return;
+			if (!initFields())
+				return;
+			installComputationStack();
+			startTime = System.nanoTime();
+			activeProfiler = this;
+		}
+		instrument(roots);
+	}
+
+	/**
+	 * Stop profiling, the original tables of the profiled contexts and the
+	 * original computation stack are put back. The collected statistics are
+	 * kept.
+	 */
+	public synchronized void stop() {
+		if (activeProfiler != this)
+			return;
+		activeProfiler = null;
+		profiledNanos += System.nanoTime() - startTime;
+		for (Map.Entry<EclipseContext, ContextProfile> entry : profiles.entrySet()) {
+			if (entry.getValue().instrumented)
+				unwrapTables(entry.getKey(), entry.getValue());
+		}
+		restoreComputationStack();
+	}
+
+	public boolean isProfiling() {
+		return activeProfiler == this;
+	}
+
+	/** Forget the collected statistics */
+	public synchronized void reset() {
+		for (ContextProfile profile : profiles.values()) {
+			profile.statistics.clear();
+		}
+		profiledNanos = 0;
+		startTime = System.nanoTime();
+	}
+
+	/** @return the time spent profiling since the last reset, in milliseconds */
+	public synchronized long getProfiledMillis() {
+		long nanos = profiledNanos;
+		if (activeProfiler == this)
+			nanos += System.nanoTime() - startTime;
+		return nanos / 1000000;
+	}
+
+	/**
+	 * Profile the contexts of the hierarchy which are not profiled yet, for
+	 * instance the contexts created since the profiling has been started.
+	 *
+	 * @param roots
+	 *            the root contexts of the hierarchy
+	 */
+	public void instrument(Collection<IEclipseContext> roots) {
+		if (activeProfiler != this)
+			return;
+		List<EclipseContext> contexts = new ArrayList<EclipseContext>();
+		for (IEclipseContext root : roots) {
+			collectContexts((EclipseContext) root, contexts);
+		}
+		synchronized (this) {
+			for (EclipseContext context : contexts) {
+				ContextProfile profile = getProfile(context);
+				if (!profile.instrumented)
+					wrapTables(context, profile);
+			}
+		}
+	}
+
+	private void collectContexts(EclipseContext context, List<EclipseContext> contexts) {
+		contexts.add(context);
+		for (EclipseContext child : context.getChildren()) {
+			collectContexts(child, contexts);
+		}
+	}
+
+	/**
+	 * @return the statistics collected for each context and key, which have
+	 *         been looked up or computed
+	 */
+	public synchronized List<ContextProfileEntry> getEntries() {
+		List<ContextProfileEntry> result = new ArrayList<ContextProfileEntry>();
+		for (Map.Entry<EclipseContext, ContextProfile> entry : profiles.entrySet()) {
+			String contextName = entry.getKey().toString();
+			for (Map.Entry<String, KeyStatistics> keyEntry : entry.getValue().statistics.entrySet()) {
+				KeyStatistics stats = keyEntry.getValue();
+				result.add(new ContextProfileEntry(contextName, keyEntry.getKey(), stats.lookups.get(),
+						stats.cacheHits.get(), stats.depth.get(), stats.functionCalls.get(), stats.functionNanos.get(),
+						stats.injections.get(), stats.injectionNanos.get()));
+			}
+		}
+		return result;
+	}
+
+	private synchronized ContextProfile getProfile(EclipseContext context) {
+		ContextProfile profile = profiles.get(context);
+		if (profile == null) {
+			profile = new ContextProfile();
+			profiles.put(context, profile);
+		}
+		return profile;
+	}
+
+	/** Called by the computation stacks when a computation is done */
+	private void computationDone(Computation computation, long nanos) {
+		try {
+			if (computation instanceof ValueComputation) {
+				EclipseContext context = (EclipseContext) valueContextField.get(computation);
+				String key = (String) valueNameField.get(computation);
+				KeyStatistics stats = getProfile(context).getStatistics(key);
+				stats.functionCalls.incrementAndGet();
+				stats.functionNanos.addAndGet(nanos);
+			} else if (computation instanceof TrackableComputationExt) {
+				RunAndTrack runnable = (RunAndTrack) trackedRunnableField.get(computation);
+				if (runnable instanceof ContextInjectionListener) {
+					EclipseContext context = (EclipseContext) trackedContextField.get(computation);
+					KeyStatistics stats = getProfile(context).getStatistics("@Inject " + runnable);
+					stats.injections.incrementAndGet();
+					stats.injectionNanos.addAndGet(nanos);
+				}
+			}
+		} catch (IllegalAccessException e) {
+			log.error(e, "Cannot read the computation " + computation);
+		}
+	}
+
+	/**
+	 * Wrap the tables of the context, the original synchronized tables keep
+	 * holding the values: nothing is copied.
+	 */
+	private void wrapTables(EclipseContext context, ContextProfile profile) {
+		try {
+			Map<String, Object> values = getTable(localValuesField, context);
+			if (!(values instanceof ProfiledValues))
+				localValuesField.set(context, new ProfiledValues(values, profile));
+			Map<String, ValueComputation> computations = getTable(localValueComputationsField, context);
+			if (!(computations instanceof ProfiledComputations))
+				localValueComputationsField.set(context, new ProfiledComputations(computations, profile));
+			profile.instrumented = true;
+		} catch (IllegalAccessException e) {
+			log.error(e, "Cannot profile the context " + context);
+		}
+	}
+
+	/** Put back the original tables of the context, nothing is copied */
+	private void unwrapTables(EclipseContext context, ContextProfile profile) {
+		try {
+			Map<String, Object> values = getTable(localValuesField, context);
+			if (values instanceof ProfiledValues)
+				localValuesField.set(context, ((ProfiledValues) values).table);
+			Map<String, ValueComputation> computations = getTable(localValueComputationsField, context);
+			if (computations instanceof ProfiledComputations)
+				localValueComputationsField.set(context, ((ProfiledComputations) computations).table);
+			profile.instrumented = false;
+		} catch (IllegalAccessException e) {
+			log.error(e, "Cannot stop profiling the context " + context);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <V> Map<String, V> getTable(Field field, EclipseContext context) throws IllegalAccessException {
+		return (Map<String, V>) field.get(context);
+	}
+
+	/**
+	 * Replace the thread local stack of the running computations. The stack
+	 * created for a thread is also set in the original thread local, so the
+	 * threads in the middle of a computation keep the same stack when the
+	 * original thread local is put back. These stacks do not measure anything
+	 * when the profiling is stopped.
+	 */
+	@SuppressWarnings("unchecked")
+	private void installComputationStack() {
+		try {
+			ThreadLocal<Stack<Computation>> current = (ThreadLocal<Stack<Computation>>) currentComputationField
+					.get(null);
+			if (!(current instanceof ComputationStackLocal)) {
+				currentComputationField.set(null, new ComputationStackLocal(current));
+			}
+		} catch (IllegalAccessException e) {
+			log.error(e, "Cannot profile the computations");
+		}
+	}
+
+	/** Put back the original thread local stack of the running computations */
+	private void restoreComputationStack() {
+		try {
+			Object current = currentComputationField.get(null);
+			if (current instanceof ComputationStackLocal) {
+				currentComputationField.set(null, ((ComputationStackLocal) current).replaced);
+			}
+		} catch (IllegalAccessException e) {
+			log.error(e, "Cannot stop profiling the computations");
+		}
+	}
+
+	private synchronized boolean initFields() {
+		if (localValuesField != null)
+			return true;
+		try {
+			localValuesField = getField(EclipseContext.class, "localValues");
+			localValueComputationsField = getField(EclipseContext.class, "localValueComputations");
+			currentComputationField = getField(EclipseContext.class, "currentComputation");
+			valueNameField = getField(ValueComputation.class, "name");
+			valueContextField = getField(ValueComputation.class, "originatingContext");
+			trackedRunnableField = getField(TrackableComputationExt.class, "runnable");
+			trackedContextField = getField(TrackableComputationExt.class, "originatingContext");
+			return true;
+		} catch (SecurityException e) {
+			log.error(e, "Cannot access the internal fields of the contexts");
+		} catch (NoSuchFieldException e) {
+			log.error(e, "The internal structure of the contexts has changed");
+		}
+		localValuesField = null;
+		return false;
+	}
+
+	private static Field getField(Class<?> clazz, String name) throws NoSuchFieldException {
+		Field f = clazz.getDeclaredField(name);
+		f.setAccessible(true);
+		return f;
+	}
+
+	/** The statistics of a context, it must not reference the context */
+	private static class ContextProfile {
+		private final ConcurrentMap<String, KeyStatistics> statistics = new ConcurrentHashMap<String, KeyStatistics>();
+
+		private boolean instrumented;
+
+		KeyStatistics getStatistics(String key) {
+			KeyStatistics stats = statistics.get(key);
+			if (stats == null) {
+				stats = new KeyStatistics();
+				KeyStatistics previous = statistics.putIfAbsent(key, stats);
+				if (previous != null)
+					stats = previous;
+			}
+			return stats;
+		}
+	}
+
+	private static class KeyStatistics {
+		private final AtomicLong lookups = new AtomicLong();
+		private final AtomicLong cacheHits = new AtomicLong();
+		private final AtomicLong depth = new AtomicLong();
+		private final AtomicLong functionCalls = new AtomicLong();
+		private final AtomicLong functionNanos = new AtomicLong();
+		private final AtomicLong injections = new AtomicLong();
+		private final AtomicLong injectionNanos = new AtomicLong();
+	}
+
+	/**
+	 * The lookup started in a context which has not computed the value yet. It
+	 * walks the parent contexts until one of them contains the key.
+	 */
+	private static class Lookup {
+		private ContextProfile profile;
+		private String key;
+		private int visited;
+
+		void start(ContextProfile profile, String key) {
+			this.profile = profile;
+			this.key = key;
+			visited = 0;
+		}
+
+		void end() {
+			profile = null;
+			key = null;
+		}
+	}
+
+	/**
+	 * A table forwarding to the original table of a context, which is
+	 * synchronized.
+	 */
+	private static abstract class ForwardingTable<V> implements Map<String, V> {
+		protected final Map<String, V> table;
+
+		ForwardingTable(Map<String, V> table) {
+			this.table = table;
+		}
+
+		@Override
+		public int size() {
+			return table.size();
+		}
+
+		@Override
+		public boolean isEmpty() {
+			return table.isEmpty();
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return table.containsKey(key);
+		}
+
+		@Override
+		public boolean containsValue(Object value) {
+			return table.containsValue(value);
+		}
+
+		@Override
+		public V get(Object key) {
+			return table.get(key);
+		}
+
+		@Override
+		public V put(String key, V value) {
+			return table.put(key, value);
+		}
+
+		@Override
+		public V remove(Object key) {
+			return table.remove(key);
+		}
+
+		@Override
+		public void putAll(Map<? extends String, ? extends V> m) {
+			table.putAll(m);
+		}
+
+		@Override
+		public void clear() {
+			table.clear();
+		}
+
+		@Override
+		public Set<String> keySet() {
+			return table.keySet();
+		}
+
+		@Override
+		public Collection<V> values() {
+			return table.values();
+		}
+
+		@Override
+		public Set<Map.Entry<String, V>> entrySet() {
+			return table.entrySet();
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o == this || table.equals(o);
+		}
+
+		@Override
+		public int hashCode() {
+			return table.hashCode();
+		}
+
+		@Override
+		public String toString() {
+			return table.toString();
+		}
+	}
+
+	/**
+	 * The computed values of a context. The lookups start with reading this
+	 * table, in the context where the value is looked up.
+	 */
+	private static class ProfiledComputations extends ForwardingTable<ValueComputation> {
+		private final ContextProfile profile;
+
+		ProfiledComputations(Map<String, ValueComputation> computations, ContextProfile profile) {
+			super(computations);
+			this.profile = profile;
+		}
+
+		@Override
+		public ValueComputation get(Object key) {
+			ValueComputation result = super.get(key);
+			if (activeProfiler != null && key instanceof String) {
+				Lookup lookup = currentLookup.get();
+				if (result != null) {
+					lookup.end();
+					KeyStatistics stats = profile.getStatistics((String) key);
+					stats.lookups.incrementAndGet();
+					stats.cacheHits.incrementAndGet();
+				} else {
+					// Confirmed by the local values when it is not an
+					// invalidation
+					lookup.start(profile, (String) key);
+				}
+			}
+			return result;
+		}
+	}
+
+	/** The local values of a context, they are checked by each walked context */
+	private static class ProfiledValues extends ForwardingTable<Object> {
+		private final ContextProfile profile;
+
+		ProfiledValues(Map<String, Object> values, ContextProfile profile) {
+			super(values);
+			this.profile = profile;
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			if (activeProfiler != null) {
+				Lookup lookup = currentLookup.get();
+				if (lookup.key != null && lookup.key.equals(key)) {
+					if (lookup.visited == 0) {
+						if (lookup.profile == profile)
+							lookup.profile.getStatistics(lookup.key).lookups.incrementAndGet();
+						else
+							lookup.end();
+					} else {
+						lookup.profile.getStatistics(lookup.key).depth.incrementAndGet();
+					}
+					if (lookup.key != null)
+						lookup.visited++;
+				}
+			}
+			return super.containsKey(key);
+		}
+
+		@Override
+		public Object get(Object key) {
+			if (activeProfiler != null) {
+				Lookup lookup = currentLookup.get();
+				if (lookup.key != null && lookup.key.equals(key))
+					lookup.end();
+			}
+			return super.get(key);
+		}
+
+		@Override
+		public Object put(String key, Object value) {
+			if (activeProfiler != null)
+				currentLookup.get().end();
+			return super.put(key, value);
+		}
+
+		@Override
+		public Object remove(Object key) {
+			if (activeProfiler != null)
+				currentLookup.get().end();
+			return super.remove(key);
+		}
+	}
+
+	/**
+	 * Creates the computation stacks of the threads, with the computations
+	 * already running in the stack it replaces. The new stack of a thread
+	 * replaces its stack in the replaced thread local too.
+	 */
+	private static class ComputationStackLocal extends ThreadLocal<Stack<Computation>> {
+		private final ThreadLocal<Stack<Computation>> replaced;
+
+		ComputationStackLocal(ThreadLocal<Stack<Computation>> replaced) {
+			this.replaced = replaced;
+		}
+
+		@Override
+		protected Stack<Computation> initialValue() {
+			Stack<Computation> running = replaced.get();
+			// Created by a previous profiling
+			if (running instanceof ComputationStack)
+				return running;
+			ComputationStack stack = new ComputationStack();
+			if (running != null)
+				stack.addAll(running);
+			replaced.set(stack);
+			return stack;
+		}
+	}
+
+	/**
+	 * A stack of running computations measuring the time of each one. The
+	 * computations already running when it has been created are not measured.
+	 */
+	private static class ComputationStack extends Stack<Computation> {
+		private static final long serialVersionUID = 1L;
+
+		private transient long[] startTimes = new long[16];
+
+		@Override
+		public Computation push(Computation item) {
+			super.push(item);
+			int index = size() - 1;
+			if (index >= startTimes.length)
+				startTimes = Arrays.copyOf(startTimes, Math.max(index + 1, startTimes.length * 2));
+			startTimes[index] = activeProfiler != null ? System.nanoTime() : 0;
+			return item;
+		}
+
+		@Override
+		public synchronized Computation pop() {
+			int index = size() - 1;
+			long start = index >= 0 && index < startTimes.length ? startTimes[index] : 0;
+			Computation computation = super.pop();
+			ContextInjectionProfiler profiler = activeProfiler;
+			if (start != 0 && profiler != null)
+				profiler.computationDone(computation, System.nanoTime() - start);
+			return computation;
+		}
+	}
+}
@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright (c) 2014 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.context.spy;
+
+/**
+ * The statistics collected by the {@link ContextInjectionProfiler} for a key of
+ * a context, when they have been read. The key of an injection is the
+ * description of the injected object.
+ */
+public class ContextProfileEntry {
+
+	private final String context;
+	private final String key;
+	private final long lookups;
+	private final long cacheHits;
+	private final long depth;
+	private final long functionCalls;
+	private final long functionNanos;
+	private final long injections;
+	private final long injectionNanos;
+
+	public ContextProfileEntry(String context, String key, long lookups, long cacheHits, long depth,
+			long functionCalls, long functionNanos, long injections, long injectionNanos) {
+		this.context = context;
+		this.key = key;
+		this.lookups = lookups;
+		this.cacheHits = cacheHits;
+		this.depth = depth;
+		this.functionCalls = functionCalls;
+		this.functionNanos = functionNanos;
+		this.injections = injections;
+		this.injectionNanos = injectionNanos;
+	}
+
+	public String getContext() {
+		return context;
+	}
+
+	public String getKey() {
+		return key;
+	}
+
+	/** @return the number of lookups started in the context */
+	public long getLookups() {
+		return lookups;
+	}
+
+	/** @return the number of lookups answered by a value already computed */
+	public long getCacheHits() {
+		return cacheHits;
+	}
+
+	/** @return the number of parent contexts walked by the lookups */
+	public long getDepth() {
+		return depth;
+	}
+
+	/** @return the average number of parent contexts walked by a lookup */
+	public double getAverageDepth() {
+		return lookups == 0 ? 0 : (double) depth / lookups;
+	}
+
+	/** @return the number of context function calls */
+	public long getFunctionCalls() {
+		return functionCalls;
+	}
+
+	public long getFunctionNanos() {
+		return functionNanos;
+	}
+
+	/** @return the number of recomputations of the injected object */
+	public long getInjections() {
+		return injections;
+	}
+
+	public long getInjectionNanos() {
+		return injectionNanos;
+	}
+
+	/** @return the time spent in context functions and injections */
+	public long getTotalNanos() {
+		return functionNanos + injectionNanos;
+	}
+
+	@Override
+	public String toString() {
+		return context + " " + key;
+	}
+}
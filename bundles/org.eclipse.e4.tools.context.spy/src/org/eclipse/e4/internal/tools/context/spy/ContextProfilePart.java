@@ -0,0 +1,284 @@
+/*******************************************************************************
+ * Copyright (c) 2014 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.context.spy;
+
+import java.util.Collection;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+
+import org.eclipse.e4.core.contexts.IEclipseContext;
+import org.eclipse.jface.layout.GridDataFactory;
+import org.eclipse.jface.viewers.ArrayContentProvider;
+import org.eclipse.jface.viewers.ColumnLabelProvider;
+import org.eclipse.jface.viewers.TableViewer;
+import org.eclipse.jface.viewers.TableViewerColumn;
+import org.eclipse.jface.viewers.Viewer;
+import org.eclipse.jface.viewers.ViewerComparator;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.SelectionAdapter;
+import org.eclipse.swt.events.SelectionEvent;
+import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.layout.GridLayout;
+import org.eclipse.swt.widgets.Button;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Label;
+import org.eclipse.swt.widgets.Table;
+import org.eclipse.swt.widgets.TableColumn;
+
+/**
+ * This part displays the statistics of the {@link ContextInjectionProfiler} in
+ * a table, ranked by the time spent in context functions and injections or by
+ * the selected column. It is refreshed periodically while profiling.
+ */
+public class ContextProfilePart {
+
+	/** The delay in ms between two refreshes of the table, while profiling */
+	private static final int REFRESH_DELAY = 1000;
+
+	private static final int CONTEXT_COLUMN = 0;
+	private static final int KEY_COLUMN = 1;
+	private static final int LOOKUPS_COLUMN = 2;
+	private static final int CACHE_HITS_COLUMN = 3;
+	private static final int DEPTH_COLUMN = 4;
+	private static final int FUNCTION_CALLS_COLUMN = 5;
+	private static final int FUNCTION_TIME_COLUMN = 6;
+	private static final int INJECTIONS_COLUMN = 7;
+	private static final int INJECTION_TIME_COLUMN = 8;
+	private static final int TOTAL_TIME_COLUMN = 9;
+
+	@Inject
+	private ContextInjectionProfiler profiler;
+
+	private TableViewer profileViewer;
+
+	private Label statusLabel;
+
+	private ProfileEntryComparator comparator;
+
+	private Collection<IEclipseContext> roots;
+
+	private final Runnable refreshRunnable = new Runnable() {
+		@Override
+		public void run() {
+			if (profileViewer.getControl().isDisposed() || !profiler.isProfiling())
+				return;
+			profiler.instrument(roots);
+			refresh();
+			profileViewer.getControl().getDisplay().timerExec(REFRESH_DELAY, this);
+		}
+	};
+
+	/**
+	 * Create contents of the view part.
+	 */
+	@PostConstruct
+	public void createControls(Composite parent) {
+		parent.setLayout(new GridLayout(1, false));
+
+		Composite comp = new Composite(parent, SWT.NONE);
+		comp.setLayout(new GridLayout(2, false));
+		GridDataFactory.fillDefaults().grab(true, false).applyTo(comp);
+
+		Button resetButton = new Button(comp, SWT.PUSH);
+		resetButton.setText("Reset");
+		resetButton.setToolTipText("Forget the collected statistics");
+		resetButton.addSelectionListener(new SelectionAdapter() {
+			@Override
+			public void widgetSelected(SelectionEvent e) {
+				profiler.reset();
+				refresh();
+			}
+		});
+
+		statusLabel = new Label(comp, SWT.NONE);
+		GridDataFactory.fillDefaults().grab(true, false).align(SWT.FILL, SWT.CENTER).applyTo(statusLabel);
+
+		profileViewer = new TableViewer(parent, SWT.FULL_SELECTION | SWT.V_SCROLL | SWT.H_SCROLL);
+		profileViewer.setContentProvider(ArrayContentProvider.getInstance());
+		final Table table = profileViewer.getTable();
+		table.setHeaderVisible(true);
+		table.setLinesVisible(true);
+		table.setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, true));
+
+		createColumn(CONTEXT_COLUMN, "Context", 200, "Context where the lookups start");
+		createColumn(KEY_COLUMN, "Key", 300, "Key looked up, or object injected");
+		createColumn(LOOKUPS_COLUMN, "Lookups", 70, "Number of lookups started in the context");
+		createColumn(CACHE_HITS_COLUMN, "Cache hits", 70, "Number of lookups answered by a value already computed");
+		createColumn(DEPTH_COLUMN, "Avg. depth", 70, "Average number of parent contexts walked by a lookup");
+		createColumn(FUNCTION_CALLS_COLUMN, "Functions", 70, "Number of context function calls");
+		createColumn(FUNCTION_TIME_COLUMN, "Function ms", 80, "Time spent in the context functions");
+		createColumn(INJECTIONS_COLUMN, "Injections", 70, "Number of recomputations of the injected object");
+		createColumn(INJECTION_TIME_COLUMN, "Injection ms", 80, "Time spent in the injection recomputations");
+		createColumn(TOTAL_TIME_COLUMN, "Total ms", 80, "Time spent in context functions and injections");
+
+		comparator = new ProfileEntryComparator();
+		profileViewer.setComparator(comparator);
+		table.setSortColumn(table.getColumn(TOTAL_TIME_COLUMN));
+		table.setSortDirection(SWT.DOWN);
+
+		refresh();
+	}
+
+	private void createColumn(final int columnIndex, String text, int width, String toolTip) {
+		TableViewerColumn col = new TableViewerColumn(profileViewer, columnIndex < LOOKUPS_COLUMN ? SWT.LEFT
+				: SWT.RIGHT);
+		final TableColumn column = col.getColumn();
+		column.setText(text);
+		column.setWidth(width);
+		column.setToolTipText(toolTip);
+		col.setLabelProvider(new ColumnLabelProvider() {
+			@Override
+			public String getText(Object element) {
+				return getColumnText((ContextProfileEntry) element, columnIndex);
+			}
+		});
+		column.addSelectionListener(new SelectionAdapter() {
+			@Override
+			public void widgetSelected(SelectionEvent e) {
+				comparator.setColumn(columnIndex);
+				profileViewer.getTable().setSortColumn(column);
+				profileViewer.getTable().setSortDirection(comparator.getDirection());
+				profileViewer.refresh();
+			}
+		});
+	}
+
+	private static String getColumnText(ContextProfileEntry entry, int columnIndex) {
+		switch (columnIndex) {
+		case CONTEXT_COLUMN:
+			return entry.getContext();
+		case KEY_COLUMN:
+			return entry.getKey();
+		case LOOKUPS_COLUMN:
+			return Long.toString(entry.getLookups());
+		case CACHE_HITS_COLUMN:
+			return Long.toString(entry.getCacheHits());
+		case DEPTH_COLUMN:
+			return String.format("%.1f", entry.getAverageDepth());
+		case FUNCTION_CALLS_COLUMN:
+			return Long.toString(entry.getFunctionCalls());
+		case FUNCTION_TIME_COLUMN:
+			return toMillis(entry.getFunctionNanos());
+		case INJECTIONS_COLUMN:
+			return Long.toString(entry.getInjections());
+		case INJECTION_TIME_COLUMN:
+			return toMillis(entry.getInjectionNanos());
+		case TOTAL_TIME_COLUMN:
+			return toMillis(entry.getTotalNanos());
+		default:
+			return "";
+		}
+	}
+
+	private static String toMillis(long nanos) {
+		return String.format("%.1f", nanos / 1000000.0);
+	}
+
+	/**
+	 * Start or stop profiling the contexts of the hierarchy
+	 *
+	 * @param roots
+	 *            the root contexts of the hierarchy
+	 */
+	public void setProfiling(boolean profiling, Collection<IEclipseContext> roots) {
+		this.roots = roots;
+		if (profiling) {
+			profiler.start(roots);
+			profileViewer.getControl().getDisplay().timerExec(REFRESH_DELAY, refreshRunnable);
+		} else {
+			profiler.stop();
+			profileViewer.getControl().getDisplay().timerExec(-1, refreshRunnable);
+		}
+		refresh();
+	}
+
+	public void refresh() {
+		profileViewer.setInput(profiler.getEntries());
+		statusLabel.setText(String.format("%s, %d ms profiled", profiler.isProfiling() ? "Profiling"
+				: "Profiling stopped", profiler.getProfiledMillis()));
+	}
+
+	@PreDestroy
+	public void dispose() {
+		profiler.stop();
+	}
+
+	/**
+	 * Ranks the entries by the selected column, the text columns are sorted in
+	 * ascending order and the numbers in descending order
+	 */
+	private static class ProfileEntryComparator extends ViewerComparator {
+		private int columnIndex = TOTAL_TIME_COLUMN;
+		private int direction = SWT.DOWN;
+
+		public int getDirection() {
+			return direction;
+		}
+
+		/** Called when click on table header, reverse order */
+		public void setColumn(int column) {
+			if (column == columnIndex) {
+				direction = (direction == SWT.UP) ? SWT.DOWN : SWT.UP;
+			} else {
+				columnIndex = column;
+				direction = column < LOOKUPS_COLUMN ? SWT.UP : SWT.DOWN;
+			}
+		}
+
+		@Override
+		public int compare(Viewer viewer, Object e1, Object e2) {
+			ContextProfileEntry p1 = (ContextProfileEntry) e1;
+			ContextProfileEntry p2 = (ContextProfileEntry) e2;
+			int rc;
+			switch (columnIndex) {
+			case CONTEXT_COLUMN:
+				rc = p1.getContext().compareToIgnoreCase(p2.getContext());
+				break;
+			case KEY_COLUMN:
+				rc = p1.getKey().compareToIgnoreCase(p2.getKey());
+				break;
+			case DEPTH_COLUMN:
+				rc = Double.compare(p1.getAverageDepth(), p2.getAverageDepth());
+				break;
+			default:
+				rc = compareLongs(getValue(p1, columnIndex), getValue(p2, columnIndex));
+				break;
+			}
+			// If descending order, flip the direction
+			return (direction == SWT.DOWN) ? -rc : rc;
+		}
+
+		private static long getValue(ContextProfileEntry entry, int columnIndex) {
+			switch (columnIndex) {
+			case LOOKUPS_COLUMN:
+				return entry.getLookups();
+			case CACHE_HITS_COLUMN:
+				return entry.getCacheHits();
+			case FUNCTION_CALLS_COLUMN:
+				return entry.getFunctionCalls();
+			case FUNCTION_TIME_COLUMN:
+				return entry.getFunctionNanos();
+			case INJECTIONS_COLUMN:
+				return entry.getInjections();
+			case INJECTION_TIME_COLUMN:
+				return entry.getInjectionNanos();
+			default:
+				return entry.getTotalNanos();
+			}
+		}
+
+		private static int compareLongs(long l1, long l2) {
+			return l1 < l2 ? -1 : (l1 == l2 ? 0 : 1);
+		}
+	}
+}
@@ -0,0 +1,215 @@
+/*******************************************************************************
+ * Copyright (c) 2014 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.context.spy;
+
+import java.lang.reflect.Field;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.eclipse.e4.core.contexts.IEclipseContext;
+import org.eclipse.e4.core.di.annotations.Creatable;
+import org.eclipse.e4.core.internal.contexts.EclipseContext;
+import org.eclipse.e4.core.internal.contexts.IContextDisposalListener;
+import org.eclipse.e4.core.services.log.Logger;
+
+/**
+ * Keeps the searchable text of each context, so the contexts are not converted
+ * to strings again each time they are painted.
+ *
+ * The context has no generic change notification, so each entry stores a
+ * fingerprint of the local keys, the identities of the local values and the
+ * listener names. This fingerprint is cheap to compute because it calls no
+ * toString(). The text is rebuilt only when the fingerprint changes, and the
+ * fingerprint is checked at most once per generation: a new generation is
+ * started for each search. A value mutated in place keeps its old text until
+ * {@link #clear()} is called (on refresh). The entries are removed when their
+ * context is disposed.
+ */
+@Creatable
+@Singleton
+@SuppressWarnings("restriction")
+public class ContextSearchIndex {
+
+	/** Separates the texts of a context, it cannot be typed in the filter */
+	private static final char SEPARATOR = '\u0000';
+
+	@Inject
+	Logger log;
+
+	private final Map<EclipseContext, Entry> entries = new WeakHashMap<EclipseContext, Entry>();
+
+	private int generation;
+
+	private Field disposalListenersField;
+
+	private final IContextDisposalListener disposalListener = new IContextDisposalListener() {
+		@Override
+		public void disposed(IEclipseContext context) {
+			remove(context);
+		}
+	};
+
+	/**
+	 * @param pattern
+	 *            the lowercase text to search
+	 * @return true if a key, a value or an injected name of the context contains
+	 *         the pattern
+	 */
+	public synchronized boolean containsText(EclipseContext context, String pattern) {
+		Entry entry = getEntry(context);
+		if (!pattern.equals(entry.lastPattern)) {
+			entry.lastPattern = pattern;
+			entry.lastResult = entry.text.indexOf(pattern) >= 0;
+		}
+		return entry.lastResult;
+	}
+
+	/**
+	 * @return the lowercase texts of the context separated by a character which
+	 *         cannot be typed, the matching of the text is thread safe
+	 */
+	public synchronized String getText(EclipseContext context) {
+		return getEntry(context).text;
+	}
+
+	/**
+	 * Checks again whether the contexts have changed the next time their texts
+	 * are read, they are checked once until the next generation
+	 */
+	public synchronized void startGeneration() {
+		generation++;
+	}
+
+	/** Forgets all the texts, the values changed in place are then seen */
+	public synchronized void clear() {
+		// The entries are kept to remove their disposal listeners
+		for (Entry entry : entries.values()) {
+			entry.text = null;
+		}
+	}
+
+	/**
+	 * Forgets all the texts and stops listening to the disposal of their
+	 * contexts, called when the spy is closed
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized void dispose() {
+		for (EclipseContext context : entries.keySet()) {
+			Set<IContextDisposalListener> listeners = null;
+			try {
+				if (disposalListenersField == null) {
+					disposalListenersField = EclipseContext.class.getDeclaredField("notifyOnDisposal");
+					disposalListenersField.setAccessible(true);
+				}
+				listeners = (Set<IContextDisposalListener>) disposalListenersField.get(context);
+			} catch (Exception e) {
+				log.warn(e, "Cannot remove the disposal listener of the context " + context);
+				break;
+			}
+			// The context locks its listeners the same way
+			synchronized (listeners) {
+				listeners.remove(disposalListener);
+			}
+		}
+		entries.clear();
+	}
+
+	synchronized void remove(IEclipseContext context) {
+		entries.remove(context);
+	}
+
+	private Entry getEntry(EclipseContext context) {
+		Entry entry = entries.get(context);
+		if (entry != null && entry.text != null && entry.generation == generation) {
+			return entry;
+		}
+		long fingerprint = computeFingerprint(context);
+		if (entry == null) {
+			entry = new Entry();
+			entries.put(context, entry);
+			context.notifyOnDisposal(disposalListener);
+		} else if (entry.text != null && entry.fingerprint == fingerprint) {
+			entry.generation = generation;
+			return entry;
+		}
+		entry.generation = generation;
+		entry.fingerprint = fingerprint;
+		entry.text = buildText(context);
+		entry.lastPattern = null;
+		return entry;
+	}
+
+	private static long computeFingerprint(EclipseContext context) {
+		long fingerprint = 17;
+		fingerprint = mix(fingerprint, context.localData());
+		fingerprint = mix(fingerprint, context.localContextFunction());
+		Set<String> listenerNames = context.getRawListenerNames();
+		if (listenerNames != null) {
+			fingerprint = fingerprint * 31 + listenerNames.size();
+			fingerprint = fingerprint * 31 + listenerNames.hashCode();
+		}
+		return fingerprint;
+	}
+
+	private static long mix(long fingerprint, Map<String, Object> map) {
+		fingerprint = fingerprint * 31 + map.size();
+		for (Map.Entry<String, Object> entry : map.entrySet()) {
+			fingerprint = fingerprint * 31 + entry.getKey().hashCode();
+			fingerprint = fingerprint * 31 + System.identityHashCode(entry.getValue());
+		}
+		return fingerprint;
+	}
+
+	/**
+	 * Concatenates the same strings as the ones displayed by the context data
+	 * part: the local keys and values, the context functions and the names
+	 * injected from the parents
+	 */
+	private static String buildText(EclipseContext context) {
+		StringBuilder text = new StringBuilder();
+		Map<String, Object> localData = context.localData();
+		Map<String, Object> localContextFunctions = context.localContextFunction();
+		appendMap(localData, text);
+		appendMap(localContextFunctions, text);
+
+		Set<String> listenerNames = context.getRawListenerNames();
+		if (listenerNames != null) {
+			for (String name : listenerNames) {
+				if (!localData.containsKey(name) && !localContextFunctions.containsKey(name)) {
+					text.append(name.toLowerCase()).append(SEPARATOR);
+				}
+			}
+		}
+		return text.toString();
+	}
+
+	private static void appendMap(Map<String, Object> map, StringBuilder text) {
+		for (Map.Entry<String, Object> entry : map.entrySet()) {
+			text.append(entry.getKey().toLowerCase()).append(SEPARATOR);
+			Object value = entry.getValue();
+			if (value != null) {
+				text.append(value.toString().toLowerCase()).append(SEPARATOR);
+			}
+		}
+	}
+
+	private static class Entry {
+		int generation;
+		long fingerprint;
+		String text;
+		String lastPattern;
+		boolean lastResult;
+	}
+}
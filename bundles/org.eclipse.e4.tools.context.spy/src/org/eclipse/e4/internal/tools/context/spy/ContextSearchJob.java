@@ -0,0 +1,159 @@
+/*******************************************************************************
+ * Copyright (c) 2014 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.context.spy;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.e4.core.contexts.IEclipseContext;
+import org.eclipse.e4.core.internal.contexts.EclipseContext;
+import org.eclipse.swt.SWTException;
+import org.eclipse.swt.widgets.Display;
+
+/**
+ * Searches a text in the whole context hierarchy without blocking the UI
+ * thread. The contexts are not thread safe, so their texts are read from the
+ * search index in the UI thread, by slices of a few contexts. The texts are
+ * then matched in the job, and the matching contexts are given back to the
+ * listener in the UI thread, slice after slice. The job stops as soon as it is
+ * cancelled, the listener is not called anymore after.
+ */
+@SuppressWarnings("restriction")
+public class ContextSearchJob extends Job {
+
+	/** The listener of the search results, it is called in the UI thread */
+	public interface Listener {
+		void contextsFound(Collection<IEclipseContext> contexts);
+
+		void searchDone();
+	}
+
+	/** The number of contexts read in the UI thread at once */
+	private static final int SLICE_SIZE = 50;
+
+	private final Display display;
+
+	private final ContextSearchIndex searchIndex;
+
+	private final Collection<IEclipseContext> rootContexts;
+
+	private final String pattern;
+
+	private final Listener listener;
+
+	private volatile boolean cancelled;
+
+	/**
+	 * @param pattern
+	 *            the lowercase text to search
+	 */
+	public ContextSearchJob(Display display, ContextSearchIndex searchIndex, Collection<IEclipseContext> rootContexts,
+			String pattern, Listener listener) {
+		super("Search in the contexts");
+		this.display = display;
+		this.searchIndex = searchIndex;
+		this.rootContexts = rootContexts;
+		this.pattern = pattern;
+		this.listener = listener;
+		setSystem(true);
+	}
+
+	@Override
+	protected void canceling() {
+		cancelled = true;
+	}
+
+	@Override
+	protected IStatus run(IProgressMonitor monitor) {
+		final LinkedList<IEclipseContext> pendingContexts = new LinkedList<IEclipseContext>();
+		final List<IEclipseContext> sliceContexts = new ArrayList<IEclipseContext>(SLICE_SIZE);
+		final List<String> sliceTexts = new ArrayList<String>(SLICE_SIZE);
+		boolean first = true;
+
+		while (first || !pendingContexts.isEmpty()) {
+			if (cancelled || monitor.isCanceled() || display.isDisposed()) {
+				return Status.CANCEL_STATUS;
+			}
+			final boolean readRoots = first;
+			first = false;
+			sliceContexts.clear();
+			sliceTexts.clear();
+
+			// The contexts are read and their texts computed in the UI thread
+			try {
+				display.syncExec(new Runnable() {
+					@Override
+					public void run() {
+						if (readRoots) {
+							pendingContexts.addAll(rootContexts);
+						}
+						while (!cancelled && !pendingContexts.isEmpty() && sliceContexts.size() < SLICE_SIZE) {
+							IEclipseContext context = pendingContexts.removeFirst();
+							if (context instanceof EclipseContext) {
+								EclipseContext eclipseContext = (EclipseContext) context;
+								pendingContexts.addAll(eclipseContext.getChildren());
+								sliceContexts.add(context);
+								sliceTexts.add(searchIndex.getText(eclipseContext));
+							}
+						}
+					}
+				});
+			} catch (SWTException e) {
+				// the display has been disposed meanwhile
+				return Status.CANCEL_STATUS;
+			}
+
+			// ... and matched in the job
+			final List<IEclipseContext> matchingContexts = new ArrayList<IEclipseContext>();
+			for (int i = 0; i < sliceContexts.size(); i++) {
+				if (sliceTexts.get(i).indexOf(pattern) >= 0) {
+					matchingContexts.add(sliceContexts.get(i));
+				}
+			}
+			if (!matchingContexts.isEmpty()) {
+				asyncExec(new Runnable() {
+					@Override
+					public void run() {
+						listener.contextsFound(matchingContexts);
+					}
+				});
+			}
+		}
+
+		asyncExec(new Runnable() {
+			@Override
+			public void run() {
+				listener.searchDone();
+			}
+		});
+		return Status.OK_STATUS;
+	}
+
+	private void asyncExec(final Runnable runnable) {
+		if (display.isDisposed()) {
+			return;
+		}
+		display.asyncExec(new Runnable() {
+			@Override
+			public void run() {
+				if (!cancelled) {
+					runnable.run();
+				}
+			}
+		});
+	}
+}
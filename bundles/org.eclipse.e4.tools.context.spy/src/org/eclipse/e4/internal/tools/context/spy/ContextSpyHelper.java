@@ -10,13 +10,16 @@
  *******************************************************************************/
 package org.eclipse.e4.internal.tools.context.spy;
 
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Field;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Map;
+import java.util.Set;
 
 import org.eclipse.e4.core.contexts.EclipseContextFactory;
 import org.eclipse.e4.core.contexts.IEclipseContext;
+import org.eclipse.e4.core.internal.contexts.EclipseContext;
 import org.osgi.framework.BundleContext;
 
 /**
@@ -27,8 +30,11 @@ import org.osgi.framework.BundleContext;
  * @author olivier
  *
  */
+@SuppressWarnings("restriction")
 public class ContextSpyHelper {
 
+	private static Field childrenField;
+
 	/**
 	 * Get all the contexts created by EclipseContextFactory. It get values from
 	 * field introspection. Should be rewritten if internal structure changes
@@ -59,4 +65,44 @@ public class ContextSpyHelper {
 
 	}
 
+	/**
+	 * Check if a context has children without copying them, as
+	 * EclipseContext.getChildren() does. It reads the weak references to the
+	 * children by field introspection. Should be rewritten if internal
+	 * structure changes
+	 *
+	 * @return true if the context has at least one child which has not been
+	 *         garbage collected
+	 */
+	public static boolean hasChildren(EclipseContext context) {
+		try {
+			if (childrenField == null) {
+				Field f = EclipseContext.class.getDeclaredField("children");
+				f.setAccessible(true);
+				childrenField = f;
+			}
+			@SuppressWarnings("unchecked")
+			Set<WeakReference<EclipseContext>> children = (Set<WeakReference<EclipseContext>>) childrenField
+					.get(context);
+			synchronized (children) {
+				for (WeakReference<EclipseContext> child : children) {
+					if (child.get() != null)
+						return true;
+				}
+			}
+			return false;
+
+		} catch (SecurityException e) {
+			e.printStackTrace();
+		} catch (NoSuchFieldException e) {
+			e.printStackTrace();
+		} catch (IllegalArgumentException e) {
+			e.printStackTrace();
+		} catch (IllegalAccessException e) {
+			e.printStackTrace();
+		}
+
+		return !context.getChildren().isEmpty();
+	}
+
 }
@@ -10,7 +10,14 @@
  *******************************************************************************/
 package org.eclipse.e4.internal.tools.context.spy;
 
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 import javax.inject.Inject;
 
@@ -18,8 +25,10 @@ import org.eclipse.e4.core.contexts.IEclipseContext;
 import org.eclipse.e4.core.internal.contexts.EclipseContext;
 import org.eclipse.e4.ui.model.application.MApplication;
 import org.eclipse.jface.viewers.IColorProvider;
-import org.eclipse.jface.viewers.ITreeContentProvider;
+import org.eclipse.jface.viewers.ILazyTreePathContentProvider;
 import org.eclipse.jface.viewers.LabelProvider;
+import org.eclipse.jface.viewers.TreePath;
+import org.eclipse.jface.viewers.TreeViewer;
 import org.eclipse.jface.viewers.Viewer;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.graphics.Color;
@@ -27,17 +36,35 @@ import org.eclipse.swt.widgets.Display;
 
 @SuppressWarnings("restriction")
 /**
- * This label and treecontent provider is used by ContextSpyPart to display
- * available contexts.
+ * This label and lazy treecontent provider is used by ContextSpyPart to display
+ * available contexts in a virtual tree. The children of a context are read
+ * only when it is expanded, and they are sorted by label as the tree viewer
+ * can not sort a lazy content.
  * 
  * @author olivier
  *
  */
-public class ContextSpyProvider extends LabelProvider implements ITreeContentProvider, IColorProvider {
+public class ContextSpyProvider extends LabelProvider implements ILazyTreePathContentProvider, IColorProvider {
 
 	@Inject
 	private ContextDataFilter contextFilter;
 
+	private TreeViewer viewer;
+
+	private Object input;
+
+	/** The sorted children of the expanded elements, by element */
+	private final Map<Object, Object[]> childrenCache = new WeakHashMap<Object, Object[]>();
+
+	private final Comparator<Object> labelComparator = new Comparator<Object>() {
+		private final Collator collator = Collator.getInstance();
+
+		@Override
+		public int compare(Object o1, Object o2) {
+			return collator.compare(getText(o1), getText(o2));
+		}
+	};
+
 	@Inject
 	public ContextSpyProvider() {
 
@@ -49,9 +76,59 @@ public class ContextSpyProvider extends LabelProvider implements ITreeContentPro
 
 	@Override
 	public void inputChanged(Viewer viewer, Object oldInput, Object newInput) {
+		this.viewer = (TreeViewer) viewer;
+		input = newInput;
+		childrenCache.clear();
+	}
+
+	@Override
+	public void updateElement(TreePath parentPath, int index) {
+		Object parent = parentPath.getSegmentCount() == 0 ? input : parentPath.getLastSegment();
+		Object[] children = childrenCache.get(parent);
+		if (children == null)
+			children = computeChildren(parent);
+		if (index >= children.length)
+			return;
+		Object child = children[index];
+		viewer.replace(parentPath, index, child);
+		updateHasChildren(parentPath.createChildPath(child));
 	}
 
 	@Override
+	public void updateChildCount(TreePath treePath, int currentChildCount) {
+		Object element = treePath.getSegmentCount() == 0 ? input : treePath.getLastSegment();
+		int count = computeChildren(element).length;
+		if (count != currentChildCount)
+			viewer.setChildCount(treePath, count);
+	}
+
+	@Override
+	public void updateHasChildren(TreePath path) {
+		viewer.setHasChildren(path, hasChildren(path.getLastSegment()));
+	}
+
+	@Override
+	public TreePath[] getParents(Object element) {
+		if (!(element instanceof EclipseContext))
+			return new TreePath[0];
+		List<Object> segments = new ArrayList<Object>();
+		for (EclipseContext parent = ((EclipseContext) element).getParent(); parent != null; parent = parent
+				.getParent()) {
+			segments.add(0, parent);
+		}
+		return new TreePath[] { new TreePath(segments.toArray()) };
+	}
+
+	/** Read and sort the children of the element, and keep them in the cache */
+	private Object[] computeChildren(Object element) {
+		Object[] children = (element == input) ? getElements(element) : getChildren(element);
+		if (children == null)
+			children = new Object[0];
+		Arrays.sort(children, labelComparator);
+		childrenCache.put(element, children);
+		return children;
+	}
+
 	public Object[] getElements(Object inputElement) {
 		if (inputElement instanceof MApplication) {
 			return new Object[] { ((MApplication) inputElement).getContext().getParent() };
@@ -62,7 +139,6 @@ public class ContextSpyProvider extends LabelProvider implements ITreeContentPro
 		return new Object[0];
 	}
 
-	@Override
 	public Object[] getChildren(Object parentElement) {
 		if (parentElement instanceof EclipseContext) {
 			return ((EclipseContext) parentElement).getChildren().toArray();
@@ -70,17 +146,8 @@ public class ContextSpyProvider extends LabelProvider implements ITreeContentPro
 		return null;
 	}
 
-	@Override
-	public Object getParent(Object element) {
-		if (element instanceof EclipseContext) {
-			return ((EclipseContext) element).getParent();
-		}
-		return null;
-	}
-
-	@Override
 	public boolean hasChildren(Object element) {
-		return ((element instanceof EclipseContext) && !(((EclipseContext) element).getChildren().isEmpty()));
+		return ((element instanceof EclipseContext) && ContextSpyHelper.hasChildren((EclipseContext) element));
 	}
 
 	@Override
@@ -90,8 +157,8 @@ public class ContextSpyProvider extends LabelProvider implements ITreeContentPro
 
 	@Override
 	public Color getForeground(Object element) {
-		// Return a color if a text contained in this node contains the text.
-		if (element instanceof IEclipseContext && contextFilter.containsText((IEclipseContext) element)) {
+		// Return a color if the last search found the text in this node
+		if (element instanceof IEclipseContext && contextFilter.isMatching((IEclipseContext) element)) {
 			return Display.getCurrent().getSystemColor(SWT.COLOR_BLUE);
 		}
 		return null;
@@ -10,6 +10,8 @@
  *******************************************************************************/
 package org.eclipse.e4.tools.context.spy;
 
+import java.util.Collection;
+
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import javax.inject.Inject;
@@ -18,6 +20,9 @@ import org.eclipse.e4.core.contexts.ContextInjectionFactory;
 import org.eclipse.e4.core.contexts.IEclipseContext;
 import org.eclipse.e4.internal.tools.context.spy.ContextDataFilter;
 import org.eclipse.e4.internal.tools.context.spy.ContextDataPart;
+import org.eclipse.e4.internal.tools.context.spy.ContextProfilePart;
+import org.eclipse.e4.internal.tools.context.spy.ContextSearchIndex;
+import org.eclipse.e4.internal.tools.context.spy.ContextSearchJob;
 import org.eclipse.e4.internal.tools.context.spy.ContextSpyHelper;
 import org.eclipse.e4.internal.tools.context.spy.ContextSpyProvider;
 import org.eclipse.e4.ui.di.Focus;
@@ -30,7 +35,6 @@ import org.eclipse.jface.viewers.ISelectionChangedListener;
 import org.eclipse.jface.viewers.IStructuredSelection;
 import org.eclipse.jface.viewers.SelectionChangedEvent;
 import org.eclipse.jface.viewers.TreeViewer;
-import org.eclipse.jface.viewers.ViewerSorter;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.custom.SashForm;
 import org.eclipse.swt.events.KeyAdapter;
@@ -55,6 +59,17 @@ public class ContextSpyPart {
 	private static final String ICON_EXPANDALL = "icons/expandall.png";
 	private static final String ICON_REFRESH = "icons/refresh.png";
 
+	/** The delay in ms before searching, while the user is typing */
+	private static final long SEARCH_DELAY = 300;
+
+	/**
+	 * The system property setting the number of levels of the context tree
+	 * expanded when the spy is opened, -1 expands all the tree
+	 */
+	public static final String EXPAND_LEVEL_PROPERTY = "org.eclipse.e4.tools.context.spy.expandLevel";
+
+	private static final int DEFAULT_EXPAND_LEVEL = 3;
+
 	// The ID for this part descriptor
 	static final String CONTEXT_SPY_VIEW_DESC = "org.eclipse.e4.tools.context.spy.view";
 
@@ -70,8 +85,16 @@ public class ContextSpyPart {
 	@Inject
 	private ContextDataFilter contextFilter;
 
+	@Inject
+	private ContextSearchIndex searchIndex;
+
+	private ContextSearchJob searchJob;
+
 	private ContextDataPart contextDataPart;
+	private ContextProfilePart contextProfilePart;
+	private Composite profileComposite;
 	private Button showOnlyFilteredElements;
+	private Button profileButton;
 	private Text filterText;
 
 	/** Store the values to set it when it is reopened */
@@ -103,8 +126,10 @@ public class ContextSpyPart {
 		refreshButton.addSelectionListener(new SelectionAdapter() {
 			@Override
 			public void widgetSelected(SelectionEvent e) {
+				contextFilter.resetSearchIndex();
 				contextTreeViewer.refresh(true);
 				contextDataPart.refresh(true);
+				startSearch();
 			}
 		});
 
@@ -145,11 +170,10 @@ public class ContextSpyPart {
 				// Enable/disable button for filtering
 				showOnlyFilteredElements.setEnabled(enableButton);
 
-				// Then update filters and viewers
+				// Then update filters and search in background
 				contextFilter.setPattern(textToSearch);
 				setFilter();
-				contextTreeViewer.refresh(true);
-				contextDataPart.refresh(true);
+				startSearch();
 			}
 
 		});
@@ -167,15 +191,27 @@ public class ContextSpyPart {
 			}
 		});
 
+		profileButton = new Button(comp, SWT.TOGGLE);
+		profileButton.setText("Profile");
+		profileButton.setToolTipText("Profile the lookups, context functions and injections of the contexts");
+		profileButton.addSelectionListener(new SelectionAdapter() {
+			@Override
+			public void widgetSelected(SelectionEvent e) {
+				setProfiling(profileButton.getSelection());
+			}
+		});
+
 		SashForm sashForm = new SashForm(parent, SWT.VERTICAL | SWT.V_SCROLL | SWT.H_SCROLL);
 		sashForm.setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, true));
 
 		// TreeViewer on the top
-		contextTreeViewer = new TreeViewer(sashForm);
+		// It is virtual, the contexts are read only when they are displayed
+		contextTreeViewer = new TreeViewer(sashForm, SWT.VIRTUAL | SWT.MULTI | SWT.H_SCROLL | SWT.V_SCROLL
+				| SWT.BORDER);
+		contextTreeViewer.setUseHashlookup(true);
 		treeContentProvider = ContextInjectionFactory.make(ContextSpyProvider.class, ctx);
 		contextTreeViewer.setContentProvider(treeContentProvider);
 		contextTreeViewer.setLabelProvider(treeContentProvider);
-		contextTreeViewer.setSorter(new ViewerSorter());
 
 		// tv.setInput(a);
 		contextTreeViewer.setInput(ContextSpyHelper.getAllBundleContexts());
@@ -193,12 +229,70 @@ public class ContextSpyPart {
 		contextDataPart = ContextInjectionFactory.make(ContextDataPart.class, subCtx);
 		setFilter();
 
+		// The profile table is displayed at the bottom when profiling
+		profileComposite = new Composite(sashForm, SWT.NONE);
+		IEclipseContext profileCtx = ctx.createChild("Context for ContextProfilePart");
+		profileCtx.set(Composite.class, profileComposite);
+		contextProfilePart = ContextInjectionFactory.make(ContextProfilePart.class, profileCtx);
+		profileComposite.setVisible(false);
+
 		// Set the correct weight for SashForm
-		sashForm.setWeights(new int[] { 35, 65 });
+		sashForm.setWeights(new int[] { 35, 65, 35 });
+
+		// Open the first levels of the tree, the others are read on demand
+		contextTreeViewer.expandToLevel(Integer.getInteger(EXPAND_LEVEL_PROPERTY, DEFAULT_EXPAND_LEVEL));
 
-		// Open all the tree
-		contextTreeViewer.expandAll();
+		startSearch();
+	}
+
+	/**
+	 * Cancel the current search and start a new one after a delay, so the
+	 * contexts are not searched again for each typed key. The matching
+	 * contexts are highlighted as soon as they are found.
+	 */
+	private void startSearch() {
+		if (searchJob != null) {
+			searchJob.cancel();
+			searchJob = null;
+		}
+		searchIndex.startGeneration();
+		// Only the contexts highlighted by the previous search are updated,
+		// the new matching contexts are highlighted as they are found
+		Object[] previousMatchingContexts = contextFilter.getMatchingContexts().toArray();
+		contextFilter.clearMatchingContexts();
+		contextTreeViewer.update(previousMatchingContexts, null);
+
+		String pattern = contextFilter.getPattern();
+		if (pattern == null) {
+			contextDataPart.refresh(true);
+			return;
+		}
+		searchJob = new ContextSearchJob(contextTreeViewer.getControl().getDisplay(), searchIndex,
+				ContextSpyHelper.getAllBundleContexts(), pattern, new ContextSearchJob.Listener() {
+					@Override
+					public void contextsFound(Collection<IEclipseContext> contexts) {
+						if (contextTreeViewer.getControl().isDisposed())
+							return;
+						contextFilter.addMatchingContexts(contexts);
+						contextTreeViewer.update(contexts.toArray(), null);
+					}
+
+					@Override
+					public void searchDone() {
+						if (!contextTreeViewer.getControl().isDisposed())
+							contextDataPart.refresh(true);
+					}
+				});
+		searchJob.schedule(SEARCH_DELAY);
+	}
 
+	/** Start or stop profiling, the profile table stays visible when stopped */
+	private void setProfiling(boolean profiling) {
+		contextProfilePart.setProfiling(profiling, ContextSpyHelper.getAllBundleContexts());
+		if (profiling && !profileComposite.isVisible()) {
+			profileComposite.setVisible(true);
+			profileComposite.getParent().layout();
+		}
 	}
 
 	/** Set the filter on context data part */
@@ -211,6 +305,10 @@ public class ContextSpyPart {
 
 	@PreDestroy
 	public void dispose() {
+		if (searchJob != null)
+			searchJob.cancel();
+		searchIndex.dispose();
+		contextProfilePart.dispose();
 	}
 
 	@Focus
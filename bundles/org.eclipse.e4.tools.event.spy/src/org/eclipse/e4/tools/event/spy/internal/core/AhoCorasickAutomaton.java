@@ -0,0 +1,144 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.tools.event.spy.internal.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Aho-Corasick automaton finding all the occurrences of a set of patterns in
+ * a single pass over the text. The patterns are lower case, the caller lowers
+ * the case of the scanned characters. It is immutable once built.
+ */
+public class AhoCorasickAutomaton {
+	public static final int ROOT = 0;
+
+	private static final int[] NO_MATCHES = new int[0];
+
+	// the sorted transition characters of each state and their target states
+	private final char[][] keys;
+
+	private final int[][] targets;
+
+	private final int[] failures;
+
+	// the patterns ending at each state, including the ones of its failure
+	// states
+	private final int[][] matches;
+
+	/**
+	 * @param patterns
+	 *            the not empty lower case patterns, identified by their index
+	 */
+	public AhoCorasickAutomaton(List<String> patterns) {
+		List<Map<Character, Integer>> trie = new ArrayList<Map<Character, Integer>>();
+		List<List<Integer>> patternsAt = new ArrayList<List<Integer>>();
+		trie.add(new TreeMap<Character, Integer>());
+		patternsAt.add(new ArrayList<Integer>());
+
+		for (int i = 0; i < patterns.size(); i++) {
+			String pattern = patterns.get(i);
+			int state = ROOT;
+			for (int j = 0; j < pattern.length(); j++) {
+				Character c = Character.valueOf(pattern.charAt(j));
+				Integer next = trie.get(state).get(c);
+				if (next == null) {
+					next = Integer.valueOf(trie.size());
+					trie.get(state).put(c, next);
+					trie.add(new TreeMap<Character, Integer>());
+					patternsAt.add(new ArrayList<Integer>());
+				}
+				state = next.intValue();
+			}
+			patternsAt.get(state).add(Integer.valueOf(i));
+		}
+
+		int stateCount = trie.size();
+		keys = new char[stateCount][];
+		targets = new int[stateCount][];
+		failures = new int[stateCount];
+		matches = new int[stateCount][];
+		for (int state = 0; state < stateCount; state++) {
+			Map<Character, Integer> transitions = trie.get(state);
+			keys[state] = new char[transitions.size()];
+			targets[state] = new int[transitions.size()];
+			int i = 0;
+			for (Map.Entry<Character, Integer> transition : transitions.entrySet()) {
+				keys[state][i] = transition.getKey().charValue();
+				targets[state][i] = transition.getValue().intValue();
+				i++;
+			}
+		}
+		computeFailures(patternsAt);
+	}
+
+	/**
+	 * Breadth first, the failure of a state is the longest proper suffix of
+	 * its path which is also a path of the trie
+	 */
+	private void computeFailures(List<List<Integer>> patternsAt) {
+		int[] queue = new int[keys.length];
+		int head = 0;
+		int tail = 0;
+		matches[ROOT] = NO_MATCHES;
+		for (int child : targets[ROOT]) {
+			failures[child] = ROOT;
+			queue[tail++] = child;
+		}
+		while (head < tail) {
+			int state = queue[head++];
+			matches[state] = merge(patternsAt.get(state), matches[failures[state]]);
+			for (int i = 0; i < keys[state].length; i++) {
+				int child = targets[state][i];
+				failures[child] = next(failures[state], keys[state][i]);
+				queue[tail++] = child;
+			}
+		}
+	}
+
+	private static int[] merge(List<Integer> own, int[] inherited) {
+		if (own.isEmpty()) {
+			return inherited;
+		}
+		int[] result = Arrays.copyOf(inherited, inherited.length + own.size());
+		for (int i = 0; i < own.size(); i++) {
+			result[inherited.length + i] = own.get(i).intValue();
+		}
+		return result;
+	}
+
+	/**
+	 * @return the state reached from the state with the lower case character
+	 */
+	public int next(int state, char c) {
+		while (true) {
+			int index = Arrays.binarySearch(keys[state], c);
+			if (index >= 0) {
+				return targets[state][index];
+			}
+			if (state == ROOT) {
+				return ROOT;
+			}
+			state = failures[state];
+		}
+	}
+
+	/**
+	 * @return the indexes of the patterns ending at the state, they must not
+	 *         be modified
+	 */
+	public int[] getMatches(int state) {
+		return matches[state];
+	}
+}
@@ -0,0 +1,264 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.tools.event.spy.internal.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+import org.eclipse.e4.tools.event.spy.internal.model.CapturedEvent;
+
+/**
+ * Reads a binary capture log written by the {@link CaptureLogWriter}. The file
+ * is memory mapped window by window, only the strings and the offsets of the
+ * events are loaded when it is opened, the events are decoded when they are
+ * accessed. It is not thread safe.
+ */
+public class CaptureLogReader {
+	private static final long WINDOW_SIZE = 64 * 1024 * 1024;
+
+	private static final int RECORD_HEADER_SIZE = 5;
+
+	private static final int VIEW_CACHE_SIZE = 1024;
+
+	private final File file;
+
+	private RandomAccessFile randomAccessFile;
+
+	private FileChannel channel;
+
+	private long fileSize;
+
+	private MappedByteBuffer window;
+
+	private long windowStart;
+
+	private final List<String> strings = new ArrayList<String>();
+
+	private long[] eventOffsets = new long[1024];
+
+	private int eventCount;
+
+	private boolean truncated;
+
+	private final List<CapturedEvent> events = new CapturedEventList();
+
+	public CaptureLogReader(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * Opens the file and indexes its records
+	 *
+	 * @throws IOException
+	 *             when the file cannot be read or it is not a capture log
+	 */
+	public void open() throws IOException {
+		randomAccessFile = new RandomAccessFile(file, "r");
+		try {
+			channel = randomAccessFile.getChannel();
+			fileSize = channel.size();
+			readHeader();
+			indexRecords();
+		} catch (IOException exc) {
+			close();
+			throw exc;
+		}
+	}
+
+	public void close() {
+		window = null;
+		if (randomAccessFile != null) {
+			try {
+				randomAccessFile.close();
+			} catch (IOException exc) {
+				// nothing to do, the file has been read only
+			}
+			randomAccessFile = null;
+			channel = null;
+		}
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * @return true when the last record is incomplete, the file is still being
+	 *         written or its writing has been interrupted
+	 */
+	public boolean isTruncated() {
+		return truncated;
+	}
+
+	/**
+	 * @return the events of the log, they are decoded when they are accessed
+	 */
+	public List<CapturedEvent> getEvents() {
+		return events;
+	}
+
+	private void readHeader() throws IOException {
+		int headerSize = CaptureLogWriter.MAGIC.length + 4;
+		if (fileSize < headerSize) {
+			throw new IOException(String.format("%s is not an event capture log", file));
+		}
+		map(0, headerSize);
+		byte[] magic = new byte[CaptureLogWriter.MAGIC.length];
+		window.position(0);
+		window.get(magic);
+		if (!Arrays.equals(magic, CaptureLogWriter.MAGIC)) {
+			throw new IOException(String.format("%s is not an event capture log", file));
+		}
+		int version = window.getInt();
+		if (version != CaptureLogWriter.VERSION) {
+			throw new IOException(String.format("Not supported version %d of the event capture log %s", version,
+					file));
+		}
+	}
+
+	private void indexRecords() throws IOException {
+		long offset = CaptureLogWriter.MAGIC.length + 4;
+		while (offset + RECORD_HEADER_SIZE <= fileSize) {
+			int position = map(offset, RECORD_HEADER_SIZE);
+			byte type = window.get(position);
+			int length = window.getInt(position + 1);
+			if (length < 0 || offset + RECORD_HEADER_SIZE + length > fileSize) {
+				break;
+			}
+
+			if (type == CaptureLogWriter.STRING_RECORD) {
+				readString(offset + RECORD_HEADER_SIZE, length);
+			} else if (type == CaptureLogWriter.EVENT_RECORD) {
+				addEventOffset(offset);
+			}
+			offset += RECORD_HEADER_SIZE + length;
+		}
+		truncated = offset != fileSize;
+	}
+
+	private void readString(long offset, int length) throws IOException {
+		int position = map(offset, length);
+		int id = window.getInt(position);
+		byte[] bytes = new byte[length - 4];
+		window.position(position + 4);
+		window.get(bytes);
+		if (id != strings.size()) {
+			throw new IOException(String.format("Corrupted event capture log %s, string %d found instead of %d", file,
+					id, strings.size()));
+		}
+		strings.add(new String(bytes, CaptureLogWriter.CHARSET));
+	}
+
+	private void addEventOffset(long offset) {
+		if (eventCount == eventOffsets.length) {
+			eventOffsets = Arrays.copyOf(eventOffsets, eventCount * 2);
+		}
+		eventOffsets[eventCount++] = offset;
+	}
+
+	private CapturedEvent readEvent(int index) throws IOException {
+		long offset = eventOffsets[index];
+		int position = map(offset, RECORD_HEADER_SIZE);
+		int length = window.getInt(position + 1);
+		position = map(offset + RECORD_HEADER_SIZE, length);
+
+		CapturedEvent event = new CapturedEvent();
+		event.setSequence(index);
+		event.setTimestamp(window.getLong(position));
+		event.setTopic(getString(window.getInt(position + 8)));
+		event.setPublisherClassName(getString(window.getInt(position + 12)));
+		String changedElementClassName = getString(window.getInt(position + 16));
+		if (changedElementClassName != null) {
+			event.setChangedElementClassName(changedElementClassName);
+		}
+
+		int parameterCount = window.getInt(position + 20);
+		position += 24;
+		for (int i = 0; i < parameterCount; i++) {
+			String name = getString(window.getInt(position));
+			int valueLength = window.getInt(position + 4);
+			position += 8;
+			String value = null;
+			if (valueLength != CaptureLogWriter.NO_STRING) {
+				byte[] bytes = new byte[valueLength];
+				window.position(position);
+				window.get(bytes);
+				value = new String(bytes, CaptureLogWriter.CHARSET);
+				position += valueLength;
+			}
+			event.addParameter(name, value);
+		}
+		return event;
+	}
+
+	private String getString(int id) {
+		return id == CaptureLogWriter.NO_STRING ? null : strings.get(id);
+	}
+
+	/**
+	 * Maps the window containing the requested region of the file
+	 *
+	 * @return the position of the region in the window
+	 */
+	private int map(long offset, int length) throws IOException {
+		if (window == null || offset < windowStart || offset + length > windowStart + window.capacity()) {
+			long size = Math.min(fileSize - offset, Math.max(WINDOW_SIZE, length));
+			window = channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+			windowStart = offset;
+		}
+		return (int) (offset - windowStart);
+	}
+
+	private class CapturedEventList extends AbstractList<CapturedEvent> implements RandomAccess {
+		private final Map<Integer, CapturedEvent> cache = new LinkedHashMap<Integer, CapturedEvent>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, CapturedEvent> eldest) {
+				return size() > VIEW_CACHE_SIZE;
+			}
+		};
+
+		@Override
+		public CapturedEvent get(int index) {
+			if (index < 0 || index >= eventCount) {
+				throw new IndexOutOfBoundsException(String.format("Index: %d, size: %d", index, eventCount));
+			}
+			Integer key = Integer.valueOf(index);
+			CapturedEvent event = cache.get(key);
+			if (event == null) {
+				try {
+					event = readEvent(index);
+				} catch (IOException exc) {
+					throw new IllegalStateException(String.format("Cannot read the event %d from %s", index, file),
+							exc);
+				}
+				cache.put(key, event);
+			}
+			return event;
+		}
+
+		@Override
+		public int size() {
+			return eventCount;
+		}
+	}
+}
@@ -0,0 +1,455 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.tools.event.spy.internal.core;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.e4.tools.event.spy.internal.model.CapturedEvent;
+import org.eclipse.e4.tools.event.spy.internal.model.Parameter;
+
+/**
+ * Appends the captured events to a file on a background thread. The events are
+ * written either in the binary capture log format, which can be opened again
+ * by the {@link CaptureLogReader}, or as NDJSON for the external tools.
+ * <p>
+ * The binary log starts with the {@link #MAGIC} bytes and the format version,
+ * followed by records made of a type byte, the payload length and the payload.
+ * The strings are written once in {@link #STRING_RECORD}s and referenced by id
+ * from the {@link #EVENT_RECORD}s, the parameter values are written inline.
+ * <p>
+ * When a maximum file size is set, the file is rolled once it is exceeded:
+ * "events.evlog" is renamed "events.1.evlog", the previous rolled files are
+ * shifted and the oldest ones deleted. Every file is a complete log.
+ */
+public class CaptureLogWriter {
+	public enum Format {
+		Binary("evlog"), Ndjson("ndjson");
+
+		private String extension;
+
+		private Format(String extension) {
+			this.extension = extension;
+		}
+
+		public String getExtension() {
+			return extension;
+		}
+
+		public static Format forFile(File file) {
+			return file.getName().endsWith("." + Ndjson.extension) ? Ndjson : Binary;
+		}
+	}
+
+	static final byte[] MAGIC = new byte[] { 'E', '4', 'E', 'V', 'L', 'O', 'G', 0 };
+
+	static final int VERSION = 1;
+
+	static final byte STRING_RECORD = 1;
+
+	static final byte EVENT_RECORD = 2;
+
+	static final int NO_STRING = -1;
+
+	static final String CHARSET = "UTF-8";
+
+	public static final long UNLIMITED = 0;
+
+	private static final int QUEUE_CAPACITY = 65536;
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private static final long POLL_TIMEOUT = 100;
+
+	private final File file;
+
+	private final Format format;
+
+	private final BlockingQueue<CapturedEvent> queue = new LinkedBlockingQueue<CapturedEvent>(QUEUE_CAPACITY);
+
+	private final AtomicLong written = new AtomicLong();
+
+	private final AtomicLong dropped = new AtomicLong();
+
+	private volatile boolean closed;
+
+	private volatile IOException error;
+
+	private Thread thread;
+
+	private long maxFileSize = UNLIMITED;
+
+	private int maxRolledFiles;
+
+	// used by the writing thread only once the file is opened
+	private CountingOutputStream output;
+
+	private RecordEncoder encoder;
+
+	public CaptureLogWriter(File file, Format format) {
+		this.file = file;
+		this.format = format;
+	}
+
+	/**
+	 * Rolls the file when its size exceeds the maximum, it must be called
+	 * before the file is opened
+	 *
+	 * @param maxFileSize
+	 *            the maximum size of a file in bytes or {@link #UNLIMITED}
+	 * @param maxRolledFiles
+	 *            the number of rolled files kept besides the current one
+	 */
+	public void setRolling(long maxFileSize, int maxRolledFiles) {
+		this.maxFileSize = maxFileSize;
+		this.maxRolledFiles = maxRolledFiles;
+	}
+
+	/**
+	 * Creates the file and starts the writing thread
+	 */
+	public void open() throws IOException {
+		openFile();
+
+		thread = new Thread("Event spy capture log writer") {
+			@Override
+			public void run() {
+				try {
+					writeEvents();
+				} catch (IOException exc) {
+					error = exc;
+				} finally {
+					try {
+						output.close();
+					} catch (IOException exc) {
+						if (error == null) {
+							error = exc;
+						}
+					}
+				}
+			}
+		};
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Queues the event to be written, it can be called from any thread. The
+	 * event is dropped when the writing thread does not keep up.
+	 */
+	public void append(CapturedEvent event) {
+		if (closed || error != null || !queue.offer(event)) {
+			dropped.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Writes the queued events and closes the file
+	 *
+	 * @throws IOException
+	 *             the first error which has stopped the writing
+	 */
+	public void close() throws IOException {
+		closed = true;
+		if (thread != null) {
+			try {
+				thread.join();
+			} catch (InterruptedException exc) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		if (error != null) {
+			throw error;
+		}
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public long getWrittenCount() {
+		return written.get();
+	}
+
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+
+	/**
+	 * @return the file the events are rolled to, 1 for the most recent one
+	 */
+	public File getRolledFile(int index) {
+		String name = file.getName();
+		int extension = name.lastIndexOf('.');
+		String rolledName = extension > 0 ? String.format("%s.%d%s", name.substring(0, extension), index,
+				name.substring(extension)) : String.format("%s.%d", name, index);
+		return new File(file.getParentFile(), rolledName);
+	}
+
+	private void openFile() throws IOException {
+		output = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+		encoder = format == Format.Binary ? new BinaryEncoder(output) : new NdjsonEncoder(output);
+		try {
+			encoder.writeHeader();
+		} catch (IOException exc) {
+			output.close();
+			throw exc;
+		}
+	}
+
+	private void rollFile() throws IOException {
+		output.close();
+		if (maxRolledFiles > 0) {
+			File oldest = getRolledFile(maxRolledFiles);
+			if (oldest.exists() && !oldest.delete()) {
+				throw new IOException(String.format("Cannot delete the rolled capture log %s", oldest));
+			}
+			for (int i = maxRolledFiles - 1; i >= 1; i--) {
+				File rolledFile = getRolledFile(i);
+				if (rolledFile.exists() && !rolledFile.renameTo(getRolledFile(i + 1))) {
+					throw new IOException(String.format("Cannot rename the rolled capture log %s", rolledFile));
+				}
+			}
+			if (!file.renameTo(getRolledFile(1))) {
+				throw new IOException(String.format("Cannot roll the capture log %s", file));
+			}
+		}
+		openFile();
+	}
+
+	private void writeEvents() throws IOException {
+		List<CapturedEvent> batch = new ArrayList<CapturedEvent>();
+		while (!closed || !queue.isEmpty()) {
+			CapturedEvent event;
+			try {
+				event = queue.poll(POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException exc) {
+				break;
+			}
+			if (event == null) {
+				output.flush();
+				continue;
+			}
+			batch.add(event);
+			queue.drainTo(batch);
+			for (CapturedEvent capturedEvent : batch) {
+				encoder.writeEvent(capturedEvent);
+				if (maxFileSize != UNLIMITED && output.getCount() >= maxFileSize) {
+					rollFile();
+				}
+			}
+			written.addAndGet(batch.size());
+			batch.clear();
+		}
+	}
+
+	private static String toText(Object value) {
+		return value == null ? null : value.toString();
+	}
+
+	private static class CountingOutputStream extends FilterOutputStream {
+		private long count;
+
+		CountingOutputStream(OutputStream output) {
+			super(output);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+
+		long getCount() {
+			return count;
+		}
+	}
+
+	private interface RecordEncoder {
+		void writeHeader() throws IOException;
+
+		void writeEvent(CapturedEvent event) throws IOException;
+	}
+
+	private static class BinaryEncoder implements RecordEncoder {
+		private final DataOutputStream output;
+
+		private final ByteArrayOutputStream payloadBytes = new ByteArrayOutputStream();
+
+		private final DataOutputStream payload = new DataOutputStream(payloadBytes);
+
+		private final Map<String, Integer> stringIds = new HashMap<String, Integer>();
+
+		BinaryEncoder(OutputStream output) {
+			this.output = new DataOutputStream(output);
+		}
+
+		@Override
+		public void writeHeader() throws IOException {
+			output.write(MAGIC);
+			output.writeInt(VERSION);
+		}
+
+		@Override
+		public void writeEvent(CapturedEvent event) throws IOException {
+			List<Parameter> parameters = event.getParameters();
+			int[] parameterNameIds = new int[parameters.size()];
+
+			// the strings have to be written before the event referencing them
+			int topicId = toStringId(event.getTopic());
+			int publisherId = toStringId(event.getPublisherClassName());
+			int changedElementId = toStringId(event.getChangedElementClassName());
+			for (int i = 0; i < parameters.size(); i++) {
+				parameterNameIds[i] = toStringId(parameters.get(i).getName());
+			}
+
+			payload.writeLong(event.getTimestamp());
+			payload.writeInt(topicId);
+			payload.writeInt(publisherId);
+			payload.writeInt(changedElementId);
+			payload.writeInt(parameters.size());
+			for (int i = 0; i < parameters.size(); i++) {
+				payload.writeInt(parameterNameIds[i]);
+				writeText(payload, toText(parameters.get(i).getValue()));
+			}
+			writeRecord(EVENT_RECORD);
+		}
+
+		private int toStringId(String text) throws IOException {
+			if (text == null) {
+				return NO_STRING;
+			}
+			Integer id = stringIds.get(text);
+			if (id == null) {
+				id = Integer.valueOf(stringIds.size());
+				stringIds.put(text, id);
+
+				payload.writeInt(id.intValue());
+				payload.write(text.getBytes(CHARSET));
+				writeRecord(STRING_RECORD);
+			}
+			return id.intValue();
+		}
+
+		private void writeText(DataOutputStream out, String text) throws IOException {
+			if (text == null) {
+				out.writeInt(NO_STRING);
+				return;
+			}
+			byte[] bytes = text.getBytes(CHARSET);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+
+		private void writeRecord(byte type) throws IOException {
+			output.writeByte(type);
+			output.writeInt(payloadBytes.size());
+			payloadBytes.writeTo(output);
+			payloadBytes.reset();
+		}
+	}
+
+	private static class NdjsonEncoder implements RecordEncoder {
+		private final OutputStream output;
+
+		private final StringBuilder line = new StringBuilder();
+
+		NdjsonEncoder(OutputStream output) {
+			this.output = output;
+		}
+
+		@Override
+		public void writeHeader() {
+			// every line is a self contained JSON object
+		}
+
+		@Override
+		public void writeEvent(CapturedEvent event) throws IOException {
+			line.setLength(0);
+			line.append("{\"timestamp\":").append(event.getTimestamp());
+			appendField("topic", event.getTopic());
+			appendField("publisher", event.getPublisherClassName());
+			appendField("changedElement", event.getChangedElementClassName());
+			line.append(",\"parameters\":[");
+
+			List<Parameter> parameters = event.getParameters();
+			for (int i = 0; i < parameters.size(); i++) {
+				line.append(i > 0 ? ",{" : "{");
+				line.append("\"name\":");
+				appendString(parameters.get(i).getName());
+				appendField("value", toText(parameters.get(i).getValue()));
+				line.append('}');
+			}
+			line.append("]}\n");
+			output.write(line.toString().getBytes(CHARSET));
+		}
+
+		private void appendField(String name, String value) {
+			line.append(",\"").append(name).append("\":");
+			appendString(value);
+		}
+
+		private void appendString(String value) {
+			if (value == null) {
+				line.append("null");
+				return;
+			}
+			line.append('"');
+			for (int i = 0; i < value.length(); i++) {
+				char c = value.charAt(i);
+				switch (c) {
+				case '"':
+					line.append("\\\"");
+					break;
+				case '\\':
+					line.append("\\\\");
+					break;
+				case '\n':
+					line.append("\\n");
+					break;
+				case '\r':
+					line.append("\\r");
+					break;
+				case '\t':
+					line.append("\\t");
+					break;
+				default:
+					if (c < ' ') {
+						line.append(String.format("\\u%04x", Integer.valueOf(c)));
+					} else {
+						line.append(c);
+					}
+				}
+			}
+			line.append('"');
+		}
+	}
+}
@@ -0,0 +1,161 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.tools.event.spy.internal.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.eclipse.e4.core.services.events.IEventBroker;
+import org.eclipse.e4.tools.event.spy.internal.model.CapturedEvent;
+import org.eclipse.e4.tools.event.spy.internal.model.CapturedEventFilter;
+
+/**
+ * A single capturing of the events, from its start to the delivery of the last
+ * event published before it has been stopped. The subscription to the broker
+ * and the draining of the captured events are run by the lifecycle executor,
+ * so starting and stopping a session returns immediately.
+ * <p>
+ * Every session has its own generation, the events are delivered with their
+ * session so the consumers can drop the events of the previous sessions.
+ */
+public class CaptureSession {
+	public enum State {
+		Starting, Capturing, Draining, Stopped
+	}
+
+	public interface Listener {
+		/**
+		 * Called by the capture consumer thread
+		 */
+		void newEvent(CaptureSession session, CapturedEvent event);
+
+		/**
+		 * Called with {@link State#Starting} and {@link State#Draining} by the
+		 * thread starting and stopping the session, with the other states by
+		 * the lifecycle executor thread
+		 */
+		void stateChanged(CaptureSession session, State state);
+	}
+
+	private static final AtomicInteger generations = new AtomicInteger();
+
+	private final int generation = generations.incrementAndGet();
+
+	private final AtomicReference<State> state = new AtomicReference<State>(State.Stopped);
+
+	private final EventMonitor eventMonitor;
+
+	private final Executor lifecycleExecutor;
+
+	private final Listener listener;
+
+	private volatile Throwable error;
+
+	public CaptureSession(IEventBroker eventBroker, Executor lifecycleExecutor, Listener listener) {
+		this.eventMonitor = new EventMonitor(eventBroker);
+		this.lifecycleExecutor = lifecycleExecutor;
+		this.listener = listener;
+		eventMonitor.setNewEventListener(new EventMonitor.NewEventListener() {
+			@Override
+			public void newEvent(CapturedEvent event) {
+				// the events are captured as soon as the monitor has
+				// subscribed, before the session is seen as capturing
+				if (state.get() != State.Stopped) {
+					CaptureSession.this.listener.newEvent(CaptureSession.this, event);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Subscribes to the events on the lifecycle executor, the filters are
+	 * copied
+	 */
+	public void start(final String baseTopic, Collection<CapturedEventFilter> filters) {
+		if (!state.compareAndSet(State.Stopped, State.Starting)) {
+			throw new IllegalStateException(String.format("The capture session cannot be started when %s",
+					state.get()));
+		}
+		final Collection<CapturedEventFilter> startFilters = new ArrayList<CapturedEventFilter>(filters);
+		listener.stateChanged(this, State.Starting);
+		lifecycleExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					eventMonitor.start(baseTopic, startFilters);
+				} catch (RuntimeException exc) {
+					error = exc;
+					eventMonitor.stop();
+					state.set(State.Stopped);
+					listener.stateChanged(CaptureSession.this, State.Stopped);
+					return;
+				}
+				// the session could have been stopped while it was starting
+				if (state.compareAndSet(State.Starting, State.Capturing)) {
+					listener.stateChanged(CaptureSession.this, State.Capturing);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Unsubscribes and waits on the lifecycle executor for the delivery of the
+	 * events published before, it does nothing when the session is not
+	 * started
+	 */
+	public void stop() {
+		State currentState = state.get();
+		if ((currentState != State.Starting && currentState != State.Capturing)
+				|| !state.compareAndSet(currentState, State.Draining)) {
+			return;
+		}
+		listener.stateChanged(this, State.Draining);
+		lifecycleExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				eventMonitor.stop();
+				if (state.compareAndSet(State.Draining, State.Stopped)) {
+					listener.stateChanged(CaptureSession.this, State.Stopped);
+				}
+			}
+		});
+	}
+
+	public State getState() {
+		return state.get();
+	}
+
+	public int getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * @return the error which has prevented the session from starting, null
+	 *         when none
+	 */
+	public Throwable getError() {
+		return error;
+	}
+
+	public CaptureStatistics getStatistics() {
+		return eventMonitor.getStatistics();
+	}
+
+	/**
+	 * @see EventMonitor#setPublisherSamplingInterval(int)
+	 */
+	public void setPublisherSamplingInterval(int samplingInterval) {
+		eventMonitor.setPublisherSamplingInterval(samplingInterval);
+	}
+}
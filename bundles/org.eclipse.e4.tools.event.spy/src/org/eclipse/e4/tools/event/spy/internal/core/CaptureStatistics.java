@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.tools.event.spy.internal.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters describing the cost of the event spy on the event publishers and the
+ * events lost by the capture pipeline.
+ */
+public class CaptureStatistics {
+	private final AtomicLong received = new AtomicLong();
+
+	private final AtomicLong overruns = new AtomicLong();
+
+	private final AtomicLong captured = new AtomicLong();
+
+	private final AtomicLong publisherNanos = new AtomicLong();
+
+	private final AtomicLong maxPublisherNanos = new AtomicLong();
+
+	public void eventReceived(long nanos) {
+		received.incrementAndGet();
+		publisherNanos.addAndGet(nanos);
+
+		long max = maxPublisherNanos.get();
+		while (nanos > max && !maxPublisherNanos.compareAndSet(max, nanos)) {
+			max = maxPublisherNanos.get();
+		}
+	}
+
+	public void eventOverrun() {
+		overruns.incrementAndGet();
+	}
+
+	public void eventCaptured() {
+		captured.incrementAndGet();
+	}
+
+	public long getReceived() {
+		return received.get();
+	}
+
+	public long getOverruns() {
+		return overruns.get();
+	}
+
+	public long getCaptured() {
+		return captured.get();
+	}
+
+	public long getAveragePublisherNanos() {
+		long count = received.get();
+		return count == 0 ? 0 : publisherNanos.get() / count;
+	}
+
+	public long getMaxPublisherNanos() {
+		return maxPublisherNanos.get();
+	}
+
+	public void reset() {
+		received.set(0);
+		overruns.set(0);
+		captured.set(0);
+		publisherNanos.set(0);
+		maxPublisherNanos.set(0);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Captured: %d, dropped: %d, publisher overhead: avg %.1f us, max %.1f us", getCaptured(),
+				getOverruns(), getAveragePublisherNanos() / 1000.0, getMaxPublisherNanos() / 1000.0);
+	}
+}
@@ -11,114 +11,688 @@
 package org.eclipse.e4.tools.event.spy.internal.core;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.eclipse.e4.tools.event.spy.internal.model.CapturedEvent;
 import org.eclipse.e4.tools.event.spy.internal.model.CapturedEventFilter;
 import org.eclipse.e4.tools.event.spy.internal.model.ItemToFilter;
+import org.eclipse.e4.tools.event.spy.internal.model.NumericRange;
 import org.eclipse.e4.tools.event.spy.internal.model.Operator;
 import org.eclipse.e4.tools.event.spy.internal.model.Parameter;
 import org.eclipse.e4.tools.event.spy.internal.model.SpecialValue;
 
 public class CapturedEventFilterMatcher {
+	/**
+	 * The minimal number of Contains and NotContains filters of a topic,
+	 * publisher or changed element for them to be matched together by an
+	 * {@link AhoCorasickAutomaton}
+	 */
+	public static final int MULTI_CONTAINS_MIN_FILTERS = 4;
+
+	/**
+	 * A filter translated into a predicate specialized for its item to filter
+	 * and its operator. Compiled filters keep some scratch state, an instance
+	 * must be used by a single thread at a time.
+	 */
+	public interface CompiledFilter {
+		boolean matches(CapturedEvent event);
+	}
+
+	private static final int PATTERN_FLAGS = Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
+
+	private static final CompiledFilter MATCH_ALL = new CompiledFilter() {
+		@Override
+		public boolean matches(CapturedEvent event) {
+			return true;
+		}
+	};
+
 	public boolean matches(CapturedEvent event, CapturedEventFilter filter) {
-		Object value = getItemToFilterValue(event, filter.getItemToFilter());
+		return compile(filter).matches(event);
+	}
+
+	/**
+	 * @return the predicate accepting the events matching all the filters
+	 */
+	public CompiledFilter compile(Collection<CapturedEventFilter> filters) {
+		if (filters == null || filters.isEmpty()) {
+			return MATCH_ALL;
+		}
+		Map<ItemToFilter, List<CapturedEventFilter>> containsFilters = new EnumMap<ItemToFilter, List<CapturedEventFilter>>(
+				ItemToFilter.class);
+		List<CompiledFilter> compiled = new ArrayList<CompiledFilter>(filters.size());
+		for (CapturedEventFilter filter : filters) {
+			if (isMultiContainsCandidate(filter)) {
+				List<CapturedEventFilter> itemFilters = containsFilters.get(filter.getItemToFilter());
+				if (itemFilters == null) {
+					itemFilters = new ArrayList<CapturedEventFilter>();
+					containsFilters.put(filter.getItemToFilter(), itemFilters);
+				}
+				itemFilters.add(filter);
+			} else {
+				compiled.add(compile(filter));
+			}
+		}
+		for (Map.Entry<ItemToFilter, List<CapturedEventFilter>> entry : containsFilters.entrySet()) {
+			List<CapturedEventFilter> itemFilters = entry.getValue();
+			if (itemFilters.size() >= MULTI_CONTAINS_MIN_FILTERS) {
+				compiled.add(compile(entry.getKey(), new MultiContainsMatcher(itemFilters)));
+			} else {
+				for (CapturedEventFilter filter : itemFilters) {
+					compiled.add(compile(filter));
+				}
+			}
+		}
+		return compiled.size() == 1 ? compiled.get(0) : new AllOf(compiled);
+	}
+
+	public CompiledFilter compile(CapturedEventFilter filter) {
+		return compile(filter.getItemToFilter(), compileValueMatcher(filter.getValue(), filter.getOperator()));
+	}
+
+	/**
+	 * The filters of a parameter are matched by any parameter, so they cannot
+	 * be merged
+	 */
+	private boolean isMultiContainsCandidate(CapturedEventFilter filter) {
+		Operator operator = filter.getOperator();
+		ItemToFilter itemToFilter = filter.getItemToFilter();
+		return (operator == Operator.Contains || operator == Operator.NotContains)
+				&& (itemToFilter == ItemToFilter.Topic || itemToFilter == ItemToFilter.Publisher
+						|| itemToFilter == ItemToFilter.ChangedElement)
+				&& filter.getValue().length() > 0 && !isSpecialValue(filter.getValue());
+	}
+
+	private boolean isSpecialValue(String value) {
+		return SpecialValue.Null.toString().equalsIgnoreCase(value)
+				|| SpecialValue.EmptyString.toString().equalsIgnoreCase(value);
+	}
+
+	private CompiledFilter compile(ItemToFilter itemToFilter, ValueMatcher matcher) {
+		switch (itemToFilter) {
+		case Topic:
+			return new TopicFilter(matcher);
+		case Publisher:
+			return new PublisherFilter(matcher);
+		case ChangedElement:
+			return new ChangedElementFilter(matcher);
+		case ParameterName:
+			return new ParameterNameFilter(matcher);
+		case ParameterValue:
+			return new ParameterValueFilter(matcher);
+		case ParameterNameAndValue:
+			return new ParameterNameAndValueFilter(matcher);
+		default:
+			throw new IllegalArgumentException("Not supported item to filter found: " + itemToFilter.toString());
+		}
+	}
+
+	private ValueMatcher compileValueMatcher(String expected, Operator operator) {
+		if (operator.isTextComparison() && SpecialValue.Null.toString().equalsIgnoreCase(expected)) {
+			return negateIfNeeded(new NullMatcher(), operator);
+		}
+		if (operator.isTextComparison() && SpecialValue.EmptyString.toString().equalsIgnoreCase(expected)) {
+			return negateIfNeeded(new EmptyStringMatcher(), operator);
+		}
+
+		switch (operator) {
+		case Equals:
+		case NotEquals:
+			return negateIfNeeded(new EqualsMatcher(expected), operator);
+		case Contains:
+		case NotContains:
+			return negateIfNeeded(new ContainsMatcher(expected), operator);
+		case StartsWith:
+		case NotStartsWith:
+			return negateIfNeeded(new StartsWithMatcher(expected), operator);
+		case MatchesRegex:
+		case NotMatchesRegex:
+			return negateIfNeeded(new PatternMatcher(Pattern.compile(expected, PATTERN_FLAGS), false), operator);
+		case MatchesGlob:
+		case NotMatchesGlob:
+			return negateIfNeeded(new PatternMatcher(Pattern.compile(toRegex(expected), PATTERN_FLAGS), true),
+					operator);
+		case InRange:
+		case NotInRange:
+			return negateIfNeeded(new RangeMatcher(NumericRange.parse(expected)), operator);
+		case InSet:
+		case NotInSet:
+			return negateIfNeeded(new SetMatcher(expected), operator);
+		default:
+			throw new IllegalArgumentException("Not supported operator found: " + operator);
+		}
+	}
+
+	/**
+	 * Translates the glob, where '*' stands for any text and '?' for any
+	 * character, into a regular expression
+	 */
+	private static String toRegex(String glob) {
+		StringBuilder regex = new StringBuilder();
+		int literalStart = 0;
+		for (int i = 0; i < glob.length(); i++) {
+			char c = glob.charAt(i);
+			if (c == '*' || c == '?') {
+				if (literalStart < i) {
+					regex.append(Pattern.quote(glob.substring(literalStart, i)));
+				}
+				regex.append(c == '*' ? ".*" : ".");
+				literalStart = i + 1;
+			}
+		}
+		if (literalStart < glob.length()) {
+			regex.append(Pattern.quote(glob.substring(literalStart)));
+		}
+		return regex.toString();
+	}
+
+	private ValueMatcher negateIfNeeded(ValueMatcher matcher, Operator operator) {
+		return operator.isPositive() ? matcher : new NotMatcher(matcher);
+	}
+
+	private static abstract class ValueMatcher {
+		abstract boolean matches(Object current);
+
+		/**
+		 * Matches the text which is never null, it is called for the values
+		 * which are not Strings after they have been converted
+		 */
+		boolean matchesText(CharSequence text) {
+			return matches(text);
+		}
+	}
+
+	private static class NotMatcher extends ValueMatcher {
+		private final ValueMatcher matcher;
+
+		NotMatcher(ValueMatcher matcher) {
+			this.matcher = matcher;
+		}
+
+		@Override
+		boolean matches(Object current) {
+			return !matcher.matches(current);
+		}
+
+		@Override
+		boolean matchesText(CharSequence text) {
+			return !matcher.matchesText(text);
+		}
+	}
+
+	private static class NullMatcher extends ValueMatcher {
+		@Override
+		boolean matches(Object current) {
+			return current == null || matchesText(current.toString());
+		}
+
+		@Override
+		boolean matchesText(CharSequence text) {
+			return TextUtils.equalsIgnoreCase(text, SpecialValue.Null.toString());
+		}
+	}
+
+	private static class EmptyStringMatcher extends ValueMatcher {
+		@Override
+		boolean matches(Object current) {
+			return current instanceof String && ((String) current).length() == 0;
+		}
+
+		@Override
+		boolean matchesText(CharSequence text) {
+			return text instanceof String && text.length() == 0;
+		}
+	}
+
+	private static abstract class TextMatcher extends ValueMatcher {
+		protected final char[] expected;
+
+		TextMatcher(String expected) {
+			this.expected = expected.toLowerCase(Locale.ENGLISH).toCharArray();
+		}
+
+		@Override
+		boolean matches(Object current) {
+			return current != null && matchesText(current instanceof CharSequence ? (CharSequence) current
+					: current.toString());
+		}
+	}
+
+	private static class EqualsMatcher extends TextMatcher {
+		EqualsMatcher(String expected) {
+			super(expected);
+		}
 
-		if (value instanceof List) {
-			List<?> list = (List<?>) value;
-			for (Object item : list) {
-				if (matches(filter.getValue(), item, filter.getOperator())) {
+		@Override
+		boolean matchesText(CharSequence text) {
+			return text.length() == expected.length && TextUtils.regionMatches(text, 0, expected);
+		}
+	}
+
+	private static class StartsWithMatcher extends TextMatcher {
+		StartsWithMatcher(String expected) {
+			super(expected);
+		}
+
+		@Override
+		boolean matchesText(CharSequence text) {
+			return text.length() >= expected.length && TextUtils.regionMatches(text, 0, expected);
+		}
+	}
+
+	private static class ContainsMatcher extends TextMatcher {
+		ContainsMatcher(String expected) {
+			super(expected);
+		}
+
+		@Override
+		boolean matchesText(CharSequence text) {
+			int last = text.length() - expected.length;
+			for (int i = 0; i <= last; i++) {
+				if (TextUtils.regionMatches(text, i, expected)) {
 					return true;
 				}
 			}
 			return false;
 		}
-		return matches(filter.getValue(), value, filter.getOperator());
 	}
 
-	private Object getItemToFilterValue(CapturedEvent event, ItemToFilter itemToFilter) {
-		if (itemToFilter.equals(ItemToFilter.Topic)) {
-			return event.getTopic();
+	/**
+	 * Regular expression found in the text, or matching the whole text
+	 */
+	private static class PatternMatcher extends ValueMatcher {
+		private final Matcher matcher;
+
+		private final boolean wholeText;
+
+		PatternMatcher(Pattern pattern, boolean wholeText) {
+			this.matcher = pattern.matcher("");
+			this.wholeText = wholeText;
+		}
+
+		@Override
+		boolean matches(Object current) {
+			return current != null && matchesText(TextUtils.toText(current));
+		}
+
+		@Override
+		boolean matchesText(CharSequence text) {
+			matcher.reset(text);
+			try {
+				return wholeText ? matcher.matches() : matcher.find();
+			} finally {
+				matcher.reset("");
+			}
+		}
+	}
+
+	private static class RangeMatcher extends ValueMatcher {
+		private final NumericRange range;
+
+		RangeMatcher(NumericRange range) {
+			this.range = range;
+		}
+
+		@Override
+		boolean matches(Object current) {
+			if (current instanceof Number) {
+				return range.contains(((Number) current).doubleValue());
+			}
+			return current != null && matchesText(TextUtils.toText(current));
+		}
+
+		@Override
+		boolean matchesText(CharSequence text) {
+			try {
+				return range.contains(Double.parseDouble(text.toString().trim()));
+			} catch (NumberFormatException exc) {
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Comma separated values, one of them equals to the text
+	 */
+	private static class SetMatcher extends ValueMatcher {
+		private final Set<String> expected = new HashSet<String>();
+
+		private int minLength = Integer.MAX_VALUE;
+
+		private int maxLength;
+
+		SetMatcher(String expected) {
+			for (String value : expected.split(",")) {
+				String lowerCaseValue = value.trim().toLowerCase(Locale.ENGLISH);
+				this.expected.add(lowerCaseValue);
+				minLength = Math.min(minLength, lowerCaseValue.length());
+				maxLength = Math.max(maxLength, lowerCaseValue.length());
+			}
 		}
-		if (itemToFilter.equals(ItemToFilter.Publisher)) {
-			return event.getPublisherClassName();
+
+		@Override
+		boolean matches(Object current) {
+			return current != null && matchesText(TextUtils.toText(current));
 		}
-		if (itemToFilter.equals(ItemToFilter.ChangedElement)) {
-			return event.getChangedElementClassName();
+
+		@Override
+		boolean matchesText(CharSequence text) {
+			// most of the texts are rejected without being copied
+			if (text.length() < minLength || text.length() > maxLength) {
+				return false;
+			}
+			return expected.contains(text.toString().toLowerCase(Locale.ENGLISH));
 		}
-		if (itemToFilter.equals(ItemToFilter.ParameterName)) {
-			List<String> names = new ArrayList<String>();
-			for (Parameter parameter : event.getParameters()) {
-				names.add(parameter.getName());
+	}
+
+	/**
+	 * Several Contains and NotContains filters matched in a single pass over
+	 * the text: all the contained texts have to be found and none of the not
+	 * contained ones
+	 */
+	private static class MultiContainsMatcher extends ValueMatcher {
+		private final AhoCorasickAutomaton automaton;
+
+		// the pattern has to be contained or not, it can be both
+		private final boolean[] contained;
+
+		private final boolean[] notContained;
+
+		private final int containedCount;
+
+		// scratch state, the patterns found in the current text are marked
+		// with the current stamp
+		private final int[] foundStamps;
+
+		private int stamp;
+
+		MultiContainsMatcher(List<CapturedEventFilter> filters) {
+			List<String> patterns = new ArrayList<String>();
+			Map<String, Integer> patternIds = new HashMap<String, Integer>();
+			for (CapturedEventFilter filter : filters) {
+				String pattern = filter.getValue().toLowerCase(Locale.ENGLISH);
+				if (!patternIds.containsKey(pattern)) {
+					patternIds.put(pattern, Integer.valueOf(patterns.size()));
+					patterns.add(pattern);
+				}
+			}
+			automaton = new AhoCorasickAutomaton(patterns);
+			contained = new boolean[patterns.size()];
+			notContained = new boolean[patterns.size()];
+			for (CapturedEventFilter filter : filters) {
+				int id = patternIds.get(filter.getValue().toLowerCase(Locale.ENGLISH)).intValue();
+				if (filter.getOperator().isPositive()) {
+					contained[id] = true;
+				} else {
+					notContained[id] = true;
+				}
+			}
+			int count = 0;
+			for (boolean patternContained : contained) {
+				count += patternContained ? 1 : 0;
 			}
-			return names;
+			containedCount = count;
+			foundStamps = new int[patterns.size()];
 		}
-		if (itemToFilter.equals(ItemToFilter.ParameterValue)) {
-			List<Object> values = new ArrayList<Object>();
-			for (Parameter parameter : event.getParameters()) {
-				values.add(parameter.getValue());
+
+		@Override
+		boolean matches(Object current) {
+			if (current == null) {
+				// null contains nothing
+				return containedCount == 0;
 			}
-			return values;
+			return matchesText(TextUtils.toText(current));
 		}
-		if (itemToFilter.equals(ItemToFilter.ParameterNameAndValue)) {
-			List<String> nameAndValues = new ArrayList<String>();
-			for (Parameter parameter : event.getParameters()) {
-				String nameAndValue = String.format(SpecialValue.NameAndValue.toString(), parameter.getName().trim(),
-						(parameter.getValue() == null ? SpecialValue.Null : parameter.getValue().toString().trim()));
-				nameAndValues.add(nameAndValue);
+
+		@Override
+		boolean matchesText(CharSequence text) {
+			if (++stamp == 0) {
+				Arrays.fill(foundStamps, 0);
+				stamp = 1;
+			}
+			int foundCount = 0;
+			int state = AhoCorasickAutomaton.ROOT;
+			for (int i = 0; i < text.length(); i++) {
+				state = automaton.next(state, Character.toLowerCase(text.charAt(i)));
+				for (int id : automaton.getMatches(state)) {
+					if (notContained[id]) {
+						return false;
+					}
+					if (foundStamps[id] != stamp) {
+						foundStamps[id] = stamp;
+						foundCount++;
+					}
+				}
 			}
-			return nameAndValues;
+			return foundCount == containedCount;
+		}
+	}
+
+	private static class AllOf implements CompiledFilter {
+		private final CompiledFilter[] filters;
+
+		AllOf(List<CompiledFilter> filters) {
+			this.filters = filters.toArray(new CompiledFilter[filters.size()]);
 		}
 
-		throw new IllegalArgumentException("Not supported item to filter found: " + itemToFilter.toString());
+		@Override
+		public boolean matches(CapturedEvent event) {
+			for (CompiledFilter filter : filters) {
+				if (!filter.matches(event)) {
+					return false;
+				}
+			}
+			return true;
+		}
 	}
 
-	private boolean matches(String expected, Object current, Operator operator) {
-		if (SpecialValue.Null.toString().equalsIgnoreCase(expected)) {
-			return operator.isPositive() ? matchesToNull(current) : !matchesToNull(current);
+	private static class TopicFilter implements CompiledFilter {
+		private final ValueMatcher matcher;
+
+		TopicFilter(ValueMatcher matcher) {
+			this.matcher = matcher;
 		}
-		if (SpecialValue.EmptyString.toString().equalsIgnoreCase(expected)) {
-			return operator.isPositive() ? matchesToEmptyString(current) : !matchesToEmptyString(current);
+
+		@Override
+		public boolean matches(CapturedEvent event) {
+			return matcher.matches(event.getTopic());
 		}
-		if (Operator.Equals.equals(operator)) {
-			return equalsTo(expected, current);
+	}
+
+	private static class PublisherFilter implements CompiledFilter {
+		private final ValueMatcher matcher;
+
+		PublisherFilter(ValueMatcher matcher) {
+			this.matcher = matcher;
 		}
-		if (Operator.NotEquals.equals(operator)) {
-			return !equalsTo(expected, current);
+
+		@Override
+		public boolean matches(CapturedEvent event) {
+			return matcher.matches(event.getPublisherClassName());
 		}
-		if (Operator.Contains.equals(operator)) {
-			return contains(expected, current);
+	}
+
+	private static class ChangedElementFilter implements CompiledFilter {
+		private final ValueMatcher matcher;
+
+		ChangedElementFilter(ValueMatcher matcher) {
+			this.matcher = matcher;
 		}
-		if (Operator.NotContains.equals(operator)) {
-			return !contains(expected, current);
+
+		@Override
+		public boolean matches(CapturedEvent event) {
+			return matcher.matches(event.getChangedElementClassName());
 		}
-		if (Operator.StartsWith.equals(operator)) {
-			return startsWith(expected, current);
+	}
+
+	/**
+	 * Base of the parameter filters, the filter matches when any of the
+	 * parameters matches
+	 */
+	private static abstract class ParameterFilter implements CompiledFilter {
+		protected final ValueMatcher matcher;
+
+		ParameterFilter(ValueMatcher matcher) {
+			this.matcher = matcher;
 		}
-		if (Operator.NotStartsWith.equals(operator)) {
-			return !startsWith(expected, current);
+
+		@Override
+		public boolean matches(CapturedEvent event) {
+			List<Parameter> parameters = event.getParameters();
+			for (int i = 0; i < parameters.size(); i++) {
+				if (matches(parameters.get(i))) {
+					return true;
+				}
+			}
+			return false;
 		}
 
-		throw new IllegalArgumentException("Not supported operator found: " + operator);
+		protected abstract boolean matches(Parameter parameter);
 	}
 
-	private boolean matchesToEmptyString(Object current) {
-		return current != null && current instanceof String && current.toString().length() == 0;
+	private static class ParameterNameFilter extends ParameterFilter {
+		ParameterNameFilter(ValueMatcher matcher) {
+			super(matcher);
+		}
+
+		@Override
+		protected boolean matches(Parameter parameter) {
+			return matcher.matches(parameter.getName());
+		}
 	}
 
-	private boolean matchesToNull(Object current) {
-		return current == null || current.toString().equalsIgnoreCase(SpecialValue.Null.toString());
+	private static class ParameterValueFilter extends ParameterFilter {
+		ParameterValueFilter(ValueMatcher matcher) {
+			super(matcher);
+		}
+
+		@Override
+		protected boolean matches(Parameter parameter) {
+			return matcher.matches(parameter.getValue());
+		}
 	}
 
-	private boolean equalsTo(String expected, Object current) {
-		return current != null && expected.equalsIgnoreCase(current.toString());
+	private static class ParameterNameAndValueFilter extends ParameterFilter {
+		private final NameAndValueText text = new NameAndValueText();
+
+		ParameterNameAndValueFilter(ValueMatcher matcher) {
+			super(matcher);
+		}
+
+		@Override
+		protected boolean matches(Parameter parameter) {
+			Object value = parameter.getValue();
+			text.set(parameter.getName(), value == null ? SpecialValue.Null.toString() : value.toString());
+			try {
+				return matcher.matchesText(text);
+			} finally {
+				text.set(null, null);
+			}
+		}
 	}
 
-	private boolean contains(String expected, Object current) {
-		return current != null && current.toString().toLowerCase().contains(expected.toLowerCase());
+	/**
+	 * The "name=value" text of a parameter with the trimmed name and value,
+	 * viewed without being copied
+	 */
+	private static class NameAndValueText implements CharSequence {
+		private String name;
+		private int nameStart;
+		private int nameLength;
+
+		private String value;
+		private int valueStart;
+		private int valueLength;
+
+		void set(String name, String value) {
+			this.name = name;
+			this.value = value;
+			if (name != null) {
+				nameStart = TextUtils.trimStart(name);
+				nameLength = TextUtils.trimEnd(name) - nameStart;
+				valueStart = TextUtils.trimStart(value);
+				valueLength = TextUtils.trimEnd(value) - valueStart;
+			}
+		}
+
+		@Override
+		public int length() {
+			return nameLength + 1 + valueLength;
+		}
+
+		@Override
+		public char charAt(int index) {
+			if (index < nameLength) {
+				return name.charAt(nameStart + index);
+			}
+			if (index == nameLength) {
+				return '=';
+			}
+			return value.charAt(valueStart + index - nameLength - 1);
+		}
+
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			return toString().subSequence(start, end);
+		}
+
+		@Override
+		public String toString() {
+			return new StringBuilder(length()).append(this).toString();
+		}
 	}
 
-	private boolean startsWith(String expected, Object current) {
-		return current != null && current.toString().toLowerCase().startsWith(expected.toLowerCase());
+	private static class TextUtils {
+		static boolean regionMatches(CharSequence text, int offset, char[] lowerCaseExpected) {
+			for (int i = 0; i < lowerCaseExpected.length; i++) {
+				char c = text.charAt(offset + i);
+				if (c != lowerCaseExpected[i] && Character.toLowerCase(c) != lowerCaseExpected[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		static CharSequence toText(Object value) {
+			return value instanceof CharSequence ? (CharSequence) value : value.toString();
+		}
+
+		static boolean equalsIgnoreCase(CharSequence text, String expected) {
+			if (text.length() != expected.length()) {
+				return false;
+			}
+			for (int i = 0; i < expected.length(); i++) {
+				if (Character.toLowerCase(text.charAt(i)) != Character.toLowerCase(expected.charAt(i))) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		static int trimStart(String text) {
+			int start = 0;
+			while (start < text.length() && text.charAt(start) <= ' ') {
+				start++;
+			}
+			return start;
+		}
+
+		static int trimEnd(String text) {
+			int end = text.length();
+			while (end > 0 && text.charAt(end - 1) <= ' ') {
+				end--;
+			}
+			return Math.max(end, trimStart(text));
+		}
 	}
 }
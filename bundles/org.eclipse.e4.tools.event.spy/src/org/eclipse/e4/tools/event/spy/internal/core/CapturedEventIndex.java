@@ -0,0 +1,293 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.tools.event.spy.internal.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.eclipse.e4.tools.event.spy.internal.model.CapturedEvent;
+import org.eclipse.e4.tools.event.spy.internal.model.Parameter;
+
+/**
+ * Inverted index of the captured events. The topics, publishers, changed
+ * element classes and parameter names and values are split into lower case
+ * tokens made of letters and digits, every token is mapped to the ascending
+ * sequences of the events containing it.
+ * <p>
+ * A query matches the events containing, for each of its tokens, a token
+ * starting with it. It is not thread safe.
+ */
+public class CapturedEventIndex {
+	private static final int INITIAL_POSTINGS_CAPACITY = 4;
+
+	private static final long[] NO_SEQUENCES = new long[0];
+
+	// the estimated memory used by a sequence in the postings
+	public static final int POSTING_SIZE = 8;
+
+	// the estimated memory used by a token without its characters: the tree
+	// map entry, the string and the postings
+	private static final int TOKEN_SIZE = 120;
+
+	private final TreeMap<String, Postings> postings = new TreeMap<String, Postings>();
+
+	private long postingCount;
+
+	private long tokenBytes;
+
+	/**
+	 * Indexes the event, the events have to be added in the order of their
+	 * sequences
+	 *
+	 * @return the number of postings added for the event
+	 */
+	public int add(long sequence, CapturedEvent event) {
+		long previousCount = postingCount;
+		addText(sequence, event.getTopic());
+		addText(sequence, event.getPublisherClassName());
+		addText(sequence, event.getChangedElementClassName());
+		for (Parameter parameter : event.getParameters()) {
+			addText(sequence, parameter.getName());
+			if (parameter.getValue() != null) {
+				addText(sequence, parameter.getValue().toString());
+			}
+		}
+		return (int) (postingCount - previousCount);
+	}
+
+	/**
+	 * @return the ascending sequences of the events matching the query, none
+	 *         when the query has no token
+	 */
+	public long[] search(String query) {
+		List<String> tokens = tokenize(query);
+		long[] result = null;
+		for (String token : tokens) {
+			long[] sequences = findPrefix(token);
+			result = result == null ? sequences : intersect(result, sequences);
+			if (result.length == 0) {
+				break;
+			}
+		}
+		return result != null ? result : NO_SEQUENCES;
+	}
+
+	/**
+	 * Removes the sequences of the events which are not retained anymore
+	 */
+	public void retainAll(SequenceFilter filter) {
+		postingCount = 0;
+		tokenBytes = 0;
+		for (Iterator<Map.Entry<String, Postings>> it = postings.entrySet().iterator(); it.hasNext();) {
+			Map.Entry<String, Postings> entry = it.next();
+			Postings tokenPostings = entry.getValue();
+			tokenPostings.retainAll(filter);
+			if (tokenPostings.size == 0) {
+				it.remove();
+			} else {
+				postingCount += tokenPostings.size;
+				tokenBytes += getTokenBytes(entry.getKey());
+			}
+		}
+	}
+
+	public void clear() {
+		postings.clear();
+		postingCount = 0;
+		tokenBytes = 0;
+	}
+
+	public int getTokenCount() {
+		return postings.size();
+	}
+
+	public long getPostingCount() {
+		return postingCount;
+	}
+
+	/**
+	 * @return the estimated memory used by the tokens and the postings
+	 */
+	public long getEstimatedBytes() {
+		return tokenBytes + postingCount * POSTING_SIZE;
+	}
+
+	/**
+	 * Splits the text into lower case tokens made of letters and digits
+	 */
+	public static List<String> tokenize(String text) {
+		List<String> tokens = new ArrayList<String>();
+		if (text == null) {
+			return tokens;
+		}
+		int start = -1;
+		for (int i = 0; i <= text.length(); i++) {
+			boolean tokenChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+			if (tokenChar && start < 0) {
+				start = i;
+			} else if (!tokenChar && start >= 0) {
+				tokens.add(text.substring(start, i).toLowerCase(Locale.ENGLISH));
+				start = -1;
+			}
+		}
+		return tokens;
+	}
+
+	/**
+	 * Checks the query tokens against the event without an index, for the
+	 * events which are not indexed
+	 */
+	public static boolean matches(CapturedEvent event, List<String> queryTokens) {
+		List<String> tokens = new ArrayList<String>();
+		tokens.addAll(tokenize(event.getTopic()));
+		tokens.addAll(tokenize(event.getPublisherClassName()));
+		tokens.addAll(tokenize(event.getChangedElementClassName()));
+		for (Parameter parameter : event.getParameters()) {
+			tokens.addAll(tokenize(parameter.getName()));
+			if (parameter.getValue() != null) {
+				tokens.addAll(tokenize(parameter.getValue().toString()));
+			}
+		}
+		for (String queryToken : queryTokens) {
+			if (!containsPrefix(tokens, queryToken)) {
+				return false;
+			}
+		}
+		return !queryTokens.isEmpty();
+	}
+
+	private static boolean containsPrefix(List<String> tokens, String prefix) {
+		for (String token : tokens) {
+			if (token.startsWith(prefix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void addText(long sequence, String text) {
+		if (text == null || text.length() == 0) {
+			return;
+		}
+		for (String token : tokenize(text)) {
+			Postings tokenPostings = postings.get(token);
+			if (tokenPostings == null) {
+				tokenPostings = new Postings();
+				postings.put(token, tokenPostings);
+				tokenBytes += getTokenBytes(token);
+			}
+			if (tokenPostings.add(sequence)) {
+				postingCount++;
+			}
+		}
+	}
+
+	private static long getTokenBytes(String token) {
+		return TOKEN_SIZE + 2 * token.length();
+	}
+
+	private long[] findPrefix(String prefix) {
+		SortedMap<String, Postings> matching = postings.subMap(prefix, prefix + Character.MAX_VALUE);
+		if (matching.isEmpty()) {
+			return NO_SEQUENCES;
+		}
+		if (matching.size() == 1) {
+			Postings tokenPostings = matching.values().iterator().next();
+			return Arrays.copyOf(tokenPostings.sequences, tokenPostings.size);
+		}
+
+		int size = 0;
+		for (Postings tokenPostings : matching.values()) {
+			size += tokenPostings.size;
+		}
+		long[] sequences = new long[size];
+		int position = 0;
+		for (Postings tokenPostings : matching.values()) {
+			System.arraycopy(tokenPostings.sequences, 0, sequences, position, tokenPostings.size);
+			position += tokenPostings.size;
+		}
+		Arrays.sort(sequences);
+		return removeDuplicates(sequences);
+	}
+
+	private static long[] removeDuplicates(long[] sequences) {
+		int size = 0;
+		for (int i = 0; i < sequences.length; i++) {
+			if (size == 0 || sequences[size - 1] != sequences[i]) {
+				sequences[size++] = sequences[i];
+			}
+		}
+		return size == sequences.length ? sequences : Arrays.copyOf(sequences, size);
+	}
+
+	private static long[] intersect(long[] first, long[] second) {
+		long[] result = new long[Math.min(first.length, second.length)];
+		int size = 0;
+		int i = 0;
+		int j = 0;
+		while (i < first.length && j < second.length) {
+			if (first[i] < second[j]) {
+				i++;
+			} else if (first[i] > second[j]) {
+				j++;
+			} else {
+				result[size++] = first[i];
+				i++;
+				j++;
+			}
+		}
+		return Arrays.copyOf(result, size);
+	}
+
+	public interface SequenceFilter {
+		boolean accept(long sequence);
+	}
+
+	private static class Postings {
+		private long[] sequences = new long[INITIAL_POSTINGS_CAPACITY];
+
+		private int size;
+
+		/**
+		 * @return false when the sequence is already the last one, a token
+		 *         repeated in an event is indexed once
+		 */
+		boolean add(long sequence) {
+			if (size > 0 && sequences[size - 1] == sequence) {
+				return false;
+			}
+			if (size == sequences.length) {
+				sequences = Arrays.copyOf(sequences, size * 2);
+			}
+			sequences[size++] = sequence;
+			return true;
+		}
+
+		void retainAll(SequenceFilter filter) {
+			int retained = 0;
+			for (int i = 0; i < size; i++) {
+				if (filter.accept(sequences[i])) {
+					sequences[retained++] = sequences[i];
+				}
+			}
+			size = retained;
+			if (size < sequences.length / 4) {
+				sequences = Arrays.copyOf(sequences, Math.max(INITIAL_POSTINGS_CAPACITY, size * 2));
+			}
+		}
+	}
+}
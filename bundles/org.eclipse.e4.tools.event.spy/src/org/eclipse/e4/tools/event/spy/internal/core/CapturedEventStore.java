@@ -0,0 +1,561 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.tools.event.spy.internal.core;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+import org.eclipse.e4.tools.event.spy.internal.model.CapturedEvent;
+import org.eclipse.e4.tools.event.spy.internal.model.Parameter;
+import org.eclipse.e4.tools.event.spy.internal.model.ParameterSnapshot;
+import org.eclipse.e4.tools.event.spy.internal.model.PublisherCallSite;
+import org.eclipse.e4.tools.event.spy.internal.model.RetentionPolicy;
+
+/**
+ * History of the captured events limited by a {@link RetentionPolicy}. The
+ * events are stored in columns of primitive arrays: the topics, publishers,
+ * changed element classes and parameter names are dictionary encoded and the
+ * parameters of all the events share the same arrays. The evictable events are
+ * kept in circular columns, adding an event and evicting the oldest one are
+ * O(1). The {@link CapturedEvent}s returned by {@link #get(int)} are views
+ * created on demand, two views of the same stored event are equal. The
+ * expanded parameters of the views leaving the view cache are kept by the
+ * sequence of their event, so the next views show them expanded.
+ * <p>
+ * The events are indexed by a {@link CapturedEventIndex} as they are added,
+ * the sequences of the evicted events are removed from the index once they
+ * outnumber the retained events.
+ * <p>
+ * It is not thread safe, it is used from the UI thread.
+ */
+public class CapturedEventStore extends AbstractList<CapturedEvent> implements RandomAccess {
+	private static final int INITIAL_CAPACITY = 1024;
+
+	// the estimated memory used by the columns of a single event, by a single
+	// parameter without its value and by the objects holding the values
+	private static final int EVENT_SIZE = 52;
+
+	private static final int PARAMETER_SIZE = 12;
+
+	private static final int STRING_SIZE = 40;
+
+	private static final int SNAPSHOT_SIZE = 64;
+
+	private static final int OBJECT_SIZE = 16;
+
+	// a hash map entry, its Integer id and the slot in the values list
+	private static final int DICTIONARY_ENTRY_SIZE = 56;
+
+	private static final int VIEW_CACHE_SIZE = 1024;
+
+	private static final int NO_VALUE = -1;
+
+	private RetentionPolicy retentionPolicy = new RetentionPolicy();
+
+	private final Dictionary<String> strings = new Dictionary<String>();
+
+	private final Dictionary<Object> publishers = new Dictionary<Object>();
+
+	// the kept first events are never evicted
+	private final EventColumns firstEvents = new EventColumns();
+
+	private final EventColumns events = new EventColumns();
+
+	private final Map<Long, CapturedEvent> viewCache = new LinkedHashMap<Long, CapturedEvent>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Long, CapturedEvent> eldest) {
+			if (size() <= VIEW_CACHE_SIZE) {
+				return false;
+			}
+			if (isExpanded(eldest.getValue())) {
+				expandedParameters.put(eldest.getKey(), eldest.getValue().getParameters());
+			}
+			return true;
+		}
+	};
+
+	// the parameters of the views out of the cache with an expanded parameter
+	private final Map<Long, List<Parameter>> expandedParameters = new HashMap<Long, List<Parameter>>();
+
+	private long nextSequence;
+
+	private long evictedCount;
+
+	private final CapturedEventIndex index = new CapturedEventIndex();
+
+	private final CapturedEventIndex.SequenceFilter retainedSequences = new CapturedEventIndex.SequenceFilter() {
+		@Override
+		public boolean accept(long sequence) {
+			return indexOf(sequence) >= 0;
+		}
+	};
+
+	// the evicted events whose sequences are still in the index
+	private long unindexedEvictedCount;
+
+	// the postings of these events
+	private long unindexedPostingCount;
+
+	/**
+	 * The policy is applied to the events added afterwards, the retained events
+	 * are not evicted immediately.
+	 */
+	public void setRetentionPolicy(RetentionPolicy retentionPolicy) {
+		this.retentionPolicy = retentionPolicy;
+	}
+
+	public RetentionPolicy getRetentionPolicy() {
+		return retentionPolicy;
+	}
+
+	@Override
+	public boolean add(CapturedEvent event) {
+		modCount++;
+		int postingCount = index.add(nextSequence, event);
+		if (firstEvents.count < retentionPolicy.getKeepFirstCount()) {
+			firstEvents.add(event, postingCount);
+			return true;
+		}
+		if (events.isFull() && !canGrow()) {
+			evictOldest();
+		}
+		events.add(event, postingCount);
+		evict(event.getTimestamp());
+		if (unindexedEvictedCount > size()) {
+			index.retainAll(retainedSequences);
+			unindexedEvictedCount = 0;
+			unindexedPostingCount = 0;
+		}
+		return true;
+	}
+
+	@Override
+	public CapturedEvent get(int index) {
+		if (index < 0 || index >= size()) {
+			throw new IndexOutOfBoundsException(String.format("Index: %d, size: %d", index, size()));
+		}
+		if (index < firstEvents.count) {
+			return getView(firstEvents, index);
+		}
+		return getView(events, index - firstEvents.count);
+	}
+
+	@Override
+	public int size() {
+		return firstEvents.count + events.count;
+	}
+
+	@Override
+	public void clear() {
+		modCount++;
+		firstEvents.clear();
+		events.clear();
+		strings.clear();
+		publishers.clear();
+		viewCache.clear();
+		expandedParameters.clear();
+		index.clear();
+		evictedCount = 0;
+		unindexedEvictedCount = 0;
+		unindexedPostingCount = 0;
+	}
+
+	/**
+	 * @return the ascending indexes of the retained events matching the query,
+	 *         see {@link CapturedEventIndex#search(String)}
+	 */
+	public int[] search(String query) {
+		long[] sequences = index.search(query);
+		int[] indexes = new int[sequences.length];
+		int count = 0;
+		for (long sequence : sequences) {
+			int eventIndex = indexOf(sequence);
+			if (eventIndex >= 0) {
+				indexes[count++] = eventIndex;
+			}
+		}
+		return count == indexes.length ? indexes : Arrays.copyOf(indexes, count);
+	}
+
+	/**
+	 * @return the index of the event with the sequence, -1 when it is not
+	 *         retained
+	 */
+	public int indexOf(long sequence) {
+		int eventIndex = firstEvents.indexOf(sequence);
+		if (eventIndex >= 0) {
+			return eventIndex;
+		}
+		eventIndex = events.indexOf(sequence);
+		return eventIndex >= 0 ? firstEvents.count + eventIndex : -1;
+	}
+
+	public long getEvictedCount() {
+		return evictedCount;
+	}
+
+	/**
+	 * @return the number of kept first events, they are never evicted and
+	 *         precede the other events
+	 */
+	public int getFirstEventsCount() {
+		return firstEvents.count;
+	}
+
+	/**
+	 * @return the estimated memory used by the columns, the parameter values,
+	 *         the dictionaries and the index. The values are estimated from
+	 *         their text lengths, the objects which are not snapshots nor
+	 *         strings are counted as small objects. The postings of the evicted
+	 *         events are not counted, they are removed from the index later.
+	 */
+	public long getEstimatedBytes() {
+		return firstEvents.getEstimatedBytes() + events.getEstimatedBytes() + strings.getEstimatedBytes()
+				+ publishers.getEstimatedBytes() + index.getEstimatedBytes() - unindexedPostingCount
+				* CapturedEventIndex.POSTING_SIZE;
+	}
+
+	private CapturedEvent getView(EventColumns columns, int index) {
+		int slot = columns.toSlot(index);
+		Long sequence = Long.valueOf(columns.sequences[slot]);
+		CapturedEvent view = viewCache.get(sequence);
+		if (view == null) {
+			view = columns.createView(slot, expandedParameters.remove(sequence));
+			viewCache.put(sequence, view);
+		}
+		return view;
+	}
+
+	private void evict(long newestTimestamp) {
+		long maxBytes = retentionPolicy.getMaxBytes();
+		long maxAge = retentionPolicy.getMaxAge();
+		int maxCount = retentionPolicy.getMaxCount();
+
+		while (events.count > 0) {
+			if (maxCount != RetentionPolicy.UNLIMITED && size() > maxCount) {
+				evictOldest();
+			} else if (maxBytes != RetentionPolicy.UNLIMITED && getEstimatedBytes() > maxBytes) {
+				evictOldest();
+			} else if (maxAge != RetentionPolicy.UNLIMITED
+					&& events.timestamps[events.head] < newestTimestamp - maxAge) {
+				evictOldest();
+			} else {
+				break;
+			}
+		}
+	}
+
+	private void evictOldest() {
+		Long sequence = Long.valueOf(events.sequences[events.head]);
+		viewCache.remove(sequence);
+		expandedParameters.remove(sequence);
+		unindexedPostingCount += events.postingCounts[events.head];
+		events.removeOldest();
+		evictedCount++;
+		unindexedEvictedCount++;
+	}
+
+	private boolean canGrow() {
+		int maxCount = retentionPolicy.getMaxCount();
+		return maxCount == RetentionPolicy.UNLIMITED || events.getCapacity() < maxCount - firstEvents.count;
+	}
+
+	/**
+	 * Circular columns of events, the parameters are stored in their own
+	 * circular columns in the order of the events
+	 */
+	private class EventColumns {
+		private long[] sequences;
+		private long[] timestamps;
+		private int[] topicIds;
+		private int[] publisherIds;
+		private int[] changedElementIds;
+		private int[] parameterCounts;
+		private long[] parameterPositions;
+		// the estimated memory used by the parameter values of the events
+		private int[] valueBytes;
+		// the number of postings of the events in the index
+		private int[] postingCounts;
+
+		private int head;
+		private int count;
+
+		private int[] parameterNameIds;
+		private Object[] parameterValues;
+
+		private int parameterHead;
+		private int parameterCount;
+
+		private long totalValueBytes;
+
+		// the position of the parameter at parameterHead, the positions are
+		// not changed when the parameter columns are grown
+		private long parameterHeadPosition;
+
+		EventColumns() {
+			clear();
+		}
+
+		void clear() {
+			sequences = new long[INITIAL_CAPACITY];
+			timestamps = new long[INITIAL_CAPACITY];
+			topicIds = new int[INITIAL_CAPACITY];
+			publisherIds = new int[INITIAL_CAPACITY];
+			changedElementIds = new int[INITIAL_CAPACITY];
+			parameterCounts = new int[INITIAL_CAPACITY];
+			parameterPositions = new long[INITIAL_CAPACITY];
+			valueBytes = new int[INITIAL_CAPACITY];
+			postingCounts = new int[INITIAL_CAPACITY];
+			head = 0;
+			count = 0;
+
+			parameterNameIds = new int[INITIAL_CAPACITY];
+			parameterValues = new Object[INITIAL_CAPACITY];
+			parameterHead = 0;
+			parameterCount = 0;
+			parameterHeadPosition = 0;
+			totalValueBytes = 0;
+		}
+
+		boolean isFull() {
+			return count == sequences.length;
+		}
+
+		int getCapacity() {
+			return sequences.length;
+		}
+
+		/**
+		 * The sequences of the events are consecutive, the events are added
+		 * and removed in order
+		 */
+		int indexOf(long sequence) {
+			if (count == 0) {
+				return -1;
+			}
+			long offset = sequence - sequences[head];
+			return offset >= 0 && offset < count ? (int) offset : -1;
+		}
+
+		int toSlot(int index) {
+			return (head + index) % sequences.length;
+		}
+
+		long getEstimatedBytes() {
+			return (long) count * EVENT_SIZE + (long) parameterCount * PARAMETER_SIZE + totalValueBytes;
+		}
+
+		void add(CapturedEvent event, int postingCount) {
+			if (isFull()) {
+				growEvents();
+			}
+			List<Parameter> parameters = event.getParameters();
+			while (parameterCount + parameters.size() > parameterValues.length) {
+				growParameters();
+			}
+
+			int slot = toSlot(count);
+			sequences[slot] = nextSequence++;
+			timestamps[slot] = event.getTimestamp();
+			topicIds[slot] = strings.encode(event.getTopic());
+			publisherIds[slot] = publishers.encode(event.getPublisherCallSite() != null ? event
+					.getPublisherCallSite() : emptyToNull(event.getPublisherClassName()));
+			changedElementIds[slot] = strings.encode(event.getChangedElementClassName());
+			parameterCounts[slot] = parameters.size();
+			parameterPositions[slot] = parameterHeadPosition + parameterCount;
+			postingCounts[slot] = postingCount;
+			count++;
+
+			int eventValueBytes = 0;
+			for (int i = 0; i < parameters.size(); i++) {
+				int parameterSlot = (parameterHead + parameterCount) % parameterValues.length;
+				parameterNameIds[parameterSlot] = strings.encode(parameters.get(i).getName());
+				parameterValues[parameterSlot] = parameters.get(i).getValue();
+				eventValueBytes += estimateBytes(parameters.get(i).getValue());
+				parameterCount++;
+			}
+			valueBytes[slot] = eventValueBytes;
+			totalValueBytes += eventValueBytes;
+		}
+
+		void removeOldest() {
+			int parameters = parameterCounts[head];
+			for (int i = 0; i < parameters; i++) {
+				parameterValues[parameterHead] = null;
+				parameterHead = (parameterHead + 1) % parameterValues.length;
+			}
+			parameterCount -= parameters;
+			parameterHeadPosition += parameters;
+			totalValueBytes -= valueBytes[head];
+			head = (head + 1) % sequences.length;
+			count--;
+		}
+
+		/**
+		 * @param parameters
+		 *            the parameters kept for the event, null to create them
+		 *            from the columns
+		 */
+		CapturedEvent createView(int slot, List<Parameter> parameters) {
+			CapturedEvent view = new CapturedEvent();
+			view.setSequence(sequences[slot]);
+			view.setTimestamp(timestamps[slot]);
+			view.setTopic(strings.decode(topicIds[slot]));
+			view.setChangedElementClassName(strings.decode(changedElementIds[slot]));
+
+			Object publisher = publishers.decode(publisherIds[slot]);
+			if (publisher instanceof PublisherCallSite) {
+				view.setPublisherCallSite((PublisherCallSite) publisher);
+			} else if (publisher != null) {
+				view.setPublisherClassName((String) publisher);
+			}
+
+			if (parameters != null) {
+				for (Parameter parameter : parameters) {
+					view.addParameter(parameter);
+				}
+				return view;
+			}
+			long offset = parameterPositions[slot] - parameterHeadPosition;
+			int parameterSlot = (int) ((parameterHead + offset) % parameterValues.length);
+			for (int i = 0; i < parameterCounts[slot]; i++) {
+				view.addParameter(strings.decode(parameterNameIds[parameterSlot]), parameterValues[parameterSlot]);
+				parameterSlot = (parameterSlot + 1) % parameterValues.length;
+			}
+			return view;
+		}
+
+		private void growEvents() {
+			int capacity = sequences.length;
+			timestamps = unwrap(timestamps, new long[capacity * 2]);
+			topicIds = unwrap(topicIds, new int[capacity * 2]);
+			publisherIds = unwrap(publisherIds, new int[capacity * 2]);
+			changedElementIds = unwrap(changedElementIds, new int[capacity * 2]);
+			parameterCounts = unwrap(parameterCounts, new int[capacity * 2]);
+			parameterPositions = unwrap(parameterPositions, new long[capacity * 2]);
+			valueBytes = unwrap(valueBytes, new int[capacity * 2]);
+			postingCounts = unwrap(postingCounts, new int[capacity * 2]);
+			// the last one, its length is the capacity of the columns unwrapped
+			sequences = unwrap(sequences, new long[capacity * 2]);
+			head = 0;
+		}
+
+		private void growParameters() {
+			int capacity = parameterValues.length;
+			// the values last, their length is the capacity of the columns
+			// unwrapped
+			parameterNameIds = unwrapParameters(parameterNameIds, new int[capacity * 2]);
+			parameterValues = unwrapParameters(parameterValues, new Object[capacity * 2]);
+			parameterHead = 0;
+		}
+
+		private <T> T unwrap(T source, T target) {
+			return copyInOrder(source, target, head, count, sequences.length);
+		}
+
+		private <T> T unwrapParameters(T source, T target) {
+			return copyInOrder(source, target, parameterHead, parameterCount, parameterValues.length);
+		}
+	}
+
+	/**
+	 * Copies the circular array content to the beginning of the target array
+	 */
+	private static <T> T copyInOrder(T source, T target, int head, int count, int capacity) {
+		int firstPart = Math.min(count, capacity - head);
+		System.arraycopy(source, head, target, 0, firstPart);
+		System.arraycopy(source, 0, target, firstPart, count - firstPart);
+		return target;
+	}
+
+	/**
+	 * @return the estimated memory used by the value, the text of a snapshot
+	 *         is bounded when it is taken
+	 */
+	private static int estimateBytes(Object value) {
+		if (value == null) {
+			return 0;
+		}
+		if (value instanceof String) {
+			return STRING_SIZE + 2 * ((String) value).length();
+		}
+		if (value instanceof ParameterSnapshot) {
+			ParameterSnapshot snapshot = (ParameterSnapshot) value;
+			return SNAPSHOT_SIZE + estimateBytes(snapshot.getText()) + estimateBytes(snapshot.getElementId());
+		}
+		if (value instanceof PublisherCallSite) {
+			StackTraceElement frame = ((PublisherCallSite) value).getFrame();
+			return OBJECT_SIZE + estimateBytes(frame.getClassName()) + estimateBytes(frame.getMethodName());
+		}
+		return OBJECT_SIZE;
+	}
+
+	private static boolean isExpanded(CapturedEvent view) {
+		for (Parameter parameter : view.getParameters()) {
+			if (parameter.isExpanded()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static String emptyToNull(String text) {
+		return text == null || text.length() == 0 ? null : text;
+	}
+
+	/**
+	 * Maps the repeated values to int ids, null is mapped to
+	 * {@link CapturedEventStore#NO_VALUE}
+	 */
+	private static class Dictionary<T> {
+		private final Map<T, Integer> ids = new HashMap<T, Integer>();
+
+		private final List<T> values = new ArrayList<T>();
+
+		private long estimatedBytes;
+
+		int encode(T value) {
+			if (value == null) {
+				return NO_VALUE;
+			}
+			Integer id = ids.get(value);
+			if (id == null) {
+				id = Integer.valueOf(values.size());
+				ids.put(value, id);
+				values.add(value);
+				estimatedBytes += DICTIONARY_ENTRY_SIZE + estimateBytes(value);
+			}
+			return id.intValue();
+		}
+
+		T decode(int id) {
+			return id == NO_VALUE ? null : values.get(id);
+		}
+
+		long getEstimatedBytes() {
+			return estimatedBytes;
+		}
+
+		void clear() {
+			ids.clear();
+			values.clear();
+			estimatedBytes = 0;
+		}
+	}
+}
@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.tools.event.spy.internal.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An event dispatched while the handlers of its parent event were running on
+ * the same thread. The node is updated by the dispatching thread and can be
+ * read from any thread.
+ */
+public class CascadeNode {
+	private final long id;
+
+	private final CascadeNode parent;
+
+	private final String topic;
+
+	private final int depth;
+
+	private final List<CascadeNode> children = new ArrayList<CascadeNode>();
+
+	private volatile long dispatchNanos;
+
+	private volatile int descendantCount;
+
+	CascadeNode(long id, CascadeNode parent, String topic) {
+		this.id = id;
+		this.parent = parent;
+		this.topic = topic;
+		this.depth = parent != null ? parent.depth + 1 : 0;
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	public CascadeNode getParent() {
+		return parent;
+	}
+
+	/**
+	 * @return the id of the parent event, -1 for the root of a cascade
+	 */
+	public long getParentId() {
+		return parent != null ? parent.id : -1;
+	}
+
+	public String getTopic() {
+		return topic;
+	}
+
+	public int getDepth() {
+		return depth;
+	}
+
+	public CascadeNode getRoot() {
+		CascadeNode root = this;
+		while (root.parent != null) {
+			root = root.parent;
+		}
+		return root;
+	}
+
+	/**
+	 * @return a copy of the events dispatched by the handlers of this event
+	 */
+	public List<CascadeNode> getChildren() {
+		synchronized (children) {
+			return new ArrayList<CascadeNode>(children);
+		}
+	}
+
+	public boolean hasChildren() {
+		return descendantCount > 0;
+	}
+
+	/**
+	 * @return the number of events dispatched directly or indirectly by the
+	 *         handlers of this event
+	 */
+	public int getDescendantCount() {
+		return descendantCount;
+	}
+
+	/**
+	 * @return the time spent by the handlers of this event, including the
+	 *         nested dispatches
+	 */
+	public long getDispatchNanos() {
+		return dispatchNanos;
+	}
+
+	/**
+	 * @return the time spent by the handlers of this event, without the nested
+	 *         dispatches
+	 */
+	public long getSelfNanos() {
+		long childrenNanos = 0;
+		for (CascadeNode child : getChildren()) {
+			childrenNanos += child.dispatchNanos;
+		}
+		return Math.max(0, dispatchNanos - childrenNanos);
+	}
+
+	void addChild(CascadeNode child) {
+		synchronized (children) {
+			children.add(child);
+		}
+		for (CascadeNode ancestor = this; ancestor != null; ancestor = ancestor.parent) {
+			ancestor.descendantCount++;
+		}
+	}
+
+	void addDispatchNanos(long nanos) {
+		dispatchNanos += nanos;
+	}
+}
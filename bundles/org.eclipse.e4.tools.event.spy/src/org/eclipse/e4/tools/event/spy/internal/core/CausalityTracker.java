@@ -0,0 +1,190 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.tools.event.spy.internal.core;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventHandler;
+
+/**
+ * Links the events sent while the handlers of other events are running. Every
+ * thread keeps the stack of the events whose handlers are running, it is
+ * maintained by the handlers wrapped by the {@link HandlerProfiler}. An event
+ * seen while the stack is not empty is a child of the event on the top of the
+ * stack.
+ * <p>
+ * The posted events are dispatched later on the event admin thread, they are
+ * the roots of their own cascades.
+ */
+public class CausalityTracker {
+	public static final int DEFAULT_MAX_CASCADES = 1000;
+
+	public static final int MAX_CASCADE_SIZE = 10000;
+
+	// the events dispatched recently by a thread, the handlers of the same
+	// event are called one after the other with the same event instance. They
+	// are weakly referenced, not to keep the events and their data once
+	// dispatched
+	private static final int RECENT_EVENTS_SIZE = 32;
+
+	private final AtomicLong nextId = new AtomicLong();
+
+	private final ThreadLocal<DispatchStack> dispatchStacks = new ThreadLocal<DispatchStack>() {
+		@Override
+		protected DispatchStack initialValue() {
+			return new DispatchStack();
+		}
+	};
+
+	private final LinkedList<CascadeNode> cascades = new LinkedList<CascadeNode>();
+
+	private volatile int maxCascades = DEFAULT_MAX_CASCADES;
+
+	private volatile boolean tracing;
+
+	private final EventHandler eventHandler = new EventHandler() {
+		@Override
+		public void handleEvent(Event event) {
+			if (tracing) {
+				dispatchStacks.get().getNode(event);
+			}
+		}
+	};
+
+	/**
+	 * @return the handler to subscribe to the traced topics, it makes the
+	 *         events without wrapped handlers part of the cascades
+	 */
+	public EventHandler getEventHandler() {
+		return eventHandler;
+	}
+
+	public void setTracing(boolean tracing) {
+		this.tracing = tracing;
+	}
+
+	/**
+	 * Called by a wrapped handler before it handles the event
+	 */
+	public void handlerStarted(Event event) {
+		if (tracing) {
+			DispatchStack stack = dispatchStacks.get();
+			stack.push(event, stack.getNode(event));
+		}
+	}
+
+	/**
+	 * Called by a wrapped handler after it has handled the event
+	 */
+	public void handlerFinished(Event event, long nanos) {
+		DispatchStack stack = dispatchStacks.get();
+		// the tracing could have been started while the handler was running
+		if (stack.size > 0 && stack.events[stack.size - 1] == event) {
+			stack.pop().addDispatchNanos(nanos);
+		}
+	}
+
+	/**
+	 * @return the recent cascades made of more than one event, the newest
+	 *         first
+	 */
+	public List<CascadeNode> getCascades() {
+		synchronized (cascades) {
+			return new ArrayList<CascadeNode>(cascades);
+		}
+	}
+
+	public void setMaxCascades(int maxCascades) {
+		this.maxCascades = maxCascades;
+	}
+
+	public void clear() {
+		synchronized (cascades) {
+			cascades.clear();
+		}
+	}
+
+	private CascadeNode createNode(Event event, CascadeNode parent) {
+		CascadeNode node = new CascadeNode(nextId.getAndIncrement(), parent, event.getTopic());
+		if (parent == null) {
+			return node;
+		}
+		CascadeNode root = parent.getRoot();
+		if (root.getDescendantCount() >= MAX_CASCADE_SIZE) {
+			// the node is still timed but it is not kept
+			return node;
+		}
+		parent.addChild(node);
+		if (root.getDescendantCount() == 1) {
+			addCascade(root);
+		}
+		return node;
+	}
+
+	private void addCascade(CascadeNode root) {
+		synchronized (cascades) {
+			cascades.addFirst(root);
+			while (cascades.size() > maxCascades) {
+				cascades.removeLast();
+			}
+		}
+	}
+
+	private class DispatchStack {
+		private Event[] events = new Event[16];
+
+		private CascadeNode[] nodes = new CascadeNode[16];
+
+		private int size;
+
+		@SuppressWarnings("unchecked")
+		private final WeakReference<Event>[] recentEvents = new WeakReference[RECENT_EVENTS_SIZE];
+
+		private final CascadeNode[] recentNodes = new CascadeNode[RECENT_EVENTS_SIZE];
+
+		private int nextRecent;
+
+		CascadeNode getNode(Event event) {
+			for (int i = 0; i < RECENT_EVENTS_SIZE; i++) {
+				if (recentEvents[i] != null && recentEvents[i].get() == event) {
+					return recentNodes[i];
+				}
+			}
+			CascadeNode node = createNode(event, size > 0 ? nodes[size - 1] : null);
+			recentEvents[nextRecent] = new WeakReference<Event>(event);
+			recentNodes[nextRecent] = node;
+			nextRecent = (nextRecent + 1) % RECENT_EVENTS_SIZE;
+			return node;
+		}
+
+		void push(Event event, CascadeNode node) {
+			if (size == nodes.length) {
+				events = Arrays.copyOf(events, size * 2);
+				nodes = Arrays.copyOf(nodes, size * 2);
+			}
+			events[size] = event;
+			nodes[size++] = node;
+		}
+
+		CascadeNode pop() {
+			CascadeNode node = nodes[--size];
+			events[size] = null;
+			nodes[size] = null;
+			return node;
+		}
+	}
+}
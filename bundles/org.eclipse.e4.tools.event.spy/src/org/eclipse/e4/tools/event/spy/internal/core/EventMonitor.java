@@ -10,79 +10,158 @@
  *******************************************************************************/
 package org.eclipse.e4.tools.event.spy.internal.core;
 
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.Set;
+import java.util.Dictionary;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 import org.eclipse.e4.core.services.events.IEventBroker;
+import org.eclipse.e4.tools.event.spy.internal.core.EventRingBuffer.Slot;
 import org.eclipse.e4.tools.event.spy.internal.model.CapturedEvent;
 import org.eclipse.e4.tools.event.spy.internal.model.CapturedEventFilter;
-import org.eclipse.e4.ui.internal.workbench.UIEventPublisher;
-import org.eclipse.e4.ui.services.internal.events.EventBroker;
+import org.eclipse.e4.tools.event.spy.internal.model.Parameter;
+import org.eclipse.e4.tools.event.spy.internal.model.ParameterSnapshot;
+import org.eclipse.e4.tools.event.spy.internal.model.PublisherCallSite;
 import org.eclipse.e4.ui.workbench.UIEvents;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceRegistration;
 import org.osgi.service.event.Event;
+import org.osgi.service.event.EventConstants;
 import org.osgi.service.event.EventHandler;
 
-@SuppressWarnings("restriction")
 public class EventMonitor {
 
 	public interface NewEventListener {
 		void newEvent(CapturedEvent event);
 	}
 
-	@SuppressWarnings({ "serial" })
-	private static Set<Integer> EVENT_HELPER_CLASSES = new HashSet<Integer>() {
-		{
-			add(UIEvents.class.getName().hashCode());
-			add(UIEventPublisher.class.getName().hashCode());
-		}
-	};
+	public static final int DEFAULT_BUFFER_CAPACITY = 8192;
+
+	private static final int DRAIN_BATCH_SIZE = 256;
 
-	private Collection<CapturedEventFilter> filters;
+	private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
 
-	private final IEventBroker eventBroker;
+	private CapturedEventFilterMatcher.CompiledFilter compiledFilter;
 
-	private NewEventListener listener;
+	private volatile TopicIndex topicIndex;
+
+	private final Subscriber subscriber;
+
+	private volatile NewEventListener listener;
 
 	private CapturedEventFilterMatcher eventFilterMatcher;
 
+	private int bufferCapacity = DEFAULT_BUFFER_CAPACITY;
+
+	private volatile EventRingBuffer ringBuffer;
+
+	private CaptureConsumer consumer;
+
+	private final CaptureStatistics statistics = new CaptureStatistics();
+
+	private final PublisherResolver publisherResolver = new PublisherResolver();
+
+	private final ParameterSnapshotter parameterSnapshotter = new ParameterSnapshotter();
+
 	private final EventHandler eventHandler = new EventHandler() {
 		@Override
 		public void handleEvent(Event event) {
-			if (listener == null) {
+			EventRingBuffer buffer = ringBuffer;
+			if (listener == null || buffer == null) {
 				return;
 			}
 
-			CapturedEvent capturedEvent = new CapturedEvent();
-			capturedEvent.setTopic(event.getTopic());
-			capturedEvent.setPublisherClassName(getPublisherClassName());
-
-			for (String propertyName : event.getPropertyNames()) {
-				Object value = event.getProperty(propertyName);
-				capturedEvent.addParameter(propertyName, value);
-				if (value != null && UIEvents.EventTags.ELEMENT.equals(propertyName)) {
-					capturedEvent.setChangedElementClassName(value.getClass().getName());
-				}
+			long start = System.nanoTime();
+			if (!topicIndex.matches(event.getTopic())) {
+				statistics.eventReceived(System.nanoTime() - start);
+				return;
 			}
-
-			if (shouldBeCaptured(capturedEvent)) {
-				listener.newEvent(capturedEvent);
+			PublisherCallSite publisherCallSite = publisherResolver.resolve();
+			Slot slot = buffer.claim();
+			if (slot == null) {
+				statistics.eventOverrun();
+			} else {
+				// the slot is always published, the consumer waits for it
+				try {
+					slot.copyFrom(event);
+					snapshotLiveValues(slot);
+					slot.setPublisherCallSite(publisherCallSite);
+				} finally {
+					buffer.publish(slot);
+				}
 			}
+			statistics.eventReceived(System.nanoTime() - start);
 		}
 	};
 
 	public EventMonitor(IEventBroker eventBroker) {
-		this.eventBroker = eventBroker;
+		this.subscriber = new BrokerSubscriber(eventBroker);
+	}
+
+	/**
+	 * Creates a monitor subscribing directly to the event admin, without any
+	 * workbench
+	 */
+	public EventMonitor(BundleContext bundleContext) {
+		this.subscriber = new ServiceSubscriber(bundleContext);
 	}
 
 	public void start(String baseTopic, Collection<CapturedEventFilter> filters) {
-		this.filters = filters;
-		eventBroker.subscribe(baseTopic, eventHandler);
+		topicIndex = new TopicIndex(filters);
+		compiledFilter = getEventFilterMatcher().compile(topicIndex.getUnindexedFilters());
+		statistics.reset();
+		publisherResolver.clear();
+		ringBuffer = new EventRingBuffer(bufferCapacity);
+		consumer = new CaptureConsumer(ringBuffer);
+		consumer.start();
+		subscriber.subscribe(baseTopic, eventHandler);
 	}
 
+	/**
+	 * Unsubscribes and waits until the events published before have been
+	 * passed to the listener, it should not be called from the UI thread
+	 */
 	public void stop() {
-		eventBroker.unsubscribe(eventHandler);
+		subscriber.unsubscribe(eventHandler);
+		ringBuffer = null;
+		if (consumer != null) {
+			consumer.shutdown();
+			try {
+				consumer.join();
+			} catch (InterruptedException exc) {
+				Thread.currentThread().interrupt();
+			}
+			consumer = null;
+		}
+	}
+
+	/**
+	 * Sets the number of events which can wait for the capture consumer, it is
+	 * applied when the capturing is started.
+	 */
+	public void setBufferCapacity(int bufferCapacity) {
+		this.bufferCapacity = bufferCapacity;
+	}
+
+	/**
+	 * @see PublisherResolver#setSamplingInterval(int)
+	 */
+	public void setPublisherSamplingInterval(int samplingInterval) {
+		publisherResolver.setSamplingInterval(samplingInterval);
+	}
+
+	/**
+	 * @see ParameterSnapshotter#setKeepingReferences(boolean)
+	 */
+	public void setKeepingParameterReferences(boolean keepingReferences) {
+		parameterSnapshotter.setKeepingReferences(keepingReferences);
+	}
+
+	public CaptureStatistics getStatistics() {
+		return statistics;
 	}
 
 	public void setNewEventListener(NewEventListener listener) {
@@ -90,38 +169,167 @@ public class EventMonitor {
 	}
 
 	private boolean shouldBeCaptured(CapturedEvent event) {
-		if (filters != null) {
-			Iterator<CapturedEventFilter> iter = filters.iterator();
-			while (iter.hasNext()) {
-				if (!getEventFilterMatcher().matches(event, iter.next())) {
-					return false;
-				}
+		return compiledFilter.matches(event);
+	}
+
+	private CapturedEventFilterMatcher getEventFilterMatcher() {
+		if (eventFilterMatcher == null) {
+			eventFilterMatcher = new CapturedEventFilterMatcher();
+		}
+		return eventFilterMatcher;
+	}
+
+	private CapturedEvent createCapturedEvent(Slot slot) {
+		CapturedEvent capturedEvent = new CapturedEvent();
+		capturedEvent.setTopic(slot.getTopic());
+		capturedEvent.setTimestamp(slot.getTimestamp());
+		capturedEvent.setPublisherCallSite(slot.getPublisherCallSite());
+
+		for (int i = 0; i < slot.getPropertiesCount(); i++) {
+			String propertyName = slot.getPropertyName(i);
+			Object value = parameterSnapshotter.completeSnapshot(slot.getPropertyValue(i));
+			capturedEvent.addParameter(propertyName, value);
+			if (value != null && UIEvents.EventTags.ELEMENT.equals(propertyName)) {
+				capturedEvent.setChangedElementClassName(value instanceof ParameterSnapshot ? ((ParameterSnapshot) value)
+						.getTypeName() : value.getClass().getName());
+			}
+		}
+		return capturedEvent;
+	}
+
+	/**
+	 * Identifies the values which cannot be read later by the capture
+	 * consumer, while the publisher is still waiting for the event to be
+	 * handled. Their texts are formatted by the consumer.
+	 */
+	private void snapshotLiveValues(Slot slot) {
+		for (int i = 0; i < slot.getPropertiesCount(); i++) {
+			Object value = slot.getPropertyValue(i);
+			if (parameterSnapshotter.isSnapshotOnPublishing(value)) {
+				slot.setPropertyValue(i, parameterSnapshotter.snapshotIdentity(value));
 			}
 		}
-		return true;
 	}
 
-	private String getPublisherClassName() {
-		StackTraceElement items[] = Thread.currentThread().getStackTrace();
-		boolean foundEventBroker = false;
+	/**
+	 * The parameters are filtered with their live values, except the ones
+	 * already snapshot by the publishing thread, the captured event keeps
+	 * their snapshots only
+	 */
+	private void snapshotParameters(CapturedEvent capturedEvent) {
+		List<Parameter> parameters = capturedEvent.getParameters();
+		for (int i = 0; i < parameters.size(); i++) {
+			Parameter parameter = parameters.get(i);
+			Object snapshot = parameterSnapshotter.snapshot(parameter.getValue());
+			if (snapshot != parameter.getValue()) {
+				capturedEvent.replaceParameter(i, new Parameter(parameter.getName(), snapshot));
+			}
+		}
+	}
+
+	private interface Subscriber {
+		void subscribe(String topic, EventHandler handler);
+
+		void unsubscribe(EventHandler handler);
+	}
+
+	private static class BrokerSubscriber implements Subscriber {
+		private final IEventBroker eventBroker;
+
+		BrokerSubscriber(IEventBroker eventBroker) {
+			this.eventBroker = eventBroker;
+		}
+
+		@Override
+		public void subscribe(String topic, EventHandler handler) {
+			eventBroker.subscribe(topic, handler);
+		}
+
+		@Override
+		public void unsubscribe(EventHandler handler) {
+			eventBroker.unsubscribe(handler);
+		}
+	}
+
+	/**
+	 * Registers the handler as an event handler service, one per topic
+	 */
+	private static class ServiceSubscriber implements Subscriber {
+		private final BundleContext bundleContext;
 
-		for (int i = 0; i < items.length; i++) {
-			String clsName = items[i].getClassName();
-			if (!foundEventBroker && clsName.equals(EventBroker.class.getName())) {
-				foundEventBroker = true;
-			} else if (foundEventBroker) {
-				if (!EVENT_HELPER_CLASSES.contains(clsName.hashCode())) {
-					return String.format("%s (%s:%d)", clsName, items[i].getMethodName(), items[i].getLineNumber());
+		private final List<ServiceRegistration<?>> registrations = new ArrayList<ServiceRegistration<?>>();
+
+		ServiceSubscriber(BundleContext bundleContext) {
+			this.bundleContext = bundleContext;
+		}
+
+		@Override
+		public synchronized void subscribe(String topic, EventHandler handler) {
+			Dictionary<String, Object> properties = new Hashtable<String, Object>();
+			properties.put(EventConstants.EVENT_TOPIC, topic);
+			registrations.add(bundleContext.registerService(EventHandler.class.getName(), handler, properties));
+		}
+
+		@Override
+		public synchronized void unsubscribe(EventHandler handler) {
+			for (ServiceRegistration<?> registration : registrations) {
+				try {
+					registration.unregister();
+				} catch (IllegalStateException exc) {
+					// the bundle has been stopped meanwhile
 				}
 			}
+			registrations.clear();
 		}
-		return "";
 	}
 
-	private CapturedEventFilterMatcher getEventFilterMatcher() {
-		if (eventFilterMatcher == null) {
-			eventFilterMatcher = new CapturedEventFilterMatcher();
+	/**
+	 * Drains the ring buffer in batches, applies the filters and passes the
+	 * captured events to the listener. Everything except copying the event and
+	 * snapshotting its model elements and widgets happens here instead of on
+	 * the publishing thread.
+	 */
+	private class CaptureConsumer extends Thread implements EventRingBuffer.SlotHandler {
+		private final EventRingBuffer buffer;
+
+		private volatile boolean running = true;
+
+		public CaptureConsumer(EventRingBuffer buffer) {
+			super("Event spy capture consumer");
+			this.buffer = buffer;
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			while (running) {
+				if (buffer.drain(this, DRAIN_BATCH_SIZE) == 0) {
+					LockSupport.parkNanos(IDLE_PARK_NANOS);
+				}
+			}
+			// deliver the events which were claimed before the capturing has
+			// been stopped, waiting for the slots still being filled
+			while (!buffer.isEmpty()) {
+				if (buffer.drain(this, DRAIN_BATCH_SIZE) == 0) {
+					Thread.yield();
+				}
+			}
+		}
+
+		@Override
+		public void handle(Slot slot) {
+			CapturedEvent capturedEvent = createCapturedEvent(slot);
+			NewEventListener currentListener = listener;
+			if (currentListener != null && shouldBeCaptured(capturedEvent)) {
+				snapshotParameters(capturedEvent);
+				statistics.eventCaptured();
+				currentListener.newEvent(capturedEvent);
+			}
+		}
+
+		public void shutdown() {
+			running = false;
+			LockSupport.unpark(this);
 		}
-		return eventFilterMatcher;
 	}
 }
@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.tools.event.spy.internal.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.eclipse.e4.tools.event.spy.internal.model.PublisherCallSite;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventHandler;
+
+/**
+ * Aggregates the events per topic and per publisher without retaining them.
+ * The publishers are resolved for the sampled events only, their counts are
+ * therefore a sample of the real traffic.
+ */
+public class EventRateStatistics {
+	public static final int DEFAULT_PUBLISHER_SAMPLING_INTERVAL = 100;
+
+	private final ConcurrentMap<String, RateCounter> topics = new ConcurrentHashMap<String, RateCounter>();
+
+	private final ConcurrentMap<String, RateCounter> publishers = new ConcurrentHashMap<String, RateCounter>();
+
+	private final PublisherResolver publisherResolver = new PublisherResolver();
+
+	private final EventHandler eventHandler = new EventHandler() {
+		@Override
+		public void handleEvent(Event event) {
+			long now = System.nanoTime();
+			getCounter(topics, event.getTopic()).eventArrived(now);
+
+			PublisherCallSite publisherCallSite = publisherResolver.resolve();
+			if (publisherCallSite != null) {
+				getCounter(publishers, publisherCallSite.getName()).eventArrived(now);
+			}
+		}
+	};
+
+	public EventRateStatistics() {
+		publisherResolver.setSamplingInterval(DEFAULT_PUBLISHER_SAMPLING_INTERVAL);
+	}
+
+	/**
+	 * @return the handler to subscribe to the observed topics
+	 */
+	public EventHandler getEventHandler() {
+		return eventHandler;
+	}
+
+	/**
+	 * @see PublisherResolver#setSamplingInterval(int)
+	 */
+	public void setPublisherSamplingInterval(int samplingInterval) {
+		publisherResolver.setSamplingInterval(samplingInterval);
+	}
+
+	public List<RateSnapshot> getTopics() {
+		return snapshot(topics);
+	}
+
+	public List<RateSnapshot> getPublishers() {
+		return snapshot(publishers);
+	}
+
+	public void reset() {
+		topics.clear();
+		publishers.clear();
+		publisherResolver.clear();
+	}
+
+	private List<RateSnapshot> snapshot(ConcurrentMap<String, RateCounter> counters) {
+		long now = System.nanoTime();
+		List<RateSnapshot> result = new ArrayList<RateSnapshot>(counters.size());
+		for (RateCounter counter : counters.values()) {
+			result.add(new RateSnapshot(counter, now));
+		}
+		return result;
+	}
+
+	private RateCounter getCounter(ConcurrentMap<String, RateCounter> counters, String name) {
+		RateCounter counter = counters.get(name);
+		if (counter == null) {
+			RateCounter newCounter = new RateCounter(name);
+			counter = counters.putIfAbsent(name, newCounter);
+			if (counter == null) {
+				counter = newCounter;
+			}
+		}
+		return counter;
+	}
+}
@@ -0,0 +1,198 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.tools.event.spy.internal.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.eclipse.core.runtime.ILog;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Platform;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.e4.tools.event.spy.internal.model.CapturedEvent;
+import org.eclipse.e4.tools.event.spy.internal.model.CapturedEventFilter;
+import org.eclipse.e4.tools.event.spy.internal.util.CapturedEventFilterSerializer;
+import org.eclipse.e4.ui.workbench.UIEvents;
+import org.osgi.framework.BundleContext;
+
+/**
+ * Records the events to rolling binary capture logs without the spy UI, the
+ * logs can be opened later in the event spy. The events are captured by an
+ * {@link EventMonitor} subscribed directly to the event admin, the UI thread
+ * is not involved.
+ * <p>
+ * The recorder is a declarative service, it starts recording when it is
+ * activated if the {@link #FILE_PROPERTY} system property is set, for
+ * instance:
+ *
+ * <pre>
+ * -Dorg.eclipse.e4.tools.event.spy.recorder.file=/tmp/events.evlog
+ * -Dorg.eclipse.e4.tools.event.spy.recorder.filters=Topic,contains,Selected;Publisher,starts with,org.eclipse
+ * </pre>
+ */
+public class EventRecorder {
+	public static final String PROPERTY_PREFIX = "org.eclipse.e4.tools.event.spy.recorder.";
+
+	public static final String FILE_PROPERTY = PROPERTY_PREFIX + "file";
+
+	public static final String TOPIC_PROPERTY = PROPERTY_PREFIX + "topic";
+
+	/**
+	 * The filters serialized by the {@link CapturedEventFilterSerializer} and
+	 * separated by {@link #FILTER_SEPARATOR}
+	 */
+	public static final String FILTERS_PROPERTY = PROPERTY_PREFIX + "filters";
+
+	public static final String MAX_FILE_SIZE_PROPERTY = PROPERTY_PREFIX + "maxFileSize";
+
+	public static final String ROLLED_FILES_PROPERTY = PROPERTY_PREFIX + "rolledFiles";
+
+	public static final String FILTER_SEPARATOR = ";";
+
+	public static final String DEFAULT_TOPIC = UIEvents.UITopicBase + UIEvents.TOPIC_SEP + UIEvents.ALL_SUB_TOPICS;
+
+	public static final long DEFAULT_MAX_FILE_SIZE = 64L * 1024 * 1024;
+
+	public static final int DEFAULT_ROLLED_FILES = 4;
+
+	private BundleContext bundleContext;
+
+	private EventMonitor eventMonitor;
+
+	private CaptureLogWriter writer;
+
+	protected void activate(BundleContext bundleContext) {
+		this.bundleContext = bundleContext;
+		String fileName = System.getProperty(FILE_PROPERTY);
+		if (fileName == null || fileName.trim().length() == 0) {
+			return;
+		}
+		try {
+			start(new File(fileName.trim()), System.getProperty(TOPIC_PROPERTY, DEFAULT_TOPIC),
+					parseFilters(System.getProperty(FILTERS_PROPERTY)),
+					Long.getLong(MAX_FILE_SIZE_PROPERTY, DEFAULT_MAX_FILE_SIZE).longValue(),
+					Integer.getInteger(ROLLED_FILES_PROPERTY, DEFAULT_ROLLED_FILES).intValue());
+		} catch (IOException exc) {
+			log(IStatus.ERROR, String.format("Cannot record the events to %s", fileName), exc);
+		} catch (IllegalArgumentException exc) {
+			log(IStatus.ERROR, "Invalid event recorder settings", exc);
+		}
+	}
+
+	protected void deactivate() {
+		stop();
+		bundleContext = null;
+	}
+
+	/**
+	 * Starts recording the events, the recording in progress is stopped
+	 *
+	 * @param maxFileSize
+	 *            the size of a log file from which it is rolled, or
+	 *            {@link CaptureLogWriter#UNLIMITED}
+	 * @param rolledFiles
+	 *            the number of rolled log files kept
+	 */
+	public synchronized void start(File file, String baseTopic, Collection<CapturedEventFilter> filters,
+			long maxFileSize, int rolledFiles) throws IOException {
+		if (bundleContext == null) {
+			throw new IllegalStateException("The event recorder is not active");
+		}
+		stop();
+
+		final CaptureLogWriter logWriter = new CaptureLogWriter(file, CaptureLogWriter.Format.Binary);
+		logWriter.setRolling(maxFileSize, rolledFiles);
+		logWriter.open();
+
+		EventMonitor monitor = new EventMonitor(bundleContext);
+		// the publishers are not resolved, walking the stack is too costly
+		// for a permanent recording
+		monitor.setPublisherSamplingInterval(PublisherResolver.SAMPLING_OFF);
+		monitor.setKeepingParameterReferences(false);
+		monitor.setNewEventListener(new EventMonitor.NewEventListener() {
+			@Override
+			public void newEvent(CapturedEvent event) {
+				logWriter.append(event);
+			}
+		});
+		monitor.start(baseTopic, filters);
+		eventMonitor = monitor;
+		writer = logWriter;
+		log(IStatus.INFO, String.format("Recording the events of %s to %s", baseTopic, file), null);
+	}
+
+	/**
+	 * Stops the recording and closes the log, the events published before are
+	 * written
+	 */
+	public synchronized void stop() {
+		if (eventMonitor == null) {
+			return;
+		}
+		eventMonitor.stop();
+		eventMonitor = null;
+		try {
+			writer.close();
+			if (writer.getDroppedCount() > 0) {
+				log(IStatus.WARNING, String.format("%d events have not been recorded to %s",
+						writer.getDroppedCount(), writer.getFile()), null);
+			}
+		} catch (IOException exc) {
+			log(IStatus.ERROR, String.format("Cannot record the events to %s", writer.getFile()), exc);
+		}
+		writer = null;
+	}
+
+	public synchronized boolean isRecording() {
+		return eventMonitor != null;
+	}
+
+	/**
+	 * @return the file being written, null when not recording
+	 */
+	public synchronized File getFile() {
+		return writer != null ? writer.getFile() : null;
+	}
+
+	public synchronized long getWrittenCount() {
+		return writer != null ? writer.getWrittenCount() : 0;
+	}
+
+	public synchronized CaptureStatistics getStatistics() {
+		return eventMonitor != null ? eventMonitor.getStatistics() : null;
+	}
+
+	private List<CapturedEventFilter> parseFilters(String text) {
+		List<CapturedEventFilter> filters = new ArrayList<CapturedEventFilter>();
+		if (text == null) {
+			return filters;
+		}
+		for (String filterText : text.split(FILTER_SEPARATOR)) {
+			if (filterText.trim().length() == 0) {
+				continue;
+			}
+			CapturedEventFilter filter = CapturedEventFilterSerializer.deserialize(filterText.trim());
+			if (filter == null) {
+				throw new IllegalArgumentException(String.format("Invalid event filter: %s", filterText));
+			}
+			filters.add(filter);
+		}
+		return filters;
+	}
+
+	private void log(int severity, String message, Throwable exc) {
+		ILog log = Platform.getLog(bundleContext.getBundle());
+		log.log(new Status(severity, bundleContext.getBundle().getSymbolicName(), message, exc));
+	}
+}
@@ -0,0 +1,237 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.tools.event.spy.internal.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.eclipse.e4.core.services.events.IEventBroker;
+import org.eclipse.e4.tools.event.spy.internal.core.HandlerLatency.Dispatch;
+import org.eclipse.e4.tools.event.spy.internal.model.CapturedEvent;
+import org.eclipse.e4.tools.event.spy.internal.model.Parameter;
+import org.eclipse.e4.tools.event.spy.internal.model.ParameterSnapshot;
+import org.osgi.service.event.EventConstants;
+
+/**
+ * Publishes captured events again to an {@link IEventBroker}, to measure the
+ * broker and its subscribers with a real mix of events. The events are
+ * replayed with their original timing, accelerated, or as fast as possible.
+ * The parameter values are replayed when they are still reachable. The events
+ * with snapshot values no longer reachable are degraded: the handlers would
+ * get the text of these values instead of the objects they expect, so these
+ * events are skipped unless told otherwise, and counted in the
+ * {@link ReplayResult}. A capture log holds the texts of the values only, its
+ * events are replayed with texts and cannot be told apart. It is not thread
+ * safe, an instance replays one stream at a time.
+ */
+public class EventReplayer {
+	public enum Pacing {
+		/** The events are published with the delays they have been captured with */
+		Original,
+
+		/** The delays between the events are divided by the speed factor */
+		Accelerated,
+
+		/** The events are published without delay */
+		MaxSpeed
+	}
+
+	/**
+	 * The shortest delay the replayer waits for, the closer events are
+	 * published without waiting
+	 */
+	private static final long MIN_WAIT_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+	private final IEventBroker eventBroker;
+
+	private Pacing pacing = Pacing.MaxSpeed;
+
+	private double speedFactor = 1;
+
+	private Dispatch dispatch = Dispatch.Send;
+
+	private boolean skippingDegradedEvents = true;
+
+	private volatile boolean cancelled;
+
+	public EventReplayer(IEventBroker eventBroker) {
+		this.eventBroker = eventBroker;
+	}
+
+	/**
+	 * @param speedFactor
+	 *            the factor the delays are divided by, used by
+	 *            {@link Pacing#Accelerated} only
+	 */
+	public void setPacing(Pacing pacing, double speedFactor) {
+		if (pacing == Pacing.Accelerated && !(speedFactor > 0)) {
+			throw new IllegalArgumentException(String.format("Invalid speed factor: %s", speedFactor));
+		}
+		this.pacing = pacing;
+		this.speedFactor = pacing == Pacing.Accelerated ? speedFactor : 1;
+	}
+
+	public Pacing getPacing() {
+		return pacing;
+	}
+
+	public double getSpeedFactor() {
+		return speedFactor;
+	}
+
+	/**
+	 * Sets if the events are sent synchronously or posted. The latency of a
+	 * sent event is the time spent by all its handlers, the latency of a
+	 * posted event is the time taken to queue it only.
+	 */
+	public void setDispatch(Dispatch dispatch) {
+		this.dispatch = dispatch;
+	}
+
+	public Dispatch getDispatch() {
+		return dispatch;
+	}
+
+	/**
+	 * Sets if the degraded events, whose values are no longer reachable, are
+	 * skipped or published with the texts of these values
+	 */
+	public void setSkippingDegradedEvents(boolean skippingDegradedEvents) {
+		this.skippingDegradedEvents = skippingDegradedEvents;
+	}
+
+	public boolean isSkippingDegradedEvents() {
+		return skippingDegradedEvents;
+	}
+
+	/**
+	 * Stops the replay in progress after the event being published, it can be
+	 * called from any thread
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * Replays the events of a capture log in the calling thread
+	 *
+	 * @throws IOException
+	 *             when the file cannot be read or it is not a capture log
+	 */
+	public ReplayResult replay(File captureLog) throws IOException {
+		CaptureLogReader reader = new CaptureLogReader(captureLog);
+		reader.open();
+		try {
+			return replay(reader.getEvents());
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Replays the events in the calling thread, in their order in the list
+	 */
+	public ReplayResult replay(List<CapturedEvent> events) {
+		cancelled = false;
+		Log2Histogram latencyNanos = new Log2Histogram();
+		Log2Histogram lagNanos = new Log2Histogram();
+		int publishedCount = 0;
+		int failedCount = 0;
+		int degradedCount = 0;
+
+		long firstTimestamp = events.isEmpty() ? 0 : events.get(0).getTimestamp();
+		long startNanos = System.nanoTime();
+		for (int i = 0, size = events.size(); i < size && !cancelled; i++) {
+			CapturedEvent event = events.get(i);
+			if (isDegraded(event)) {
+				degradedCount++;
+				if (skippingDegradedEvents) {
+					continue;
+				}
+			}
+			String topic = event.getTopic();
+			Map<String, Object> data = createEventData(event);
+
+			if (pacing != Pacing.MaxSpeed) {
+				long scheduledNanos = startNanos
+						+ (long) (TimeUnit.MILLISECONDS.toNanos(event.getTimestamp() - firstTimestamp) / speedFactor);
+				lagNanos.record(waitUntil(scheduledNanos));
+			}
+
+			long dispatchStart = System.nanoTime();
+			boolean published;
+			try {
+				published = dispatch == Dispatch.Send ? eventBroker.send(topic, data) : eventBroker.post(topic, data);
+			} catch (RuntimeException exc) {
+				published = false;
+			}
+			latencyNanos.record(System.nanoTime() - dispatchStart);
+
+			publishedCount++;
+			if (!published) {
+				failedCount++;
+			}
+		}
+		return new ReplayResult(publishedCount, failedCount, skippingDegradedEvents ? degradedCount : 0,
+				degradedCount, System.nanoTime() - startNanos, latencyNanos, lagNanos, cancelled);
+	}
+
+	/**
+	 * @return how late the event is published, in nanoseconds
+	 */
+	private long waitUntil(long scheduledNanos) {
+		long remaining = scheduledNanos - System.nanoTime();
+		while (remaining > MIN_WAIT_NANOS && !cancelled) {
+			LockSupport.parkNanos(remaining);
+			remaining = scheduledNanos - System.nanoTime();
+		}
+		return Math.max(0, -remaining);
+	}
+
+	/**
+	 * @return true when a value of the event is a snapshot whose value is no
+	 *         longer reachable
+	 */
+	private boolean isDegraded(CapturedEvent event) {
+		List<Parameter> parameters = event.getParameters();
+		for (int i = 0; i < parameters.size(); i++) {
+			Object value = parameters.get(i).getValue();
+			if (value instanceof ParameterSnapshot && ((ParameterSnapshot) value).getValue() == null) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private Map<String, Object> createEventData(CapturedEvent event) {
+		List<Parameter> parameters = event.getParameters();
+		Map<String, Object> data = new HashMap<String, Object>(parameters.size() * 2);
+		for (Parameter parameter : parameters) {
+			if (EventConstants.EVENT_TOPIC.equals(parameter.getName())) {
+				continue;
+			}
+			Object value = parameter.getValue();
+			if (value instanceof ParameterSnapshot) {
+				ParameterSnapshot snapshot = (ParameterSnapshot) value;
+				value = snapshot.getValue() != null ? snapshot.getValue() : snapshot.getText();
+			}
+			if (value != null) {
+				data.put(parameter.getName(), value);
+			}
+		}
+		return data;
+	}
+}
@@ -0,0 +1,196 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.tools.event.spy.internal.core;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.eclipse.e4.tools.event.spy.internal.model.PublisherCallSite;
+import org.osgi.service.event.Event;
+
+/**
+ * Bounded, preallocated and lock-free buffer between the event publishers and
+ * the capture consumer. Any number of publisher threads can claim slots
+ * concurrently, a single consumer thread drains them in publication order.
+ * When the buffer is full no slot is claimed and the publisher is never
+ * blocked.
+ */
+public class EventRingBuffer {
+	public interface SlotHandler {
+		void handle(Slot slot);
+	}
+
+	public static class Slot {
+		private static final int INITIAL_PROPERTIES_SIZE = 8;
+
+		private long position;
+
+		private String topic;
+
+		private String[] names = new String[INITIAL_PROPERTIES_SIZE];
+
+		private Object[] values = new Object[INITIAL_PROPERTIES_SIZE];
+
+		private int size;
+
+		private long timestamp;
+
+		private PublisherCallSite publisherCallSite;
+
+		public void copyFrom(Event event) {
+			topic = event.getTopic();
+			timestamp = System.currentTimeMillis();
+
+			String[] propertyNames = event.getPropertyNames();
+			if (propertyNames.length > names.length) {
+				names = new String[propertyNames.length];
+				values = new Object[propertyNames.length];
+			}
+			for (int i = 0; i < propertyNames.length; i++) {
+				names[i] = propertyNames[i];
+				values[i] = event.getProperty(propertyNames[i]);
+			}
+			size = propertyNames.length;
+		}
+
+		public void setPublisherCallSite(PublisherCallSite publisherCallSite) {
+			this.publisherCallSite = publisherCallSite;
+		}
+
+		public PublisherCallSite getPublisherCallSite() {
+			return publisherCallSite;
+		}
+
+		public String getTopic() {
+			return topic;
+		}
+
+		public long getTimestamp() {
+			return timestamp;
+		}
+
+		public int getPropertiesCount() {
+			return size;
+		}
+
+		public String getPropertyName(int index) {
+			return names[index];
+		}
+
+		public Object getPropertyValue(int index) {
+			return values[index];
+		}
+
+		public void setPropertyValue(int index, Object value) {
+			values[index] = value;
+		}
+
+		private void clear() {
+			// release the references to the published values as soon as
+			// possible, the slot itself is reused
+			Arrays.fill(values, 0, size, null);
+			topic = null;
+			publisherCallSite = null;
+			size = 0;
+		}
+	}
+
+	private final Slot[] slots;
+
+	private final AtomicLongArray sequences;
+
+	private final int mask;
+
+	private final AtomicLong tail = new AtomicLong();
+
+	// accessed by the consumer thread only
+	private long head;
+
+	public EventRingBuffer(int capacity) {
+		int size = 1;
+		while (size < capacity) {
+			size <<= 1;
+		}
+		slots = new Slot[size];
+		sequences = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++) {
+			slots[i] = new Slot();
+			sequences.set(i, i);
+		}
+		mask = size - 1;
+	}
+
+	/**
+	 * Claims the next free slot, the caller has to fill it and to call
+	 * {@link #publish(Slot)} afterwards.
+	 *
+	 * @return the claimed slot or null when the buffer is full
+	 */
+	public Slot claim() {
+		long position = tail.get();
+		for (;;) {
+			int index = (int) position & mask;
+			long difference = sequences.get(index) - position;
+			if (difference == 0) {
+				if (tail.compareAndSet(position, position + 1)) {
+					Slot slot = slots[index];
+					slot.position = position;
+					return slot;
+				}
+			} else if (difference < 0) {
+				return null;
+			}
+			position = tail.get();
+		}
+	}
+
+	public void publish(Slot slot) {
+		sequences.lazySet((int) slot.position & mask, slot.position + 1);
+	}
+
+	/**
+	 * Passes at most maxSlots published slots to the handler and releases them.
+	 * It must be called from a single consumer thread.
+	 *
+	 * @return the number of drained slots
+	 */
+	public int drain(SlotHandler handler, int maxSlots) {
+		int drained = 0;
+		while (drained < maxSlots) {
+			int index = (int) head & mask;
+			if (sequences.get(index) != head + 1) {
+				break;
+			}
+			Slot slot = slots[index];
+			try {
+				handler.handle(slot);
+			} finally {
+				slot.clear();
+				sequences.lazySet(index, head + slots.length);
+				head++;
+			}
+			drained++;
+		}
+		return drained;
+	}
+
+	/**
+	 * It must be called from the consumer thread.
+	 */
+	public boolean isEmpty() {
+		return tail.get() == head;
+	}
+
+	public int getCapacity() {
+		return slots.length;
+	}
+}
@@ -0,0 +1,61 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.tools.event.spy.internal.core;
+
+/**
+ * The dispatch times of the events of a topic to the handlers of a class,
+ * split between the events sent synchronously and the posted ones
+ */
+public class HandlerLatency {
+	public enum Dispatch {
+		Send("send"), Post("post");
+
+		private String text;
+
+		private Dispatch(String text) {
+			this.text = text;
+		}
+
+		@Override
+		public String toString() {
+			return text;
+		}
+	}
+
+	private final String handlerClassName;
+
+	private final String topic;
+
+	private final Log2Histogram sendNanos = new Log2Histogram();
+
+	private final Log2Histogram postNanos = new Log2Histogram();
+
+	public HandlerLatency(String handlerClassName, String topic) {
+		this.handlerClassName = handlerClassName;
+		this.topic = topic;
+	}
+
+	public String getHandlerClassName() {
+		return handlerClassName;
+	}
+
+	public String getTopic() {
+		return topic;
+	}
+
+	public void record(Dispatch dispatch, long nanos) {
+		getNanos(dispatch).record(nanos);
+	}
+
+	public Log2Histogram getNanos(Dispatch dispatch) {
+		return dispatch == Dispatch.Send ? sendNanos : postNanos;
+	}
+}
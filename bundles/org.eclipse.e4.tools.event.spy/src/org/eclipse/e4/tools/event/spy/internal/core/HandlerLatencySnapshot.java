@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.tools.event.spy.internal.core;
+
+import org.eclipse.e4.tools.event.spy.internal.core.HandlerLatency.Dispatch;
+
+/**
+ * The values of a {@link HandlerLatency} for one kind of dispatch at a given
+ * time
+ */
+public class HandlerLatencySnapshot {
+	private final String handlerClassName;
+
+	private final String topic;
+
+	private final Dispatch dispatch;
+
+	private final long count;
+
+	private final long totalNanos;
+
+	private final long medianNanos;
+
+	private final long p99Nanos;
+
+	private final long maxNanos;
+
+	public HandlerLatencySnapshot(HandlerLatency latency, Dispatch dispatch) {
+		Log2Histogram nanos = latency.getNanos(dispatch);
+		this.handlerClassName = latency.getHandlerClassName();
+		this.topic = latency.getTopic();
+		this.dispatch = dispatch;
+		this.count = nanos.getCount();
+		this.totalNanos = nanos.getSum();
+		this.medianNanos = nanos.getPercentile(50);
+		this.p99Nanos = nanos.getPercentile(99);
+		this.maxNanos = nanos.getMax();
+	}
+
+	public String getHandlerClassName() {
+		return handlerClassName;
+	}
+
+	public String getTopic() {
+		return topic;
+	}
+
+	public Dispatch getDispatch() {
+		return dispatch;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public long getTotalNanos() {
+		return totalNanos;
+	}
+
+	public long getMedianNanos() {
+		return medianNanos;
+	}
+
+	public long getP99Nanos() {
+		return p99Nanos;
+	}
+
+	public long getMaxNanos() {
+		return maxNanos;
+	}
+}
@@ -0,0 +1,307 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.tools.event.spy.internal.core;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.inject.Singleton;
+
+import org.eclipse.e4.core.contexts.IEclipseContext;
+import org.eclipse.e4.core.di.annotations.Creatable;
+import org.eclipse.e4.core.internal.contexts.EclipseContext;
+import org.eclipse.e4.core.services.events.IEventBroker;
+import org.eclipse.e4.tools.event.spy.internal.core.HandlerLatency.Dispatch;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceReference;
+import org.osgi.framework.ServiceRegistration;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventHandler;
+
+/**
+ * Measures how long the event brokers take to dispatch the events to each of
+ * their subscribers. The brokers of the context hierarchy register each
+ * subscriber inside a UIEventHandler service; the subscriber held by this
+ * service is replaced in place by a timing wrapper, and put back when the
+ * profiling is stopped. No service is registered nor unregistered, so each
+ * event is delivered exactly once to each subscriber, wrapped or not.
+ * <p>
+ * It relies on the internal structure of the e4 EventBroker and
+ * UIEventHandler. The broker does not lock its registrations, they are only
+ * read here, from the UI thread where the broker is used. The posted events
+ * are told apart from the sent ones by the name of the event admin thread
+ * delivering them. The methods must be called from the UI thread.
+ * <p>
+ * A single profiler is shared by the spy parts, a handler is wrapped once and
+ * seen by all of them. The handlers are unwrapped when the last part using the
+ * profiler stops it.
+ */
+@SuppressWarnings("restriction")
+@Creatable
+@Singleton
+public class HandlerProfiler {
+	private static final String EVENT_BROKER_CLASS_NAME = "org.eclipse.e4.ui.services.internal.events.EventBroker";
+
+	private static final String UI_EVENT_HANDLER_CLASS_NAME = "org.eclipse.e4.ui.services.internal.events.UIEventHandler";
+
+	private static final String ASYNC_THREAD_NAME_PART = "EventAdmin";
+
+	private volatile CausalityTracker causalityTracker;
+
+	private final ConcurrentMap<String, HandlerLatency> latencies = new ConcurrentHashMap<String, HandlerLatency>();
+
+	// the wrapping subscribers by the broker services holding them
+	private final Map<EventHandler, ProfilingEventHandler> profiledHandlers = new IdentityHashMap<EventHandler, ProfilingEventHandler>();
+
+	// the registrations already looked at, wrapped or not wrappable
+	private final Set<ServiceRegistration<?>> knownRegistrations = Collections
+			.newSetFromMap(new IdentityHashMap<ServiceRegistration<?>, Boolean>());
+
+	private Field delegateField;
+
+	private int userCount;
+
+	/**
+	 * Starts the profiling for one more user, the handlers are wrapped by
+	 * {@link #profile(IEclipseContext)}
+	 */
+	public void start() {
+		userCount++;
+	}
+
+	/**
+	 * Wraps the handlers of the brokers found in the context and in its
+	 * descendants which are not profiled yet, it can be called periodically to
+	 * profile the new subscribers.
+	 *
+	 * @return the number of profiled handlers
+	 * @throws IllegalStateException
+	 *             when the internal structure of the broker is not the
+	 *             expected one
+	 */
+	public int profile(IEclipseContext context) {
+		Map<Object, Object> brokers = new IdentityHashMap<Object, Object>();
+		collectBrokers(context, brokers);
+		for (Object broker : brokers.keySet()) {
+			wrapHandlers(broker);
+		}
+		return profiledHandlers.size();
+	}
+
+	/**
+	 * Stops the profiling for one user, the original subscribers are put back
+	 * in the broker services when no user is left
+	 */
+	public void stop() {
+		if (userCount == 0 || --userCount > 0) {
+			return;
+		}
+		for (Map.Entry<EventHandler, ProfilingEventHandler> entry : profiledHandlers.entrySet()) {
+			ProfilingEventHandler wrapper = entry.getValue();
+			if (getField(delegateField, entry.getKey()) == wrapper) {
+				setField(delegateField, entry.getKey(), wrapper.delegate);
+			}
+		}
+		profiledHandlers.clear();
+		knownRegistrations.clear();
+	}
+
+	public List<HandlerLatencySnapshot> getLatencies() {
+		List<HandlerLatencySnapshot> result = new ArrayList<HandlerLatencySnapshot>();
+		for (HandlerLatency latency : latencies.values()) {
+			for (Dispatch dispatch : Dispatch.values()) {
+				if (latency.getNanos(dispatch).getCount() > 0) {
+					result.add(new HandlerLatencySnapshot(latency, dispatch));
+				}
+			}
+		}
+		return result;
+	}
+
+	public void reset() {
+		latencies.clear();
+	}
+
+	/**
+	 * Sets the tracker told when the wrapped handlers start and finish
+	 * handling the events, null when none
+	 */
+	public void setCausalityTracker(CausalityTracker causalityTracker) {
+		this.causalityTracker = causalityTracker;
+	}
+
+	private void collectBrokers(IEclipseContext context, Map<Object, Object> brokers) {
+		// the broker is computed for and cached in the requesting context
+		Object broker = context.getLocal(IEventBroker.class);
+		if (broker != null && EVENT_BROKER_CLASS_NAME.equals(broker.getClass().getName())) {
+			brokers.put(broker, broker);
+		}
+		if (context instanceof EclipseContext) {
+			for (EclipseContext child : ((EclipseContext) context).getChildren()) {
+				collectBrokers(child, brokers);
+			}
+		}
+	}
+
+	private void wrapHandlers(Object broker) {
+		Map<EventHandler, Collection<ServiceRegistration<?>>> registrations = readField(broker, "registrations");
+		BundleContext bundleContext = readField(broker, "bundleContext");
+		if (registrations == null || bundleContext == null) {
+			return;
+		}
+
+		List<ServiceRegistration<?>> handlerRegistrations = new ArrayList<ServiceRegistration<?>>();
+		try {
+			for (Collection<ServiceRegistration<?>> collection : registrations.values()) {
+				handlerRegistrations.addAll(collection);
+			}
+		} catch (ConcurrentModificationException exc) {
+			// subscribed from another thread meanwhile, done at the next call
+			return;
+		}
+		for (ServiceRegistration<?> registration : handlerRegistrations) {
+			if (knownRegistrations.add(registration)) {
+				wrap(registration, bundleContext);
+			}
+		}
+	}
+
+	private void wrap(ServiceRegistration<?> registration, BundleContext bundleContext) {
+		ServiceReference<?> reference;
+		try {
+			reference = registration.getReference();
+		} catch (IllegalStateException exc) {
+			// unregistered meanwhile
+			return;
+		}
+		Object service = bundleContext.getService(reference);
+		if (service == null) {
+			return;
+		}
+		bundleContext.ungetService(reference);
+		if (!UI_EVENT_HANDLER_CLASS_NAME.equals(service.getClass().getName())) {
+			return;
+		}
+		if (delegateField == null) {
+			delegateField = findField(service.getClass(), "eventHandler");
+		}
+
+		EventHandler uiEventHandler = (EventHandler) service;
+		EventHandler delegate = (EventHandler) getField(delegateField, uiEventHandler);
+		if (delegate == null || delegate instanceof ProfilingEventHandler) {
+			return;
+		}
+		ProfilingEventHandler wrapper = new ProfilingEventHandler(delegate.getClass().getName(), delegate);
+		setField(delegateField, uiEventHandler, wrapper);
+		profiledHandlers.put(uiEventHandler, wrapper);
+	}
+
+	private static Field findField(Class<?> clazz, String name) {
+		try {
+			Field field = clazz.getDeclaredField(name);
+			field.setAccessible(true);
+			return field;
+		} catch (NoSuchFieldException exc) {
+			throw new IllegalStateException(String.format("%s has no field %s", clazz.getName(), name), exc);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T readField(Object object, String name) {
+		return (T) getField(findField(object.getClass(), name), object);
+	}
+
+	private static Object getField(Field field, Object object) {
+		try {
+			return field.get(object);
+		} catch (IllegalAccessException exc) {
+			throw new IllegalStateException(String.format("Cannot read %s.%s", object.getClass().getName(),
+					field.getName()), exc);
+		}
+	}
+
+	/**
+	 * Sets a field, the final field of the UIEventHandler included: the
+	 * instance final fields can be set once made accessible
+	 */
+	private static void setField(Field field, Object object, Object value) {
+		try {
+			field.set(object, value);
+		} catch (IllegalAccessException exc) {
+			throw new IllegalStateException(String.format("Cannot write %s.%s", object.getClass().getName(),
+					field.getName()), exc);
+		}
+	}
+
+	private HandlerLatency getLatency(String handlerClassName, String topic) {
+		String key = handlerClassName + ' ' + topic;
+		HandlerLatency latency = latencies.get(key);
+		if (latency == null) {
+			HandlerLatency newLatency = new HandlerLatency(handlerClassName, topic);
+			latency = latencies.putIfAbsent(key, newLatency);
+			if (latency == null) {
+				latency = newLatency;
+			}
+		}
+		return latency;
+	}
+
+	private class ProfilingEventHandler implements EventHandler {
+		private final String handlerClassName;
+
+		private final EventHandler delegate;
+
+		private final ConcurrentMap<String, HandlerLatency> topicLatencies = new ConcurrentHashMap<String, HandlerLatency>();
+
+		ProfilingEventHandler(String handlerClassName, EventHandler delegate) {
+			this.handlerClassName = handlerClassName;
+			this.delegate = delegate;
+		}
+
+		@Override
+		public void handleEvent(Event event) {
+			CausalityTracker tracker = causalityTracker;
+			if (tracker != null) {
+				tracker.handlerStarted(event);
+			}
+			long start = System.nanoTime();
+			try {
+				delegate.handleEvent(event);
+			} finally {
+				long elapsed = System.nanoTime() - start;
+				if (tracker != null) {
+					tracker.handlerFinished(event, elapsed);
+				}
+				Dispatch dispatch = Thread.currentThread().getName().indexOf(ASYNC_THREAD_NAME_PART) >= 0 ? Dispatch.Post
+						: Dispatch.Send;
+				getTopicLatency(event.getTopic()).record(dispatch, elapsed);
+			}
+		}
+
+		private HandlerLatency getTopicLatency(String topic) {
+			HandlerLatency latency = topicLatencies.get(topic);
+			if (latency == null) {
+				latency = getLatency(handlerClassName, topic);
+				topicLatencies.put(topic, latency);
+			}
+			return latency;
+		}
+	}
+}
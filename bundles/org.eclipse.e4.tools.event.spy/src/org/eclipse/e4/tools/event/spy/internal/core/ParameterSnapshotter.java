@@ -0,0 +1,170 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.tools.event.spy.internal.core;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.eclipse.e4.tools.event.spy.internal.model.ParameterSnapshot;
+import org.eclipse.e4.ui.model.application.MApplicationElement;
+
+/**
+ * Replaces the parameter values by {@link ParameterSnapshot}s. The immutable
+ * values which cannot retain other objects are kept as they are.
+ * <p>
+ * The values which cannot be read later are identified by the publishing
+ * thread with {@link #snapshotIdentity(Object)}, without calling their
+ * toString(). Their snapshots are completed by
+ * {@link #completeSnapshot(Object)} in the capture consumer.
+ */
+public class ParameterSnapshotter {
+	public static final int DEFAULT_MAX_TEXT_LENGTH = 1000;
+
+	private static final String TRUNCATED_SUFFIX = "...";
+
+	// referenced by name, the capture does not depend on SWT
+	private static final String WIDGET_CLASS_NAME = "org.eclipse.swt.widgets.Widget";
+
+	private final ConcurrentMap<Class<?>, Boolean> widgetClasses = new ConcurrentHashMap<Class<?>, Boolean>();
+
+	private volatile int maxTextLength = DEFAULT_MAX_TEXT_LENGTH;
+
+	private volatile boolean keepingReferences = true;
+
+	public Object snapshot(Object value) {
+		if (value == null || value instanceof Number || value instanceof Boolean || value instanceof Character
+				|| value instanceof ParameterSnapshot) {
+			return value;
+		}
+		if (value instanceof Identity) {
+			return completeSnapshot(value);
+		}
+		if (value instanceof String && ((String) value).length() <= maxTextLength) {
+			return value;
+		}
+		String elementId = value instanceof MApplicationElement ? ((MApplicationElement) value).getElementId() : null;
+
+		return new ParameterSnapshot(value.getClass().getName(), System.identityHashCode(value), toText(value),
+				elementId, keepingReferences ? value : null);
+	}
+
+	/**
+	 * @return true when the value has to be snapshot by the publishing thread:
+	 *         the model elements can be modified as soon as the event has been
+	 *         dispatched and the widgets cannot be read from another thread
+	 */
+	public boolean isSnapshotOnPublishing(Object value) {
+		return value instanceof MApplicationElement || (value != null && isWidget(value.getClass()));
+	}
+
+	/**
+	 * Takes the type, the identity and the element id of a value in the
+	 * publishing thread, the value is kept until the snapshot is completed by
+	 * {@link #completeSnapshot(Object)}
+	 */
+	public Object snapshotIdentity(Object value) {
+		boolean widget = !(value instanceof MApplicationElement);
+		String elementId = widget ? null : ((MApplicationElement) value).getElementId();
+		return new Identity(value.getClass().getName(), System.identityHashCode(value), elementId, widget, value);
+	}
+
+	/**
+	 * Sets the maximum length of the value text, the longer texts are
+	 * truncated.
+	 */
+	public void setMaxTextLength(int maxTextLength) {
+		this.maxTextLength = maxTextLength;
+	}
+
+	public int getMaxTextLength() {
+		return maxTextLength;
+	}
+
+	/**
+	 * Sets if the snapshots keep weak references to the values, to give access
+	 * to the values still reachable
+	 */
+	public void setKeepingReferences(boolean keepingReferences) {
+		this.keepingReferences = keepingReferences;
+	}
+
+	public boolean isKeepingReferences() {
+		return keepingReferences;
+	}
+
+	/**
+	 * @return the snapshot of a value identified by the publishing thread, the
+	 *         value itself otherwise
+	 */
+	public Object completeSnapshot(Object value) {
+		if (!(value instanceof Identity)) {
+			return value;
+		}
+		Identity identity = (Identity) value;
+		// the widgets cannot be read out of the UI thread
+		String text = identity.widget ? String.format("%s@%x", identity.typeName, identity.identityHashCode)
+				: toText(identity.value);
+		return new ParameterSnapshot(identity.typeName, identity.identityHashCode, text, identity.elementId,
+				keepingReferences ? identity.value : null);
+	}
+
+	private boolean isWidget(Class<?> valueClass) {
+		Boolean widget = widgetClasses.get(valueClass);
+		if (widget == null) {
+			widget = Boolean.FALSE;
+			for (Class<?> c = valueClass; c != null; c = c.getSuperclass()) {
+				if (WIDGET_CLASS_NAME.equals(c.getName())) {
+					widget = Boolean.TRUE;
+					break;
+				}
+			}
+			widgetClasses.put(valueClass, widget);
+		}
+		return widget.booleanValue();
+	}
+
+	/**
+	 * The identity of a value taken by the publishing thread
+	 */
+	private static class Identity {
+		private final String typeName;
+
+		private final int identityHashCode;
+
+		private final String elementId;
+
+		private final boolean widget;
+
+		private final Object value;
+
+		Identity(String typeName, int identityHashCode, String elementId, boolean widget, Object value) {
+			this.typeName = typeName;
+			this.identityHashCode = identityHashCode;
+			this.elementId = elementId;
+			this.widget = widget;
+			this.value = value;
+		}
+	}
+
+	private String toText(Object value) {
+		String text;
+		try {
+			text = String.valueOf(value);
+		} catch (RuntimeException exc) {
+			text = String.format("%s@%x (toString() failed: %s)", value.getClass().getName(),
+					System.identityHashCode(value), exc);
+		}
+		if (text.length() > maxTextLength) {
+			text = text.substring(0, maxTextLength) + TRUNCATED_SUFFIX;
+		}
+		return text;
+	}
+}
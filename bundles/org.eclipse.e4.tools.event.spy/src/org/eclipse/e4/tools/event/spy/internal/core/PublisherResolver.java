@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.tools.event.spy.internal.core;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.e4.tools.event.spy.internal.model.PublisherCallSite;
+import org.eclipse.e4.ui.internal.workbench.UIEventPublisher;
+import org.eclipse.e4.ui.services.internal.events.EventBroker;
+import org.eclipse.e4.ui.workbench.UIEvents;
+
+/**
+ * Finds the code which has published the event currently handled on the
+ * calling thread. Walking the stack is the main cost of capturing an event, so
+ * only every n-th event is resolved and the call sites are shared between the
+ * events published from the same location.
+ */
+@SuppressWarnings("restriction")
+public class PublisherResolver {
+	public static final int SAMPLING_OFF = 0;
+
+	private static final String EVENT_BROKER_CLASS = EventBroker.class.getName();
+
+	@SuppressWarnings({ "serial" })
+	private static Set<String> EVENT_HELPER_CLASSES = new HashSet<String>() {
+		{
+			add(UIEvents.class.getName());
+			add(UIEventPublisher.class.getName());
+		}
+	};
+
+	private final ConcurrentMap<StackTraceElement, PublisherCallSite> callSites = new ConcurrentHashMap<StackTraceElement, PublisherCallSite>();
+
+	private final AtomicInteger counter = new AtomicInteger();
+
+	private volatile int samplingInterval = 1;
+
+	/**
+	 * @param samplingInterval
+	 *            1 resolves the publisher of every event, n of every n-th
+	 *            event and {@link #SAMPLING_OFF} disables the resolution
+	 */
+	public void setSamplingInterval(int samplingInterval) {
+		this.samplingInterval = Math.max(SAMPLING_OFF, samplingInterval);
+	}
+
+	public int getSamplingInterval() {
+		return samplingInterval;
+	}
+
+	/**
+	 * @return the call site of the publisher or null when the current event is
+	 *         not sampled or the publisher cannot be found
+	 */
+	public PublisherCallSite resolve() {
+		int interval = samplingInterval;
+		if (interval == SAMPLING_OFF || (interval > 1 && counter.incrementAndGet() % interval != 0)) {
+			return null;
+		}
+
+		StackTraceElement frame = findPublisherFrame(new Throwable().getStackTrace());
+		if (frame == null) {
+			return null;
+		}
+
+		PublisherCallSite callSite = callSites.get(frame);
+		if (callSite == null) {
+			callSite = new PublisherCallSite(frame);
+			PublisherCallSite existing = callSites.putIfAbsent(frame, callSite);
+			if (existing != null) {
+				callSite = existing;
+			}
+		}
+		return callSite;
+	}
+
+	public void clear() {
+		callSites.clear();
+	}
+
+	private StackTraceElement findPublisherFrame(StackTraceElement[] frames) {
+		boolean foundEventBroker = false;
+
+		for (StackTraceElement frame : frames) {
+			String clsName = frame.getClassName();
+			if (!foundEventBroker) {
+				foundEventBroker = clsName.equals(EVENT_BROKER_CLASS);
+			} else if (!EVENT_HELPER_CLASSES.contains(clsName) && !clsName.equals(EVENT_BROKER_CLASS)) {
+				return frame;
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.tools.event.spy.internal.core;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Number of events, per second rates over a moving window and inter-arrival
+ * times of the events of a single topic or publisher. The updates are O(1) and
+ * lock-free.
+ */
+public class RateCounter {
+	public static final int WINDOW_SECONDS = 60;
+
+	private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+	private static final long COUNT_MASK = 0xFFFFFFFFL;
+
+	private final String name;
+
+	private final StripedCounter count = new StripedCounter();
+
+	// the per second counts of the last seconds, each bucket holds the low 32
+	// bits of its second in its high half and the count in its low half, so
+	// reusing a bucket for a new second and counting are a single update
+	private final AtomicLongArray buckets = new AtomicLongArray(WINDOW_SECONDS);
+
+	private final AtomicLong lastArrival = new AtomicLong();
+
+	private final Log2Histogram interArrivalNanos = new Log2Histogram();
+
+	public RateCounter(String name) {
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void eventArrived(long nanoTime) {
+		count.increment();
+
+		long second = toSecond(nanoTime);
+		int index = getIndex(second);
+		long bucket;
+		long newBucket;
+		do {
+			bucket = buckets.get(index);
+			newBucket = getSecond(bucket) == (int) second ? bucket + 1 : ((long) (int) second << 32) | 1;
+		} while (!buckets.compareAndSet(index, bucket, newBucket));
+
+		long previous = lastArrival.getAndSet(nanoTime);
+		if (previous != 0) {
+			interArrivalNanos.record(nanoTime - previous);
+		}
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * @param seconds
+	 *            the number of the last complete seconds, at most
+	 *            {@link #WINDOW_SECONDS} - 1
+	 * @return the average number of events per second
+	 */
+	public double getRate(int seconds, long nanoTime) {
+		long currentSecond = toSecond(nanoTime);
+		long events = 0;
+		for (long second = currentSecond - seconds; second < currentSecond; second++) {
+			long bucket = buckets.get(getIndex(second));
+			if (getSecond(bucket) == (int) second) {
+				events += bucket & COUNT_MASK;
+			}
+		}
+		return (double) events / seconds;
+	}
+
+	public Log2Histogram getInterArrivalNanos() {
+		return interArrivalNanos;
+	}
+
+	/**
+	 * The nano time can be negative, it is rounded down
+	 */
+	private static long toSecond(long nanoTime) {
+		long second = nanoTime / NANOS_PER_SECOND;
+		return nanoTime < 0 && second * NANOS_PER_SECOND != nanoTime ? second - 1 : second;
+	}
+
+	/**
+	 * The second can be negative
+	 */
+	private static int getIndex(long second) {
+		return (int) (((second % WINDOW_SECONDS) + WINDOW_SECONDS) % WINDOW_SECONDS);
+	}
+
+	private static int getSecond(long bucket) {
+		return (int) (bucket >>> 32);
+	}
+}
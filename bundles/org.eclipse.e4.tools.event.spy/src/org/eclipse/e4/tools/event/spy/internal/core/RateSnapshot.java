@@ -0,0 +1,62 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.tools.event.spy.internal.core;
+
+/**
+ * The values of a {@link RateCounter} at a given time
+ */
+public class RateSnapshot {
+	public static final int[] RATE_SECONDS = new int[] { 1, 10, RateCounter.WINDOW_SECONDS - 1 };
+
+	private final String name;
+
+	private final long count;
+
+	private final double[] rates = new double[RATE_SECONDS.length];
+
+	private final long meanInterArrivalNanos;
+
+	private final long medianInterArrivalNanos;
+
+	public RateSnapshot(RateCounter counter, long nanoTime) {
+		name = counter.getName();
+		count = counter.getCount();
+		for (int i = 0; i < RATE_SECONDS.length; i++) {
+			rates[i] = counter.getRate(RATE_SECONDS[i], nanoTime);
+		}
+		meanInterArrivalNanos = counter.getInterArrivalNanos().getMean();
+		medianInterArrivalNanos = counter.getInterArrivalNanos().getPercentile(50);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * @return the events per second over the last {@link #RATE_SECONDS}[index]
+	 *         seconds
+	 */
+	public double getRate(int index) {
+		return rates[index];
+	}
+
+	public long getMeanInterArrivalNanos() {
+		return meanInterArrivalNanos;
+	}
+
+	public long getMedianInterArrivalNanos() {
+		return medianInterArrivalNanos;
+	}
+}
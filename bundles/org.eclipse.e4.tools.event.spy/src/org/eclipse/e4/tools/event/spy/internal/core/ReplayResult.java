@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.tools.event.spy.internal.core;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The measures of an {@link EventReplayer} run
+ */
+public class ReplayResult {
+	private final int publishedCount;
+
+	private final int failedCount;
+
+	private final int skippedCount;
+
+	private final int degradedCount;
+
+	private final long elapsedNanos;
+
+	private final Log2Histogram latencyNanos;
+
+	private final Log2Histogram lagNanos;
+
+	private final boolean cancelled;
+
+	public ReplayResult(int publishedCount, int failedCount, int skippedCount, int degradedCount, long elapsedNanos,
+			Log2Histogram latencyNanos, Log2Histogram lagNanos, boolean cancelled) {
+		this.publishedCount = publishedCount;
+		this.failedCount = failedCount;
+		this.skippedCount = skippedCount;
+		this.degradedCount = degradedCount;
+		this.elapsedNanos = elapsedNanos;
+		this.latencyNanos = latencyNanos;
+		this.lagNanos = lagNanos;
+		this.cancelled = cancelled;
+	}
+
+	public int getPublishedCount() {
+		return publishedCount;
+	}
+
+	/**
+	 * @return the number of events the broker has not published or whose
+	 *         dispatch has thrown an exception
+	 */
+	public int getFailedCount() {
+		return failedCount;
+	}
+
+	/**
+	 * @return the number of degraded events which have not been published
+	 */
+	public int getSkippedCount() {
+		return skippedCount;
+	}
+
+	/**
+	 * @return the number of events with values no longer reachable, which have
+	 *         been skipped or published with the texts of these values
+	 */
+	public int getDegradedCount() {
+		return degradedCount;
+	}
+
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+
+	/**
+	 * @return the published events per second, the waits between the paced
+	 *         events included
+	 */
+	public double getThroughput() {
+		return elapsedNanos == 0 ? 0 : publishedCount * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+	}
+
+	/**
+	 * @return the distribution of the send or post durations
+	 */
+	public Log2Histogram getLatencyNanos() {
+		return latencyNanos;
+	}
+
+	/**
+	 * @return the distribution of the delays between the scheduled and the
+	 *         actual publications of the paced events, empty at max speed
+	 */
+	public Log2Histogram getLagNanos() {
+		return lagNanos;
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"%d events (%d failed, %d degraded, %d skipped) in %d ms, %.1f events/s, latency median %d ns, p99 %d ns, max %d ns, max lag %d ns",
+				publishedCount, failedCount, degradedCount, skippedCount, TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+				getThroughput(), latencyNanos.getPercentile(50), latencyNanos.getPercentile(99),
+				latencyNanos.getMax(), lagNanos.getMax());
+	}
+}
@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.tools.event.spy.internal.core;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counter updated concurrently by many threads. The increments are spread over
+ * several cells, each thread updates the cell chosen by its id, and the cells
+ * are summed when the counter is read.
+ */
+public class StripedCounter {
+	// the cells are spaced to be on different cache lines
+	private static final int CELL_SPACING = 8;
+
+	private final AtomicLongArray cells;
+
+	private final int mask;
+
+	public StripedCounter() {
+		int stripes = 1;
+		while (stripes < Runtime.getRuntime().availableProcessors() * 2) {
+			stripes <<= 1;
+		}
+		cells = new AtomicLongArray(stripes * CELL_SPACING);
+		mask = stripes - 1;
+	}
+
+	public void increment() {
+		add(1);
+	}
+
+	public void add(long value) {
+		int stripe = (int) Thread.currentThread().getId() & mask;
+		cells.addAndGet(stripe * CELL_SPACING, value);
+	}
+
+	public long get() {
+		long sum = 0;
+		for (int i = 0; i < cells.length(); i += CELL_SPACING) {
+			sum += cells.get(i);
+		}
+		return sum;
+	}
+
+	public void reset() {
+		for (int i = 0; i < cells.length(); i += CELL_SPACING) {
+			cells.set(i, 0);
+		}
+	}
+}
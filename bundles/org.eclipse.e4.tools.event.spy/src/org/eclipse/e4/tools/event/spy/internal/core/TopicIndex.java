@@ -0,0 +1,209 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.tools.event.spy.internal.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+
+import org.eclipse.e4.tools.event.spy.internal.model.CapturedEventFilter;
+import org.eclipse.e4.tools.event.spy.internal.model.ItemToFilter;
+import org.eclipse.e4.tools.event.spy.internal.model.Operator;
+import org.eclipse.e4.tools.event.spy.internal.model.SpecialValue;
+
+/**
+ * Trie of the topic filters keyed on the topic segments. All the 'equals to'
+ * and 'starts with' topic filters (and their negations) are evaluated by a
+ * single walk over the segments of the event topic. The filters ignore the
+ * case, so they do not narrow the broker subscription, which is case
+ * sensitive: the events are subscribed with the base topic and the rejected
+ * ones are dropped before a ring buffer slot is claimed.
+ */
+public class TopicIndex {
+	private static final char TOPIC_SEPARATOR = '/';
+
+	private static final int MAX_INDEXED_FILTERS = Long.SIZE;
+
+	private static class Node {
+		private static final Node[] NO_CHILDREN = new Node[0];
+
+		private static final String[] NO_PREFIXES = new String[0];
+
+		private String[] segments = NO_PREFIXES;
+
+		private Node[] children = NO_CHILDREN;
+
+		// filters matching the topics ending at this node
+		private long exactMask;
+
+		// filters matching the topics whose next segment starts with a prefix
+		private String[] prefixes = NO_PREFIXES;
+
+		private long[] prefixMasks = new long[0];
+
+		Node getChild(String topic, int start, int end) {
+			for (int i = 0; i < segments.length; i++) {
+				String segment = segments[i];
+				if (segment.length() == end - start && topic.regionMatches(true, start, segment, 0, segment.length())) {
+					return children[i];
+				}
+			}
+			return null;
+		}
+
+		Node getOrCreateChild(String segment) {
+			for (int i = 0; i < segments.length; i++) {
+				if (segments[i].equals(segment)) {
+					return children[i];
+				}
+			}
+			Node child = new Node();
+			segments = append(segments, segment);
+			children = Arrays.copyOf(children, children.length + 1);
+			children[children.length - 1] = child;
+			return child;
+		}
+
+		void addPrefix(String prefix, long mask) {
+			for (int i = 0; i < prefixes.length; i++) {
+				if (prefixes[i].equals(prefix)) {
+					prefixMasks[i] |= mask;
+					return;
+				}
+			}
+			prefixes = append(prefixes, prefix);
+			prefixMasks = Arrays.copyOf(prefixMasks, prefixMasks.length + 1);
+			prefixMasks[prefixMasks.length - 1] = mask;
+		}
+
+		long matchPrefixes(String topic, int start, int end) {
+			long mask = 0;
+			for (int i = 0; i < prefixes.length; i++) {
+				String prefix = prefixes[i];
+				if (prefix.length() <= end - start && topic.regionMatches(true, start, prefix, 0, prefix.length())) {
+					mask |= prefixMasks[i];
+				}
+			}
+			return mask;
+		}
+
+		private static String[] append(String[] array, String item) {
+			String[] result = Arrays.copyOf(array, array.length + 1);
+			result[array.length] = item;
+			return result;
+		}
+	}
+
+	private final Node root = new Node();
+
+	private long positiveMask;
+
+	private long negativeMask;
+
+	private final List<CapturedEventFilter> unindexedFilters = new ArrayList<CapturedEventFilter>();
+
+	public TopicIndex(Collection<CapturedEventFilter> filters) {
+		int indexed = 0;
+
+		if (filters != null) {
+			for (CapturedEventFilter filter : filters) {
+				if (!isIndexable(filter) || indexed == MAX_INDEXED_FILTERS) {
+					unindexedFilters.add(filter);
+					continue;
+				}
+				long mask = 1L << indexed++;
+				add(filter, mask);
+
+				if (filter.getOperator().isPositive()) {
+					positiveMask |= mask;
+				} else {
+					negativeMask |= mask;
+				}
+			}
+		}
+	}
+
+	public static boolean isIndexable(CapturedEventFilter filter) {
+		if (!ItemToFilter.Topic.equals(filter.getItemToFilter())) {
+			return false;
+		}
+		String value = filter.getValue();
+		if (SpecialValue.Null.toString().equalsIgnoreCase(value)
+				|| SpecialValue.EmptyString.toString().equalsIgnoreCase(value)) {
+			return false;
+		}
+		Operator operator = filter.getOperator();
+		return Operator.Equals.equals(operator) || Operator.NotEquals.equals(operator)
+				|| Operator.StartsWith.equals(operator) || Operator.NotStartsWith.equals(operator);
+	}
+
+	/**
+	 * @return true when the topic passes all the indexed filters
+	 */
+	public boolean matches(String topic) {
+		if (topic == null) {
+			return positiveMask == 0;
+		}
+		long satisfied = 0;
+		Node node = root;
+		int start = 0;
+
+		for (;;) {
+			int end = topic.indexOf(TOPIC_SEPARATOR, start);
+			if (end < 0) {
+				end = topic.length();
+			}
+			satisfied |= node.matchPrefixes(topic, start, end);
+
+			node = node.getChild(topic, start, end);
+			if (node == null) {
+				break;
+			}
+			if (end == topic.length()) {
+				satisfied |= node.exactMask;
+				break;
+			}
+			start = end + 1;
+		}
+		return (satisfied & positiveMask) == positiveMask && (satisfied & negativeMask) == 0;
+	}
+
+	/**
+	 * @return the filters which have to be evaluated by the
+	 *         {@link CapturedEventFilterMatcher}
+	 */
+	public List<CapturedEventFilter> getUnindexedFilters() {
+		return unindexedFilters;
+	}
+
+	private void add(CapturedEventFilter filter, long mask) {
+		String value = filter.getValue().toLowerCase(Locale.ENGLISH);
+		boolean startsWith = Operator.StartsWith.equals(filter.getOperator())
+				|| Operator.NotStartsWith.equals(filter.getOperator());
+
+		Node node = root;
+		int start = 0;
+		int end;
+		while ((end = value.indexOf(TOPIC_SEPARATOR, start)) >= 0) {
+			node = node.getOrCreateChild(value.substring(start, end));
+			start = end + 1;
+		}
+
+		String lastSegment = value.substring(start);
+		if (startsWith) {
+			node.addPrefix(lastSegment, mask);
+		} else {
+			node.getOrCreateChild(lastSegment).exactMask |= mask;
+		}
+	}
+}
@@ -15,14 +15,22 @@ import java.util.Collections;
 import java.util.List;
 
 public class CapturedEvent implements IEventItem {
+	public static final long NO_SEQUENCE = -1;
+
 	private String topic;
 
-	private String publisherClassName = "";
+	private String publisherClassName;
+
+	private PublisherCallSite publisherCallSite;
 
 	private String changedElementClassName = "";
 
 	private List<Parameter> parameters;
 
+	private long timestamp;
+
+	private long sequence = NO_SEQUENCE;
+
 	public void setTopic(String topic) {
 		this.topic = topic;
 	}
@@ -36,9 +44,21 @@ public class CapturedEvent implements IEventItem {
 	}
 
 	public String getPublisherClassName() {
+		if (publisherClassName == null) {
+			publisherClassName = publisherCallSite != null ? publisherCallSite.getName() : "";
+		}
 		return publisherClassName;
 	}
 
+	public void setPublisherCallSite(PublisherCallSite publisherCallSite) {
+		this.publisherCallSite = publisherCallSite;
+		this.publisherClassName = null;
+	}
+
+	public PublisherCallSite getPublisherCallSite() {
+		return publisherCallSite;
+	}
+
 	public void setChangedElementClassName(String changedElementClassName) {
 		this.changedElementClassName = changedElementClassName;
 	}
@@ -47,6 +67,27 @@ public class CapturedEvent implements IEventItem {
 		return changedElementClassName;
 	}
 
+	public void setTimestamp(long timestamp) {
+		this.timestamp = timestamp;
+	}
+
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * @param sequence
+	 *            the position of the event in the captured events history,
+	 *            the events with the same sequence are equal
+	 */
+	public void setSequence(long sequence) {
+		this.sequence = sequence;
+	}
+
+	public long getSequence() {
+		return sequence;
+	}
+
 	public void addParameter(String name, Object value) {
 		if (parameters == null) {
 			parameters = new ArrayList<Parameter>();
@@ -54,6 +95,17 @@ public class CapturedEvent implements IEventItem {
 		parameters.add(new Parameter(name, value));
 	}
 
+	public void addParameter(Parameter parameter) {
+		if (parameters == null) {
+			parameters = new ArrayList<Parameter>();
+		}
+		parameters.add(parameter);
+	}
+
+	public void replaceParameter(int index, Parameter parameter) {
+		parameters.set(index, parameter);
+	}
+
 	@SuppressWarnings("unchecked")
 	public List<Parameter> getParameters() {
 		return parameters != null ? parameters : Collections.EMPTY_LIST;
@@ -63,6 +115,22 @@ public class CapturedEvent implements IEventItem {
 		return parameters != null;
 	}
 
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (sequence == NO_SEQUENCE || !(obj instanceof CapturedEvent)) {
+			return false;
+		}
+		return sequence == ((CapturedEvent) obj).sequence;
+	}
+
+	@Override
+	public int hashCode() {
+		return sequence == NO_SEQUENCE ? super.hashCode() : (int) (sequence ^ (sequence >>> 32));
+	}
+
 	@Override
 	public String toString() {
 		return topic;
@@ -10,6 +10,8 @@
  *******************************************************************************/
 package org.eclipse.e4.tools.event.spy.internal.model;
 
+import java.util.regex.Pattern;
+
 public class CapturedEventFilter {
 	private final static String FILTER_AS_STRING_PATTERN = "Capture event when '%s' %s '%s'";
 
@@ -22,7 +24,8 @@ public class CapturedEventFilter {
 	public CapturedEventFilter(ItemToFilter itemToFilter, Operator operator, String value) {
 		this.itemToFilter = itemToFilter;
 		this.operator = operator;
-		this.value = normalize(itemToFilter, value);
+		this.value = normalize(itemToFilter, operator, value);
+		validate(operator, this.value);
 	}
 
 	public ItemToFilter getItemToFilter() {
@@ -49,8 +52,9 @@ public class CapturedEventFilter {
 		this.value = value;
 	}
 
-	private String normalize(ItemToFilter itemToFilter, String value) {
-		if (ItemToFilter.ParameterNameAndValue.equals(itemToFilter)) {
+	private String normalize(ItemToFilter itemToFilter, Operator operator, String value) {
+		// the patterns, ranges and sets are used as typed
+		if (ItemToFilter.ParameterNameAndValue.equals(itemToFilter) && operator.isTextComparison()) {
 			String[] splitted = value.split("=");
 			if (splitted.length != 2) {
 				throw new IllegalArgumentException("Invalid value format, it should be: "
@@ -61,6 +65,25 @@ public class CapturedEventFilter {
 		return value;
 	}
 
+	/**
+	 * @throws IllegalArgumentException
+	 *             when the value cannot be used by the operator
+	 */
+	private void validate(Operator operator, String value) {
+		switch (operator) {
+		case MatchesRegex:
+		case NotMatchesRegex:
+			Pattern.compile(value);
+			break;
+		case InRange:
+		case NotInRange:
+			NumericRange.parse(value);
+			break;
+		default:
+			break;
+		}
+	}
+
 	@Override
 	public String toString() {
 		return String.format(FILTER_AS_STRING_PATTERN, itemToFilter, operator, value);
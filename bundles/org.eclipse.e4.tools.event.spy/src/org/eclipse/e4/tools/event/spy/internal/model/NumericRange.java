@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.tools.event.spy.internal.model;
+
+/**
+ * Inclusive range of numbers written "min..max", one of the bounds can be
+ * omitted
+ */
+public class NumericRange {
+	private static final String SEPARATOR = "..";
+
+	private final double min;
+
+	private final double max;
+
+	public NumericRange(double min, double max) {
+		this.min = min;
+		this.max = max;
+	}
+
+	/**
+	 * @throws IllegalArgumentException
+	 *             when the text is not a range
+	 */
+	public static NumericRange parse(String text) {
+		int separator = text.indexOf(SEPARATOR);
+		if (separator < 0) {
+			throw new IllegalArgumentException("Invalid range format, it should be: min..max");
+		}
+		String minText = text.substring(0, separator).trim();
+		String maxText = text.substring(separator + SEPARATOR.length()).trim();
+		if (minText.length() == 0 && maxText.length() == 0) {
+			throw new IllegalArgumentException("Invalid range, at least one bound is expected");
+		}
+		return new NumericRange(parseBound(minText, Double.NEGATIVE_INFINITY), parseBound(maxText,
+				Double.POSITIVE_INFINITY));
+	}
+
+	private static double parseBound(String text, double defaultBound) {
+		if (text.length() == 0) {
+			return defaultBound;
+		}
+		try {
+			return Double.parseDouble(text);
+		} catch (NumberFormatException exc) {
+			throw new IllegalArgumentException(String.format("Invalid range bound: %s", text));
+		}
+	}
+
+	public boolean contains(double value) {
+		return value >= min && value <= max;
+	}
+
+	public double getMin() {
+		return min;
+	}
+
+	public double getMax() {
+		return max;
+	}
+}
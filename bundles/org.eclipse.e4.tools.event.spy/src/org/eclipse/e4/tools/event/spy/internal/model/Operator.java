@@ -13,7 +13,10 @@ package org.eclipse.e4.tools.event.spy.internal.model;
 public enum Operator {
 	NotSelected("-- operator --", false), Equals("equals to", true), NotEquals("not equals to",
 			false), Contains("contains", true), NotContains("not contains", false), StartsWith("starts with",
-					true), NotStartsWith("not starts with", false);
+					true), NotStartsWith("not starts with", false), MatchesRegex("matches regex", true),
+	NotMatchesRegex("not matches regex", false), MatchesGlob("matches glob", true), NotMatchesGlob(
+			"not matches glob", false), InRange("is in range", true), NotInRange("is not in range", false), InSet(
+			"is one of", true), NotInSet("is not one of", false);
 
 	private String text;
 
@@ -33,6 +36,15 @@ public enum Operator {
 		return positive;
 	}
 
+	/**
+	 * @return true for the operators comparing the whole value with a single
+	 *         expected text, false for the patterns, ranges and sets
+	 */
+	public boolean isTextComparison() {
+		return this == Equals || this == NotEquals || this == Contains || this == NotContains
+				|| this == StartsWith || this == NotStartsWith;
+	}
+
 	public static Operator toOperator(String text) {
 		for (Operator operator : values()) {
 			if (operator.text.equals(text)) {
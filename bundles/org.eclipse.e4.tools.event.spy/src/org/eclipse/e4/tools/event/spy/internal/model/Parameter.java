@@ -15,11 +15,23 @@ import org.eclipse.e4.tools.event.spy.internal.util.MultilineFormatter;
 public class Parameter implements IEventItem {
 	private static final String EMPTY_VALUE = "";
 
+	private static final int LINE_LENGTH = 70;
+
+	/**
+	 * The number of characters of the value formatted until the parameter is
+	 * expanded
+	 */
+	private static final int VISIBLE_LENGTH = 500;
+
 	private final String name;
 	private final Object value;
 
 	private String formattedValue;
 
+	private boolean truncated;
+
+	private boolean expanded;
+
 	public Parameter(String name, Object value) {
 		this.name = name;
 		this.value = value;
@@ -40,11 +52,41 @@ public class Parameter implements IEventItem {
 			return SpecialValue.Null.toString();
 		}
 		if (formattedValue == null) {
-			formattedValue = MultilineFormatter.format(value.toString(), 70);
+			String text = value.toString();
+			int maxLength = expanded ? MultilineFormatter.UNLIMITED : VISIBLE_LENGTH;
+			formattedValue = MultilineFormatter.format(text, LINE_LENGTH, maxLength);
+			truncated = MultilineFormatter.isTruncated(text, maxLength);
 		}
 		return formattedValue;
 	}
 
+	/**
+	 * @return true when only the beginning of the value is formatted
+	 */
+	public boolean isTruncated() {
+		getParam1();
+		return truncated;
+	}
+
+	/**
+	 * @return true when the whole value is formatted since the parameter has
+	 *         been expanded
+	 */
+	public boolean isExpanded() {
+		return expanded;
+	}
+
+	/**
+	 * Formats the whole value the next time it is requested
+	 */
+	public void expand() {
+		if (isTruncated()) {
+			expanded = true;
+			formattedValue = null;
+			truncated = false;
+		}
+	}
+
 	@Override
 	public String getParam2() {
 		return EMPTY_VALUE;
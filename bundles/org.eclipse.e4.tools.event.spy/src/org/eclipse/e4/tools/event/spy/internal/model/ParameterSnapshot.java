@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.tools.event.spy.internal.model;
+
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+
+/**
+ * The state of a parameter value at the time the event has been captured. The
+ * snapshot does not keep the value reachable, so the captured events do not
+ * retain the disposed model elements and widgets.
+ */
+public class ParameterSnapshot {
+	private final String typeName;
+
+	private final int identityHashCode;
+
+	private final String text;
+
+	private final String elementId;
+
+	private final Reference<Object> reference;
+
+	public ParameterSnapshot(String typeName, int identityHashCode, String text, String elementId, Object value) {
+		this.typeName = typeName;
+		this.identityHashCode = identityHashCode;
+		this.text = text;
+		this.elementId = elementId;
+		this.reference = value != null ? new WeakReference<Object>(value) : null;
+	}
+
+	public String getTypeName() {
+		return typeName;
+	}
+
+	public int getIdentityHashCode() {
+		return identityHashCode;
+	}
+
+	/**
+	 * @return the bounded toString() of the value
+	 */
+	public String getText() {
+		return text;
+	}
+
+	/**
+	 * @return the id of the model element or null when the value is not a
+	 *         model element or it has no id
+	 */
+	public String getElementId() {
+		return elementId;
+	}
+
+	/**
+	 * @return the value when it is still reachable and the reference has been
+	 *         kept, null otherwise
+	 */
+	public Object getValue() {
+		return reference != null ? reference.get() : null;
+	}
+
+	@Override
+	public String toString() {
+		return text;
+	}
+}
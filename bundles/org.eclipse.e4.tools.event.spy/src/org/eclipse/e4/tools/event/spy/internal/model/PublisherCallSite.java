@@ -0,0 +1,43 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.tools.event.spy.internal.model;
+
+/**
+ * The code location which has published an event. Instances are shared by all
+ * the events published from the same location and the name is formatted only
+ * when it is displayed for the first time.
+ */
+public class PublisherCallSite {
+	private final StackTraceElement frame;
+
+	private String name;
+
+	public PublisherCallSite(StackTraceElement frame) {
+		this.frame = frame;
+	}
+
+	public StackTraceElement getFrame() {
+		return frame;
+	}
+
+	public String getName() {
+		if (name == null) {
+			name = new StringBuilder(frame.getClassName()).append(" (").append(frame.getMethodName()).append(':')
+					.append(frame.getLineNumber()).append(')').toString();
+		}
+		return name;
+	}
+
+	@Override
+	public String toString() {
+		return getName();
+	}
+}
@@ -0,0 +1,81 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.tools.event.spy.internal.model;
+
+/**
+ * Limits of the captured events history, a limit set to {@link #UNLIMITED} is
+ * not checked. With the {@link EvictionPolicy#KeepFirstAndLast} policy the
+ * first keepFirstCount events are never evicted and the limits are applied to
+ * the following ones.
+ */
+public class RetentionPolicy {
+	public static final int UNLIMITED = 0;
+
+	private EvictionPolicy evictionPolicy = EvictionPolicy.Fifo;
+
+	private int maxCount = UNLIMITED;
+
+	private int keepFirstCount;
+
+	private long maxBytes = UNLIMITED;
+
+	private long maxAge = UNLIMITED;
+
+	public void setEvictionPolicy(EvictionPolicy evictionPolicy) {
+		this.evictionPolicy = evictionPolicy;
+	}
+
+	public EvictionPolicy getEvictionPolicy() {
+		return evictionPolicy;
+	}
+
+	/**
+	 * @param maxCount
+	 *            the maximum number of retained events including the first
+	 *            kept ones
+	 */
+	public void setMaxCount(int maxCount) {
+		this.maxCount = maxCount;
+	}
+
+	public int getMaxCount() {
+		return maxCount;
+	}
+
+	public void setKeepFirstCount(int keepFirstCount) {
+		this.keepFirstCount = keepFirstCount;
+	}
+
+	public int getKeepFirstCount() {
+		return evictionPolicy == EvictionPolicy.KeepFirstAndLast ? keepFirstCount : 0;
+	}
+
+	public void setMaxBytes(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * @param maxAge
+	 *            the maximum age in milliseconds of the retained events,
+	 *            relative to the newest captured event
+	 */
+	public void setMaxAge(long maxAge) {
+		this.maxAge = maxAge;
+	}
+
+	public long getMaxAge() {
+		return maxAge;
+	}
+}
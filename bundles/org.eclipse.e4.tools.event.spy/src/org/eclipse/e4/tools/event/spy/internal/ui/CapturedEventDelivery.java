@@ -0,0 +1,170 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.tools.event.spy.internal.ui;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.e4.tools.event.spy.internal.model.CapturedEvent;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Label;
+
+/**
+ * Accumulates the captured events coming from the capture consumer and passes
+ * them to the tree in batches, at most once per flush interval, so bursts are
+ * coalesced into fewer and larger tree updates.
+ * <p>
+ * The events are queued with the generation of their capture session, the
+ * events of the other generations are dropped. Starting a new generation
+ * replaces the queue instead of emptying it. The queue is bounded, the events
+ * are dropped and counted when the tree does not keep up.
+ */
+public class CapturedEventDelivery {
+	private static final int FLUSH_INTERVAL = 100;
+
+	private static final int MAX_BATCH_SIZE = 5000;
+
+	private static final int QUEUE_CAPACITY = 65536;
+
+	public static final int NO_GENERATION = -1;
+
+	private final Display display;
+
+	private final CapturedEventTree capturedEventTree;
+
+	private final Label pendingLabel;
+
+	private volatile PendingEvents pendingEvents = new PendingEvents(NO_GENERATION);
+
+	private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+	private final Runnable scheduleFlush = new Runnable() {
+		@Override
+		public void run() {
+			if (!display.isDisposed()) {
+				display.timerExec(FLUSH_INTERVAL, flush);
+			}
+		}
+	};
+
+	private final Runnable flush = new Runnable() {
+		@Override
+		public void run() {
+			if (capturedEventTree.getTree().isDisposed()) {
+				return;
+			}
+			PendingEvents current = pendingEvents;
+			List<CapturedEvent> batch = new ArrayList<CapturedEvent>(Math.min(current.queue.size(), MAX_BATCH_SIZE));
+			current.queue.drainTo(batch, MAX_BATCH_SIZE);
+			int pending = current.queue.size();
+			if (!batch.isEmpty()) {
+				capturedEventTree.addEvents(batch);
+			}
+			updatePendingLabel(pending, current.dropped.get());
+
+			if (pending > 0) {
+				display.timerExec(FLUSH_INTERVAL, this);
+				return;
+			}
+			flushScheduled.set(false);
+			// an event could have been queued after the queue has been seen
+			// empty but before the flag has been reset
+			if (!pendingEvents.queue.isEmpty() && flushScheduled.compareAndSet(false, true)) {
+				display.timerExec(FLUSH_INTERVAL, this);
+			}
+		}
+	};
+
+	public CapturedEventDelivery(Display display, CapturedEventTree capturedEventTree, Label pendingLabel) {
+		this.display = display;
+		this.capturedEventTree = capturedEventTree;
+		this.pendingLabel = pendingLabel;
+	}
+
+	/**
+	 * Queues the event for the next flush, it can be called from any thread
+	 *
+	 * @return false when the event has been dropped since its generation is
+	 *         not the current one, true when it belongs to the current
+	 *         generation, even if dropped and counted since the queue is full
+	 */
+	public boolean add(int generation, CapturedEvent event) {
+		PendingEvents current = pendingEvents;
+		if (current.generation != generation) {
+			return false;
+		}
+		if (!current.queue.offer(event)) {
+			current.dropped.incrementAndGet();
+		}
+		if (flushScheduled.compareAndSet(false, true) && !display.isDisposed()) {
+			display.asyncExec(scheduleFlush);
+		}
+		return true;
+	}
+
+	/**
+	 * Drops the events which have not been passed to the tree yet and accepts
+	 * the events of the generation only, it must be called from the UI thread
+	 */
+	public void startGeneration(int generation) {
+		pendingEvents = new PendingEvents(generation);
+		updatePendingLabel(0, 0);
+	}
+
+	/**
+	 * Drops the pending events and the events delivered afterwards
+	 */
+	public void clear() {
+		startGeneration(NO_GENERATION);
+	}
+
+	public int getPendingCount() {
+		return pendingEvents.queue.size();
+	}
+
+	/**
+	 * @return the number of events of the current generation dropped since
+	 *         the queue was full
+	 */
+	public long getDroppedCount() {
+		return pendingEvents.dropped.get();
+	}
+
+	private void updatePendingLabel(int pending, long dropped) {
+		if (pendingLabel.isDisposed()) {
+			return;
+		}
+		String text = pending > 0 ? String.format("%d events pending", pending) : "";
+		if (dropped > 0) {
+			text = pending > 0 ? String.format("%s, %d dropped", text, dropped) : String.format(
+					"%d events dropped", dropped);
+		}
+		if (!text.equals(pendingLabel.getText())) {
+			pendingLabel.setText(text);
+		}
+	}
+
+	private static class PendingEvents {
+		private final int generation;
+
+		private final BlockingQueue<CapturedEvent> queue = new LinkedBlockingQueue<CapturedEvent>(QUEUE_CAPACITY);
+
+		private final AtomicLong dropped = new AtomicLong();
+
+		PendingEvents(int generation) {
+			this.generation = generation;
+		}
+	}
+}
@@ -179,6 +179,7 @@ public class CapturedEventFilters {
 		valueText = new Text(parent, SWT.BORDER);
 		valueText.setLayoutData(new RowData(130, SWT.DEFAULT));
 		valueText.setText(NOT_SELECTED_VALUE);
+		valueText.setToolTipText("Glob: * and ?, range: min..max, set: comma separated values");
 		valueText.addFocusListener(new FocusListener() {
 			@Override
 			public void focusLost(FocusEvent e) {
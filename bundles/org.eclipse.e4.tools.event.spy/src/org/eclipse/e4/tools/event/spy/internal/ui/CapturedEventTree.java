@@ -10,22 +10,24 @@
  *******************************************************************************/
 package org.eclipse.e4.tools.event.spy.internal.ui;
 
-import java.util.ArrayList;
-
-import org.eclipse.core.databinding.beans.PojoObservables;
-import org.eclipse.core.databinding.observable.IObservable;
-import org.eclipse.core.databinding.observable.list.IObservableList;
-import org.eclipse.core.databinding.observable.list.WritableList;
-import org.eclipse.core.databinding.observable.map.IObservableMap;
-import org.eclipse.core.databinding.observable.masterdetail.IObservableFactory;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.e4.tools.event.spy.internal.core.CapturedEventIndex;
+import org.eclipse.e4.tools.event.spy.internal.core.CapturedEventStore;
 import org.eclipse.e4.tools.event.spy.internal.model.CapturedEvent;
 import org.eclipse.e4.tools.event.spy.internal.model.IEventItem;
 import org.eclipse.e4.tools.event.spy.internal.model.ItemToFilter;
+import org.eclipse.e4.tools.event.spy.internal.model.Parameter;
+import org.eclipse.e4.tools.event.spy.internal.model.RetentionPolicy;
 import org.eclipse.e4.tools.event.spy.internal.util.JDTUtils;
-import org.eclipse.jface.databinding.viewers.ObservableListTreeContentProvider;
-import org.eclipse.jface.databinding.viewers.ObservableMapLabelProvider;
-import org.eclipse.jface.databinding.viewers.TreeStructureAdvisor;
+import org.eclipse.jface.viewers.ILazyTreeContentProvider;
+import org.eclipse.jface.viewers.ITableLabelProvider;
+import org.eclipse.jface.viewers.LabelProvider;
 import org.eclipse.jface.viewers.TreeViewer;
+import org.eclipse.jface.viewers.Viewer;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.dnd.Clipboard;
 import org.eclipse.swt.dnd.TextTransfer;
@@ -45,6 +47,7 @@ import org.eclipse.swt.graphics.Color;
 import org.eclipse.swt.graphics.Cursor;
 import org.eclipse.swt.graphics.Font;
 import org.eclipse.swt.graphics.FontData;
+import org.eclipse.swt.graphics.Image;
 import org.eclipse.swt.graphics.Point;
 import org.eclipse.swt.graphics.RGB;
 import org.eclipse.swt.graphics.Rectangle;
@@ -60,7 +63,7 @@ import org.eclipse.swt.widgets.TreeItem;
 public class CapturedEventTree extends TreeViewer {
 	private ICapturedEventTreeListener listener;
 
-	private WritableList capturedEvents;
+	private CapturedEventStore capturedEvents = new CapturedEventStore();
 
 	private Clipboard clipboard;
 
@@ -77,7 +80,7 @@ public class CapturedEventTree extends TreeViewer {
 	private SelectedTreeItem selectedTreeItem;
 
 	public CapturedEventTree(Composite parent) {
-		super(parent, SWT.BORDER | SWT.H_SCROLL | SWT.V_SCROLL | SWT.FULL_SELECTION);
+		super(parent, SWT.BORDER | SWT.H_SCROLL | SWT.V_SCROLL | SWT.FULL_SELECTION | SWT.VIRTUAL);
 
 		getTree().setHeaderVisible(true);
 		getTree().setLinesVisible(true);
@@ -94,15 +97,9 @@ public class CapturedEventTree extends TreeViewer {
 		column.setText(ItemToFilter.ChangedElement.toString());
 		column.setWidth(150);
 
-		ObservableListTreeContentProvider contentProvider = new ObservableListTreeContentProvider(
-				new CapturedEventsObservableFactory(), new CapturedEventsTreeStructureAdvisor());
-		setContentProvider(contentProvider);
-
-		IObservableMap[] attributes = PojoObservables.observeMaps(contentProvider.getKnownElements(), IEventItem.class,
-				new String[] { "name", "param1", "param2" });
-		setLabelProvider(new ObservableMapLabelProvider(attributes));
-
-		capturedEvents = new WritableList(new ArrayList<CapturedEvent>(), CapturedEvent.class);
+		setUseHashlookup(true);
+		setContentProvider(new CapturedEventsContentProvider(this));
+		setLabelProvider(new CapturedEventsLabelProvider());
 		setInput(capturedEvents);
 
 		clipboard = new Clipboard(getTree().getDisplay());
@@ -112,26 +109,86 @@ public class CapturedEventTree extends TreeViewer {
 		addTreeEventListeners();
 	}
 
-	private static class CapturedEventsTreeStructureAdvisor extends TreeStructureAdvisor {
+	/**
+	 * Provides the events and their parameters when the corresponding items are
+	 * about to be shown, the items of the collapsed events are never created
+	 */
+	private static class CapturedEventsContentProvider implements ILazyTreeContentProvider {
+		private final TreeViewer viewer;
+
+		private List<?> capturedEvents;
+
+		public CapturedEventsContentProvider(TreeViewer viewer) {
+			this.viewer = viewer;
+		}
+
+		@Override
+		public void inputChanged(Viewer viewer, Object oldInput, Object newInput) {
+			capturedEvents = (List<?>) newInput;
+		}
+
+		@Override
+		public void updateElement(Object parent, int index) {
+			List<?> children = getChildren(parent);
+			if (index >= children.size()) {
+				return;
+			}
+			Object element = children.get(index);
+			viewer.replace(parent, index, element);
+			viewer.setHasChildren(element, getChildren(element).size() > 0);
+		}
+
+		@Override
+		public void updateChildCount(Object element, int currentChildCount) {
+			int count = getChildren(element).size();
+			if (count != currentChildCount) {
+				viewer.setChildCount(element, count);
+			}
+		}
+
 		@Override
-		public Boolean hasChildren(Object element) {
+		public Object getParent(Object element) {
+			return element instanceof CapturedEvent ? capturedEvents : null;
+		}
+
+		@Override
+		public void dispose() {
+			capturedEvents = null;
+		}
+
+		private List<?> getChildren(Object element) {
+			if (element == capturedEvents) {
+				return capturedEvents;
+			}
 			if (element instanceof CapturedEvent) {
-				return !((CapturedEvent) element).getParameters().isEmpty();
+				return ((CapturedEvent) element).getParameters();
 			}
-			return false;
+			return Collections.EMPTY_LIST;
 		}
 	}
 
-	private static class CapturedEventsObservableFactory implements IObservableFactory {
+	private static class CapturedEventsLabelProvider extends LabelProvider implements ITableLabelProvider {
+		@Override
+		public Image getColumnImage(Object element, int columnIndex) {
+			return null;
+		}
+
 		@Override
-		public IObservable createObservable(Object target) {
-			if (target instanceof IObservableList) {
-				return (IObservableList) target;
+		public String getColumnText(Object element, int columnIndex) {
+			if (!(element instanceof IEventItem)) {
+				return "";
 			}
-			if (target instanceof CapturedEvent) {
-				return PojoObservables.observeList(target, "parameters");
+			IEventItem item = (IEventItem) element;
+			switch (columnIndex) {
+			case 0:
+				return item.getName();
+			case 1:
+				return item.getParam1();
+			case 2:
+				return item.getParam2();
+			default:
+				return "";
 			}
-			return null;
 		}
 	}
 
@@ -233,6 +290,20 @@ public class CapturedEventTree extends TreeViewer {
 					listener.treeItemWithClassNameClicked(selectedClassNameTreeItem.getText());
 				}
 			}
+
+			@Override
+			public void mouseDoubleClick(MouseEvent e) {
+				TreeItem item = getTree().getItem(new Point(e.x, e.y));
+				if (item == null || !(item.getData() instanceof Parameter)) {
+					return;
+				}
+				Parameter parameter = (Parameter) item.getData();
+				if (parameter.isTruncated()) {
+					parameter.expand();
+					update(parameter, null);
+					updateSelectedTreeItem(item, getSelectedColumnIndex(item, e.x, e.y));
+				}
+			}
 		});
 
 		getTree().addListener(SWT.EraseItem, new Listener() {
@@ -271,7 +342,8 @@ public class CapturedEventTree extends TreeViewer {
 					return;
 				}
 				if (e.keyCode == 'c' && text.trim().length() > 0) {
-					clipboard.setContents(new Object[] { text }, new Transfer[] { TextTransfer.getInstance() });
+					clipboard.setContents(new Object[] { getCopiedText(text) },
+							new Transfer[] { TextTransfer.getInstance() });
 				} else if (e.keyCode == SWT.ARROW_LEFT) {
 					updateSelectedTreeItem(selectedTreeItem.getTreeItem(),
 							Math.max(0, selectedTreeItem.getColumnIndex() - 1));
@@ -305,6 +377,19 @@ public class CapturedEventTree extends TreeViewer {
 		});
 	}
 
+	/**
+	 * @return the whole value of the truncated parameters, the displayed text
+	 *         otherwise
+	 */
+	private String getCopiedText(String text) {
+		TreeItem item = selectedTreeItem.getTreeItem();
+		if (item != null && !item.isDisposed() && selectedTreeItem.getColumnIndex() == 1
+				&& item.getData() instanceof Parameter && ((Parameter) item.getData()).isTruncated()) {
+			return String.valueOf(((Parameter) item.getData()).getValue());
+		}
+		return text;
+	}
+
 	private void updateSelectedTreeItem(TreeItem item, int columnIndex) {
 		if (columnIndex > -1) {
 			selectedTreeItem.clear(); // clear old selection
@@ -358,7 +443,76 @@ public class CapturedEventTree extends TreeViewer {
 	}
 
 	public void addEvent(CapturedEvent event) {
-		capturedEvents.add(event);
+		addEvents(Collections.singletonList(event));
+	}
+
+	/**
+	 * Adds the events with a single update of the tree, the items are created
+	 * when they are shown
+	 */
+	public void addEvents(Collection<CapturedEvent> events) {
+		int shownCount = capturedEvents.size();
+		int firstEventsCount = capturedEvents.getFirstEventsCount();
+		long evictedCount = capturedEvents.getEvictedCount();
+		capturedEvents.addAll(events);
+		if (getInput() != capturedEvents) {
+			return;
+		}
+		if (firstEventsCount != capturedEvents.getFirstEventsCount()
+				&& evictedCount != capturedEvents.getEvictedCount()) {
+			// the kept first events have been extended, the new ones are not
+			// at the end
+			clearSelectedTreeItems();
+			refresh();
+			return;
+		}
+		// the evicted events are removed with their items, so the selected and
+		// expanded items keep showing the same events
+		long evictedShownCount = Math.min(capturedEvents.getEvictedCount() - evictedCount, shownCount
+				- firstEventsCount);
+		removeEventItems(firstEventsCount, (int) evictedShownCount);
+		setChildCount(capturedEvents, capturedEvents.size());
+	}
+
+	private void removeEventItems(int start, int count) {
+		if (count <= 0) {
+			return;
+		}
+		Tree tree = getTree();
+		tree.setRedraw(false);
+		try {
+			for (int i = 0; i < count && start < tree.getItemCount(); i++) {
+				TreeItem item = tree.getItem(start);
+				if (item.getData() != null) {
+					disassociate(item);
+				}
+				item.dispose();
+			}
+		} finally {
+			tree.setRedraw(true);
+		}
+		if (isDisposed(selectedTreeItem.getTreeItem())) {
+			selectedTreeItem.clear();
+		}
+		if (isDisposed(selectedClassNameTreeItem.getTreeItem())) {
+			selectedClassNameTreeItem.clear();
+		}
+	}
+
+	private static boolean isDisposed(TreeItem item) {
+		return item != null && item.isDisposed();
+	}
+
+	/**
+	 * Sets the limits of the history, they are applied to the events added
+	 * afterwards
+	 */
+	public void setRetentionPolicy(RetentionPolicy retentionPolicy) {
+		capturedEvents.setRetentionPolicy(retentionPolicy);
+	}
+
+	public long getEvictedCount() {
+		return capturedEvents.getEvictedCount();
 	}
 
 	public void setListener(ICapturedEventTreeListener listener) {
@@ -366,7 +520,71 @@ public class CapturedEventTree extends TreeViewer {
 	}
 
 	public void removeAll() {
-		capturedEvents.clear();
+		clearSelectedTreeItems();
+		replaceCapturedEvents();
+		setInput(capturedEvents);
+	}
+
+	/**
+	 * Shows the events which have not been captured by the tree, for instance
+	 * the events read from a capture log. The captured events are shown again
+	 * by {@link #removeAll()}.
+	 */
+	public void showEvents(List<CapturedEvent> events) {
+		clearSelectedTreeItems();
+		replaceCapturedEvents();
+		setInput(events);
+	}
+
+	/**
+	 * The history is replaced rather than cleared, so the time taken does not
+	 * depend on its size
+	 */
+	private void replaceCapturedEvents() {
+		RetentionPolicy retentionPolicy = capturedEvents.getRetentionPolicy();
+		capturedEvents = new CapturedEventStore();
+		capturedEvents.setRetentionPolicy(retentionPolicy);
+	}
+
+	/**
+	 * Searches the shown events, the captured events are found with their
+	 * index, the other ones are scanned
+	 *
+	 * @return the ascending indexes of the matching events
+	 */
+	public int[] search(String query) {
+		if (getInput() == capturedEvents) {
+			return capturedEvents.search(query);
+		}
+		List<?> events = (List<?>) getInput();
+		List<String> queryTokens = CapturedEventIndex.tokenize(query);
+		int[] indexes = new int[events.size()];
+		int count = 0;
+		for (int i = 0; i < events.size(); i++) {
+			if (CapturedEventIndex.matches((CapturedEvent) events.get(i), queryTokens)) {
+				indexes[count++] = i;
+			}
+		}
+		return Arrays.copyOf(indexes, count);
+	}
+
+	/**
+	 * Selects and scrolls to the event, its item is created if needed
+	 */
+	public void revealEvent(int index) {
+		Tree tree = getTree();
+		if (index < 0 || index >= tree.getItemCount()) {
+			return;
+		}
+		TreeItem item = tree.getItem(index);
+		tree.setSelection(item);
+		tree.showItem(item);
+		updateSelectedTreeItem(item, 0);
+	}
+
+	private void clearSelectedTreeItems() {
+		selectedTreeItem.clear();
+		selectedClassNameTreeItem.clear();
 	}
 
 	private static class TreeItemForeground {
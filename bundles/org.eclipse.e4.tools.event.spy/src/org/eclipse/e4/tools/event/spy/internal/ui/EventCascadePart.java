@@ -0,0 +1,254 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.tools.event.spy.internal.ui;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+
+import org.eclipse.e4.core.services.events.IEventBroker;
+import org.eclipse.e4.tools.event.spy.internal.core.CascadeNode;
+import org.eclipse.e4.tools.event.spy.internal.core.CausalityTracker;
+import org.eclipse.e4.tools.event.spy.internal.core.HandlerProfiler;
+import org.eclipse.e4.ui.model.application.MApplication;
+import org.eclipse.jface.viewers.ITableLabelProvider;
+import org.eclipse.jface.viewers.ITreeContentProvider;
+import org.eclipse.jface.viewers.LabelProvider;
+import org.eclipse.jface.viewers.TreeViewer;
+import org.eclipse.jface.viewers.Viewer;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.SelectionAdapter;
+import org.eclipse.swt.events.SelectionEvent;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.layout.GridLayout;
+import org.eclipse.swt.layout.RowData;
+import org.eclipse.swt.layout.RowLayout;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Label;
+import org.eclipse.swt.widgets.Link;
+import org.eclipse.swt.widgets.Text;
+import org.eclipse.swt.widgets.TreeColumn;
+
+/**
+ * Shows the cascades of events sent by the handlers of other events, with the
+ * time spent dispatching every event of a cascade
+ */
+public class EventCascadePart {
+	private final static int REFRESH_INTERVAL = 1000;
+
+	private final static double NANOS_PER_MILLI = 1000000.0;
+
+	private final static String[] COLUMN_TITLES = new String[] { "Topic", "Nested events", "Depth",
+			"Dispatch (ms)", "Self (ms)", "Id" };
+
+	private final static int[] COLUMN_WIDTHS = new int[] { 450, 100, 60, 100, 100, 80 };
+
+	private final CausalityTracker tracker = new CausalityTracker();
+
+	@Inject
+	private HandlerProfiler profiler;
+
+	private TreeViewer cascadesViewer;
+
+	private Text topicText;
+
+	private Label statusLabel;
+
+	private ToggleLink traceLink;
+
+	private boolean tracing;
+
+	@Inject
+	private IEventBroker eventBroker;
+
+	@Inject
+	private MApplication application;
+
+	@PostConstruct
+	protected void createPartControl(Composite parent) {
+		parent.setLayout(new GridLayout());
+
+		Composite actionBar = new Composite(parent, SWT.NONE);
+		actionBar.setLayoutData(new GridData(SWT.FILL, SWT.TOP, true, false));
+		RowLayout rowLayout = new RowLayout(SWT.HORIZONTAL);
+		rowLayout.spacing = 20;
+		rowLayout.center = true;
+		actionBar.setLayout(rowLayout);
+
+		traceLink = new ToggleLink(actionBar);
+		traceLink.setText(new String[] { "Start tracing cascades", "Stop tracing cascades" });
+		traceLink.setClickListener(new ToggleLink.ClickListener() {
+			@Override
+			public void clicked(boolean toggled) {
+				if (toggled) {
+					startTracing();
+				} else {
+					stopTracing();
+				}
+			}
+		});
+
+		Link resetLink = new Link(actionBar, SWT.NONE);
+		resetLink.setText("<a>Reset</a>");
+		resetLink.addSelectionListener(new SelectionAdapter() {
+			@Override
+			public void widgetSelected(SelectionEvent e) {
+				tracker.clear();
+				cascadesViewer.refresh();
+			}
+		});
+
+		Label label = new Label(actionBar, SWT.NONE);
+		label.setText("Topic:");
+		topicText = new Text(actionBar, SWT.BORDER);
+		topicText.setText(CapturedEventFilters.BASE_EVENT_TOPIC);
+		topicText.setLayoutData(new RowData(250, SWT.DEFAULT));
+
+		statusLabel = new Label(actionBar, SWT.NONE);
+		statusLabel.setLayoutData(new RowData(400, SWT.DEFAULT));
+
+		cascadesViewer = new TreeViewer(parent, SWT.BORDER | SWT.H_SCROLL | SWT.V_SCROLL | SWT.FULL_SELECTION);
+		cascadesViewer.getTree().setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, true));
+		cascadesViewer.getTree().setHeaderVisible(true);
+		cascadesViewer.getTree().setLinesVisible(true);
+		for (int i = 0; i < COLUMN_TITLES.length; i++) {
+			TreeColumn column = new TreeColumn(cascadesViewer.getTree(), i == 0 ? SWT.LEFT : SWT.RIGHT);
+			column.setText(COLUMN_TITLES[i]);
+			column.setWidth(COLUMN_WIDTHS[i]);
+		}
+		cascadesViewer.setContentProvider(new CascadeContentProvider());
+		cascadesViewer.setLabelProvider(new CascadeLabelProvider());
+		cascadesViewer.setInput(tracker);
+	}
+
+	@PreDestroy
+	private void dispose() {
+		stopTracing();
+	}
+
+	private void startTracing() {
+		tracker.clear();
+		profiler.setCausalityTracker(tracker);
+		profiler.start();
+		tracing = true;
+		tracker.setTracing(true);
+		eventBroker.subscribe(topicText.getText().trim(), tracker.getEventHandler());
+		topicText.setEnabled(false);
+		if (profile()) {
+			scheduleRefresh();
+		}
+	}
+
+	private void stopTracing() {
+		if (tracing) {
+			tracker.setTracing(false);
+			eventBroker.unsubscribe(tracker.getEventHandler());
+			profiler.setCausalityTracker(null);
+			profiler.stop();
+			tracing = false;
+		}
+		if (!topicText.isDisposed()) {
+			topicText.setEnabled(true);
+			traceLink.setToggled(false);
+		}
+	}
+
+	/**
+	 * Wraps the handlers subscribed since the last call, only the events sent
+	 * by the wrapped handlers are nested
+	 */
+	private boolean profile() {
+		try {
+			int count = profiler.profile(application.getContext());
+			statusLabel.setText(String.format("Traced handlers: %d, cascades: %d", count, tracker.getCascades()
+					.size()));
+			return true;
+		} catch (IllegalStateException exc) {
+			stopTracing();
+			statusLabel.setText(String.format("Tracing failed: %s", exc.getMessage()));
+			return false;
+		}
+	}
+
+	private void scheduleRefresh() {
+		cascadesViewer.getTree().getDisplay().timerExec(REFRESH_INTERVAL, new Runnable() {
+			@Override
+			public void run() {
+				if (!tracing || cascadesViewer.getTree().isDisposed()) {
+					return;
+				}
+				if (profile()) {
+					cascadesViewer.refresh();
+					scheduleRefresh();
+				}
+			}
+		});
+	}
+
+	private static class CascadeContentProvider implements ITreeContentProvider {
+		@Override
+		public Object[] getElements(Object inputElement) {
+			return ((CausalityTracker) inputElement).getCascades().toArray();
+		}
+
+		@Override
+		public Object[] getChildren(Object parentElement) {
+			return ((CascadeNode) parentElement).getChildren().toArray();
+		}
+
+		@Override
+		public Object getParent(Object element) {
+			return element instanceof CascadeNode ? ((CascadeNode) element).getParent() : null;
+		}
+
+		@Override
+		public boolean hasChildren(Object element) {
+			return ((CascadeNode) element).hasChildren();
+		}
+
+		@Override
+		public void inputChanged(Viewer viewer, Object oldInput, Object newInput) {
+		}
+
+		@Override
+		public void dispose() {
+		}
+	}
+
+	private static class CascadeLabelProvider extends LabelProvider implements ITableLabelProvider {
+		@Override
+		public Image getColumnImage(Object element, int columnIndex) {
+			return null;
+		}
+
+		@Override
+		public String getColumnText(Object element, int columnIndex) {
+			CascadeNode node = (CascadeNode) element;
+			switch (columnIndex) {
+			case 0:
+				return node.getTopic();
+			case 1:
+				return String.valueOf(node.getDescendantCount());
+			case 2:
+				return String.valueOf(node.getDepth());
+			case 3:
+				return String.format("%.3f", node.getDispatchNanos() / NANOS_PER_MILLI);
+			case 4:
+				return String.format("%.3f", node.getSelfNanos() / NANOS_PER_MILLI);
+			case 5:
+				return String.valueOf(node.getId());
+			default:
+				return "";
+			}
+		}
+	}
+}
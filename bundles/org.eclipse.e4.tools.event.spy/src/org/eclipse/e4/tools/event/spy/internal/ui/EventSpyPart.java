@@ -14,7 +14,14 @@
  *******************************************************************************/
 package org.eclipse.e4.tools.event.spy.internal.ui;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
@@ -23,34 +30,94 @@ import javax.inject.Inject;
 import org.eclipse.e4.core.contexts.IEclipseContext;
 import org.eclipse.e4.core.di.annotations.Optional;
 import org.eclipse.e4.core.services.events.IEventBroker;
-import org.eclipse.e4.tools.event.spy.internal.core.EventMonitor;
+import org.eclipse.e4.tools.event.spy.internal.core.CaptureLogReader;
+import org.eclipse.e4.tools.event.spy.internal.core.CaptureLogWriter;
+import org.eclipse.e4.tools.event.spy.internal.core.CaptureSession;
+import org.eclipse.e4.tools.event.spy.internal.core.PublisherResolver;
 import org.eclipse.e4.tools.event.spy.internal.model.CapturedEvent;
 import org.eclipse.e4.tools.event.spy.internal.model.CapturedEventFilter;
+import org.eclipse.e4.tools.event.spy.internal.model.EvictionPolicy;
+import org.eclipse.e4.tools.event.spy.internal.model.RetentionPolicy;
 import org.eclipse.e4.tools.event.spy.internal.util.JDTUtils;
 import org.eclipse.e4.tools.event.spy.internal.util.LoggerWrapper;
 import org.eclipse.e4.ui.model.application.MApplication;
 import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.SelectionAdapter;
+import org.eclipse.swt.events.SelectionEvent;
 import org.eclipse.swt.layout.GridData;
 import org.eclipse.swt.layout.GridLayout;
 import org.eclipse.swt.layout.RowData;
 import org.eclipse.swt.layout.RowLayout;
+import org.eclipse.swt.widgets.Combo;
 import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.FileDialog;
+import org.eclipse.swt.widgets.Label;
+import org.eclipse.swt.widgets.Link;
+import org.eclipse.swt.widgets.Text;
 
-public class EventSpyPart implements EventMonitor.NewEventListener {
+public class EventSpyPart implements CaptureSession.Listener {
 	private final static String DIALOG_TITLE = "Event spy dialog";
 
 	private final static String[] SHOW_FILTER_LINK_TEXT = new String[] { "Show filters", "Hide filters" };
 
+	private final static int STATISTICS_REFRESH_INTERVAL = 500;
+
+	private final static String[] PUBLISHER_SAMPLING_TEXT = new String[] { "every event", "every 10th event",
+			"every 100th event", "never" };
+
+	private final static int[] PUBLISHER_SAMPLING_INTERVAL = new int[] { 1, 10, 100, PublisherResolver.SAMPLING_OFF };
+
+	private final static String[] CAPTURE_LOG_EXTENSIONS = new String[] { "*.evlog", "*.ndjson" };
+
+	private final static String[] CAPTURE_LOG_FILTER_NAMES = new String[] { "Event capture log (*.evlog)",
+			"Newline delimited JSON, export only (*.ndjson)" };
+
+	private final static String[] RETENTION_TEXT = new String[] { "last 100000 events", "last 10000 events",
+			"first 1000 and last 10000 events", "last 64 MB of events", "last 5 minutes of events", "all events" };
+
 	private CapturedEventTree capturedEventTree;
 
 	private CapturedEventFilters capturedEventFilters;
 
 	private Composite outer;
 
-	private EventMonitor eventMonitor;
+	private volatile CaptureSession captureSession;
+
+	private ExecutorService captureLifecycleExecutor;
 
 	private ToggleLink showFiltersLink;
 
+	private ToggleLink captureLink;
+
+	private ToggleLink recordLink;
+
+	private volatile CaptureLogWriter captureLogWriter;
+
+	private CaptureLogReader captureLogReader;
+
+	private Label statisticsLabel;
+
+	private Label pendingEventsLabel;
+
+	private Text searchText;
+
+	private Label searchResultLabel;
+
+	private String lastQuery;
+
+	private int lastFoundIndex = -1;
+
+	private CapturedEventDelivery capturedEventDelivery;
+
+	private Display display;
+
+	private int publisherSamplingInterval = PUBLISHER_SAMPLING_INTERVAL[0];
+
+	private int retentionIndex;
+
+	private boolean capturing;
+
 	@Inject
 	private LoggerWrapper logger;
 
@@ -83,6 +150,15 @@ public class EventSpyPart implements EventMonitor.NewEventListener {
 		// (set in saveDialogMemento).
 
 		outer = parent;
+		display = parent.getDisplay();
+		captureLifecycleExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "Event spy capture lifecycle");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
 
 		outer.setLayout(new GridLayout());
 		outer.setLayoutData(new GridData(GridData.FILL_BOTH));
@@ -94,6 +170,14 @@ public class EventSpyPart implements EventMonitor.NewEventListener {
 
 	@PreDestroy
 	private void saveDialogMemento() {
+		stopCaptureEvents();
+		// the events still delivered by the stopped session are dropped
+		captureSession = null;
+		capturedEventDelivery.clear();
+		captureLifecycleExecutor.shutdown();
+		stopRecording();
+		closeCaptureLog();
+
 		SpyPartMemento memento = null;
 		String baseTopic = capturedEventFilters.getBaseTopic();
 		Collection<CapturedEventFilter> filters = capturedEventFilters.getFilters();
@@ -126,9 +210,9 @@ public class EventSpyPart implements EventMonitor.NewEventListener {
 		rowLayout.spacing = 20;
 		actionBar.setLayout(rowLayout);
 
-		ToggleLink link = new ToggleLink(actionBar);
-		link.setText(new String[] { "Start capturing events", "Stop capturing events" });
-		link.setClickListener(new ToggleLink.ClickListener() {
+		captureLink = new ToggleLink(actionBar);
+		captureLink.setText(new String[] { "Start capturing events", "Stop capturing events" });
+		captureLink.setClickListener(new ToggleLink.ClickListener() {
 			@Override
 			public void clicked(boolean toggled) {
 				if (toggled) {
@@ -148,6 +232,93 @@ public class EventSpyPart implements EventMonitor.NewEventListener {
 				showFilters(toggled);
 			}
 		});
+
+		recordLink = new ToggleLink(actionBar);
+		recordLink.setText(new String[] { "Record to file...", "Stop recording" });
+		recordLink.getControl().setToolTipText(
+				"Event capture logs can be opened again, NDJSON files are exported for external tools");
+		recordLink.setClickListener(new ToggleLink.ClickListener() {
+			@Override
+			public void clicked(boolean toggled) {
+				if (toggled) {
+					startRecording();
+				} else {
+					stopRecording();
+				}
+			}
+		});
+
+		Link openLink = new Link(actionBar, SWT.NONE);
+		openLink.setText("<a>Open capture log...</a>");
+		openLink.addSelectionListener(new SelectionAdapter() {
+			@Override
+			public void widgetSelected(SelectionEvent e) {
+				openCaptureLog();
+			}
+		});
+
+		Composite samplingComposite = new Composite(actionBar, SWT.NONE);
+		samplingComposite.setLayout(new RowLayout(SWT.HORIZONTAL));
+
+		Label label = new Label(samplingComposite, SWT.CENTER);
+		label.setText("Resolve publisher of:");
+
+		final Combo samplingCombo = new Combo(samplingComposite, SWT.READ_ONLY);
+		samplingCombo.setItems(PUBLISHER_SAMPLING_TEXT);
+		samplingCombo.select(0);
+		samplingCombo.addSelectionListener(new SelectionAdapter() {
+			@Override
+			public void widgetSelected(SelectionEvent e) {
+				publisherSamplingInterval = PUBLISHER_SAMPLING_INTERVAL[samplingCombo.getSelectionIndex()];
+				CaptureSession session = captureSession;
+				if (session != null) {
+					session.setPublisherSamplingInterval(publisherSamplingInterval);
+				}
+			}
+		});
+
+		Composite retentionComposite = new Composite(actionBar, SWT.NONE);
+		retentionComposite.setLayout(new RowLayout(SWT.HORIZONTAL));
+
+		label = new Label(retentionComposite, SWT.CENTER);
+		label.setText("Keep:");
+
+		final Combo retentionCombo = new Combo(retentionComposite, SWT.READ_ONLY);
+		retentionCombo.setItems(RETENTION_TEXT);
+		retentionCombo.select(retentionIndex);
+		retentionCombo.setToolTipText("Applied when the capturing is started");
+		retentionCombo.addSelectionListener(new SelectionAdapter() {
+			@Override
+			public void widgetSelected(SelectionEvent e) {
+				retentionIndex = retentionCombo.getSelectionIndex();
+			}
+		});
+
+		Composite searchComposite = new Composite(actionBar, SWT.NONE);
+		searchComposite.setLayout(new RowLayout(SWT.HORIZONTAL));
+
+		label = new Label(searchComposite, SWT.CENTER);
+		label.setText("Find:");
+
+		searchText = new Text(searchComposite, SWT.SEARCH);
+		searchText.setLayoutData(new RowData(200, SWT.DEFAULT));
+		searchText.setMessage("topic, class or value words");
+		searchText.setToolTipText("Press Enter to go to the next matching event");
+		searchText.addSelectionListener(new SelectionAdapter() {
+			@Override
+			public void widgetDefaultSelected(SelectionEvent e) {
+				findNextEvent();
+			}
+		});
+
+		searchResultLabel = new Label(searchComposite, SWT.NONE);
+		searchResultLabel.setLayoutData(new RowData(120, SWT.DEFAULT));
+
+		statisticsLabel = new Label(actionBar, SWT.NONE);
+		statisticsLabel.setLayoutData(new RowData(550, SWT.DEFAULT));
+
+		pendingEventsLabel = new Label(actionBar, SWT.NONE);
+		pendingEventsLabel.setLayoutData(new RowData(150, SWT.DEFAULT));
 	}
 
 	private void createFilters(Composite parent, SpyPartMemento memento) {
@@ -174,28 +345,250 @@ public class EventSpyPart implements EventMonitor.NewEventListener {
 				openResource(text);
 			}
 		});
+		capturedEventDelivery = new CapturedEventDelivery(display, capturedEventTree, pendingEventsLabel);
 	}
 
+	/**
+	 * Starts a new capture session, the previous one is stopped. The work
+	 * depending on the number of captured events is done off the UI thread.
+	 */
 	public void captureEvents() {
-		capturedEventTree.removeAll();
-		if (eventMonitor == null) {
-			eventMonitor = new EventMonitor(eventBroker);
-			eventMonitor.setNewEventListener(this);
+		CaptureSession previousSession = captureSession;
+		if (previousSession != null) {
+			previousSession.stop();
 		}
-		eventMonitor.start(capturedEventFilters.getBaseTopic(), capturedEventFilters.getFilters());
+		closeCaptureLog();
+
+		CaptureSession session = new CaptureSession(eventBroker, captureLifecycleExecutor, this);
+		session.setPublisherSamplingInterval(publisherSamplingInterval);
+		capturedEventDelivery.startGeneration(session.getGeneration());
+		capturedEventTree.removeAll();
+		capturedEventTree.setRetentionPolicy(createRetentionPolicy(retentionIndex));
+		captureSession = session;
+		capturing = true;
+		session.start(capturedEventFilters.getBaseTopic(), capturedEventFilters.getFilters());
+		scheduleStatisticsRefresh();
 		// getShell().setText(DIALOG_TITLE + " - capturing...");
 	}
 
+	/**
+	 * Stops the capture session, the events published before are still
+	 * delivered while the session is draining
+	 */
 	public void stopCaptureEvents() {
-		if (eventMonitor != null) {
-			eventMonitor.stop();
+		CaptureSession session = captureSession;
+		if (session != null) {
+			session.stop();
+		}
+		capturing = false;
+		if (session != null && !statisticsLabel.isDisposed()) {
+			statisticsLabel.setText(getStatisticsText());
 		}
 		// getShell().setText(DIALOG_TITLE);
 	}
 
 	@Override
-	public void newEvent(CapturedEvent event) {
-		capturedEventTree.addEvent(event);
+	public void newEvent(CaptureSession session, CapturedEvent event) {
+		// events are delivered by the capture consumer thread
+		if (session != captureSession || !capturedEventDelivery.add(session.getGeneration(), event)) {
+			return;
+		}
+		CaptureLogWriter writer = captureLogWriter;
+		if (writer != null) {
+			writer.append(event);
+		}
+	}
+
+	@Override
+	public void stateChanged(final CaptureSession session, final CaptureSession.State state) {
+		if (display.isDisposed()) {
+			return;
+		}
+		display.asyncExec(new Runnable() {
+			@Override
+			public void run() {
+				if (session != captureSession || statisticsLabel.isDisposed()) {
+					return;
+				}
+				if (state == CaptureSession.State.Stopped && session.getError() != null) {
+					capturing = false;
+					captureLink.setToggled(false);
+					logger.error(session.getError(), "Cannot capture the events");
+				}
+				statisticsLabel.setText(getStatisticsText());
+			}
+		});
+	}
+
+	private void startRecording() {
+		FileDialog dialog = new FileDialog(outer.getShell(), SWT.SAVE);
+		dialog.setText("Record captured events");
+		dialog.setFilterExtensions(CAPTURE_LOG_EXTENSIONS);
+		dialog.setFilterNames(CAPTURE_LOG_FILTER_NAMES);
+		dialog.setOverwrite(true);
+		String fileName = dialog.open();
+		if (fileName == null) {
+			recordLink.setToggled(false);
+			return;
+		}
+
+		File file = new File(fileName);
+		CaptureLogWriter.Format format = CaptureLogWriter.Format.forFile(file);
+		if (file.getName().indexOf('.') < 0) {
+			file = new File(fileName + "." + format.getExtension());
+		}
+		CaptureLogWriter writer = new CaptureLogWriter(file, format);
+		try {
+			writer.open();
+			captureLogWriter = writer;
+		} catch (IOException exc) {
+			recordLink.setToggled(false);
+			logger.error(exc, String.format("Cannot record the captured events to %s", file));
+		}
+	}
+
+	private void stopRecording() {
+		CaptureLogWriter writer = captureLogWriter;
+		if (writer == null) {
+			return;
+		}
+		captureLogWriter = null;
+		try {
+			writer.close();
+			if (writer.getDroppedCount() > 0) {
+				logger.warn(String.format("%d captured events have not been recorded to %s",
+						writer.getDroppedCount(), writer.getFile()));
+			}
+		} catch (IOException exc) {
+			logger.error(exc, String.format("Cannot record the captured events to %s", writer.getFile()));
+		}
+	}
+
+	private void openCaptureLog() {
+		FileDialog dialog = new FileDialog(outer.getShell(), SWT.OPEN);
+		dialog.setText("Open capture log");
+		dialog.setFilterExtensions(new String[] { CAPTURE_LOG_EXTENSIONS[0] });
+		dialog.setFilterNames(new String[] { CAPTURE_LOG_FILTER_NAMES[0] });
+		String fileName = dialog.open();
+		if (fileName == null) {
+			return;
+		}
+
+		if (capturing) {
+			stopCaptureEvents();
+			captureLink.setToggled(false);
+		}
+		closeCaptureLog();
+		capturedEventDelivery.clear();
+
+		CaptureLogReader reader = new CaptureLogReader(new File(fileName));
+		try {
+			reader.open();
+		} catch (IOException exc) {
+			logger.error(exc, String.format("Cannot open the capture log %s", fileName));
+			return;
+		}
+		if (reader.isTruncated()) {
+			logger.warn(String.format("The last event of the capture log %s is incomplete", fileName));
+		}
+		captureLogReader = reader;
+		capturedEventTree.showEvents(reader.getEvents());
+		statisticsLabel.setText(String.format("Events read from %s: %d", reader.getFile().getName(), reader
+				.getEvents().size()));
+	}
+
+	private void closeCaptureLog() {
+		if (captureLogReader != null) {
+			capturedEventTree.removeAll();
+			captureLogReader.close();
+			captureLogReader = null;
+		}
+	}
+
+	/**
+	 * Goes to the first matching event after the one found previously, the
+	 * matches are searched again each time since the events keep coming
+	 */
+	private void findNextEvent() {
+		String query = searchText.getText().trim();
+		if (!query.equals(lastQuery)) {
+			lastQuery = query;
+			lastFoundIndex = -1;
+		}
+		int[] indexes = capturedEventTree.search(query);
+		if (indexes.length == 0) {
+			searchResultLabel.setText("No matching event");
+			lastFoundIndex = -1;
+			return;
+		}
+
+		int position = Arrays.binarySearch(indexes, lastFoundIndex + 1);
+		if (position < 0) {
+			position = -position - 1;
+		}
+		if (position == indexes.length) {
+			// wrap to the first match
+			position = 0;
+		}
+		lastFoundIndex = indexes[position];
+		capturedEventTree.revealEvent(lastFoundIndex);
+		searchResultLabel.setText(String.format("%d of %d", position + 1, indexes.length));
+	}
+
+	private void scheduleStatisticsRefresh() {
+		display.timerExec(STATISTICS_REFRESH_INTERVAL, new Runnable() {
+			@Override
+			public void run() {
+				if (statisticsLabel.isDisposed() || captureSession == null) {
+					return;
+				}
+				statisticsLabel.setText(getStatisticsText());
+				if (capturing) {
+					scheduleStatisticsRefresh();
+				}
+			}
+		});
+	}
+
+	private String getStatisticsText() {
+		CaptureSession session = captureSession;
+		String text = String.format("%s, evicted: %d", session.getStatistics(),
+				capturedEventTree.getEvictedCount());
+		CaptureSession.State state = session.getState();
+		if (state == CaptureSession.State.Starting || state == CaptureSession.State.Draining) {
+			text = String.format("%s (%s)", text, state.toString().toLowerCase());
+		}
+		CaptureLogWriter writer = captureLogWriter;
+		if (writer != null) {
+			text += String.format(", recorded: %d", writer.getWrittenCount());
+		}
+		return text;
+	}
+
+	private RetentionPolicy createRetentionPolicy(int index) {
+		RetentionPolicy retentionPolicy = new RetentionPolicy();
+		switch (index) {
+		case 0:
+			retentionPolicy.setMaxCount(100000);
+			break;
+		case 1:
+			retentionPolicy.setMaxCount(10000);
+			break;
+		case 2:
+			retentionPolicy.setEvictionPolicy(EvictionPolicy.KeepFirstAndLast);
+			retentionPolicy.setKeepFirstCount(1000);
+			retentionPolicy.setMaxCount(11000);
+			break;
+		case 3:
+			retentionPolicy.setMaxBytes(64L * 1024 * 1024);
+			break;
+		case 4:
+			retentionPolicy.setMaxAge(TimeUnit.MINUTES.toMillis(5));
+			break;
+		default:
+			break;
+		}
+		return retentionPolicy;
 	}
 
 	@SuppressWarnings("restriction")
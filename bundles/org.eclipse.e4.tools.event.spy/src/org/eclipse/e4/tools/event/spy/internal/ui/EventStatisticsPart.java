@@ -0,0 +1,211 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.tools.event.spy.internal.ui;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+
+import org.eclipse.e4.core.services.events.IEventBroker;
+import org.eclipse.e4.tools.event.spy.internal.core.EventRateStatistics;
+import org.eclipse.e4.tools.event.spy.internal.core.RateSnapshot;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.custom.SashForm;
+import org.eclipse.swt.events.SelectionAdapter;
+import org.eclipse.swt.events.SelectionEvent;
+import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.layout.GridLayout;
+import org.eclipse.swt.layout.RowData;
+import org.eclipse.swt.layout.RowLayout;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Label;
+import org.eclipse.swt.widgets.Link;
+import org.eclipse.swt.widgets.Text;
+
+/**
+ * Ranks the topics and the publishers by their event rates, the events
+ * themselves are not retained.
+ */
+public class EventStatisticsPart {
+	private final static int REFRESH_INTERVAL = 1000;
+
+	private final static double NANOS_PER_MILLI = 1000000.0;
+
+	private final EventRateStatistics statistics = new EventRateStatistics();
+
+	private StatisticsTableViewer<RateSnapshot> topicsTable;
+
+	private StatisticsTableViewer<RateSnapshot> publishersTable;
+
+	private Text topicText;
+
+	private boolean collecting;
+
+	@Inject
+	private IEventBroker eventBroker;
+
+	@PostConstruct
+	protected void createPartControl(Composite parent) {
+		parent.setLayout(new GridLayout());
+
+		Composite actionBar = new Composite(parent, SWT.NONE);
+		actionBar.setLayoutData(new GridData(SWT.FILL, SWT.TOP, true, false));
+		RowLayout rowLayout = new RowLayout(SWT.HORIZONTAL);
+		rowLayout.spacing = 20;
+		rowLayout.center = true;
+		actionBar.setLayout(rowLayout);
+
+		ToggleLink collectLink = new ToggleLink(actionBar);
+		collectLink.setText(new String[] { "Start collecting statistics", "Stop collecting statistics" });
+		collectLink.setClickListener(new ToggleLink.ClickListener() {
+			@Override
+			public void clicked(boolean toggled) {
+				if (toggled) {
+					startCollecting();
+				} else {
+					stopCollecting();
+				}
+			}
+		});
+
+		Link resetLink = new Link(actionBar, SWT.NONE);
+		resetLink.setText("<a>Reset</a>");
+		resetLink.addSelectionListener(new SelectionAdapter() {
+			@Override
+			public void widgetSelected(SelectionEvent e) {
+				statistics.reset();
+				refresh();
+			}
+		});
+
+		Label label = new Label(actionBar, SWT.NONE);
+		label.setText("Topic:");
+		topicText = new Text(actionBar, SWT.BORDER);
+		topicText.setText(CapturedEventFilters.BASE_EVENT_TOPIC);
+		topicText.setLayoutData(new RowData(250, SWT.DEFAULT));
+
+		SashForm sashForm = new SashForm(parent, SWT.VERTICAL);
+		sashForm.setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, true));
+		topicsTable = createTable(sashForm, "Topic");
+		publishersTable = createTable(sashForm, "Publisher (sampled events)");
+		sashForm.setWeights(new int[] { 2, 1 });
+	}
+
+	@PreDestroy
+	private void dispose() {
+		stopCollecting();
+	}
+
+	private StatisticsTableViewer<RateSnapshot> createTable(Composite parent, String nameTitle) {
+		StatisticsTableViewer<RateSnapshot> table = new StatisticsTableViewer<RateSnapshot>(parent);
+		table.addColumn(new StatisticsTableViewer.Column<RateSnapshot>(nameTitle, 400) {
+			@Override
+			public String getText(RateSnapshot row) {
+				return row.getName();
+			}
+
+			@Override
+			public Comparable<?> getSortKey(RateSnapshot row) {
+				return row.getName();
+			}
+		});
+		table.addColumn(new StatisticsTableViewer.Column<RateSnapshot>("Events", 90) {
+			@Override
+			public String getText(RateSnapshot row) {
+				return String.valueOf(row.getCount());
+			}
+
+			@Override
+			public Comparable<?> getSortKey(RateSnapshot row) {
+				return Long.valueOf(row.getCount());
+			}
+		});
+		for (int i = 0; i < RateSnapshot.RATE_SECONDS.length; i++) {
+			addRateColumn(table, i);
+		}
+		table.addColumn(new StatisticsTableViewer.Column<RateSnapshot>("Mean interval (ms)", 120) {
+			@Override
+			public String getText(RateSnapshot row) {
+				return String.format("%.3f", row.getMeanInterArrivalNanos() / NANOS_PER_MILLI);
+			}
+
+			@Override
+			public Comparable<?> getSortKey(RateSnapshot row) {
+				return Long.valueOf(row.getMeanInterArrivalNanos());
+			}
+		});
+		table.addColumn(new StatisticsTableViewer.Column<RateSnapshot>("Median interval (ms)", 130) {
+			@Override
+			public String getText(RateSnapshot row) {
+				return String.format("%.3f", row.getMedianInterArrivalNanos() / NANOS_PER_MILLI);
+			}
+
+			@Override
+			public Comparable<?> getSortKey(RateSnapshot row) {
+				return Long.valueOf(row.getMedianInterArrivalNanos());
+			}
+		});
+		// the hottest ones over the last 10 seconds first
+		table.sortBy(3, SWT.DOWN);
+		return table;
+	}
+
+	private void addRateColumn(StatisticsTableViewer<RateSnapshot> table, final int rateIndex) {
+		String title = String.format("Events/s (%d s)", RateSnapshot.RATE_SECONDS[rateIndex]);
+		table.addColumn(new StatisticsTableViewer.Column<RateSnapshot>(title, 110) {
+			@Override
+			public String getText(RateSnapshot row) {
+				return String.format("%.1f", row.getRate(rateIndex));
+			}
+
+			@Override
+			public Comparable<?> getSortKey(RateSnapshot row) {
+				return Double.valueOf(row.getRate(rateIndex));
+			}
+		});
+	}
+
+	private void startCollecting() {
+		statistics.reset();
+		eventBroker.subscribe(topicText.getText().trim(), statistics.getEventHandler());
+		topicText.setEnabled(false);
+		collecting = true;
+		scheduleRefresh();
+	}
+
+	private void stopCollecting() {
+		if (collecting) {
+			eventBroker.unsubscribe(statistics.getEventHandler());
+			collecting = false;
+		}
+		if (!topicText.isDisposed()) {
+			topicText.setEnabled(true);
+		}
+	}
+
+	private void scheduleRefresh() {
+		topicsTable.getTable().getDisplay().timerExec(REFRESH_INTERVAL, new Runnable() {
+			@Override
+			public void run() {
+				if (!collecting || topicsTable.getTable().isDisposed()) {
+					return;
+				}
+				refresh();
+				scheduleRefresh();
+			}
+		});
+	}
+
+	private void refresh() {
+		topicsTable.setRows(statistics.getTopics());
+		publishersTable.setRows(statistics.getPublishers());
+	}
+}
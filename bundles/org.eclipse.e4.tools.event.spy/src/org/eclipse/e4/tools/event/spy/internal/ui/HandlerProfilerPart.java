@@ -0,0 +1,245 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.tools.event.spy.internal.ui;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+
+import org.eclipse.e4.tools.event.spy.internal.core.HandlerLatencySnapshot;
+import org.eclipse.e4.tools.event.spy.internal.core.HandlerProfiler;
+import org.eclipse.e4.ui.model.application.MApplication;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.SelectionAdapter;
+import org.eclipse.swt.events.SelectionEvent;
+import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.layout.GridLayout;
+import org.eclipse.swt.layout.RowData;
+import org.eclipse.swt.layout.RowLayout;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Label;
+import org.eclipse.swt.widgets.Link;
+
+/**
+ * Ranks the subscribers of the event brokers by the time they spend handling
+ * the events
+ */
+public class HandlerProfilerPart {
+	private final static int REFRESH_INTERVAL = 1000;
+
+	private final static double NANOS_PER_MILLI = 1000000.0;
+
+	@Inject
+	private HandlerProfiler profiler;
+
+	private StatisticsTableViewer<HandlerLatencySnapshot> handlersTable;
+
+	private ToggleLink profileLink;
+
+	private Label statusLabel;
+
+	private boolean profiling;
+
+	@Inject
+	private MApplication application;
+
+	@PostConstruct
+	protected void createPartControl(Composite parent) {
+		parent.setLayout(new GridLayout());
+
+		Composite actionBar = new Composite(parent, SWT.NONE);
+		actionBar.setLayoutData(new GridData(SWT.FILL, SWT.TOP, true, false));
+		RowLayout rowLayout = new RowLayout(SWT.HORIZONTAL);
+		rowLayout.spacing = 20;
+		rowLayout.center = true;
+		actionBar.setLayout(rowLayout);
+
+		profileLink = new ToggleLink(actionBar);
+		profileLink.setText(new String[] { "Start profiling", "Stop profiling" });
+		profileLink.setClickListener(new ToggleLink.ClickListener() {
+			@Override
+			public void clicked(boolean toggled) {
+				if (toggled) {
+					startProfiling();
+				} else {
+					stopProfiling();
+				}
+			}
+		});
+
+		Link resetLink = new Link(actionBar, SWT.NONE);
+		resetLink.setText("<a>Reset</a>");
+		resetLink.addSelectionListener(new SelectionAdapter() {
+			@Override
+			public void widgetSelected(SelectionEvent e) {
+				profiler.reset();
+				refresh();
+			}
+		});
+
+		statusLabel = new Label(actionBar, SWT.NONE);
+		statusLabel.setLayoutData(new RowData(400, SWT.DEFAULT));
+
+		handlersTable = createTable(parent);
+		handlersTable.getTable().setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, true));
+	}
+
+	@PreDestroy
+	private void dispose() {
+		stopProfiling();
+	}
+
+	private StatisticsTableViewer<HandlerLatencySnapshot> createTable(Composite parent) {
+		StatisticsTableViewer<HandlerLatencySnapshot> table = new StatisticsTableViewer<HandlerLatencySnapshot>(parent);
+		table.addColumn(new StatisticsTableViewer.Column<HandlerLatencySnapshot>("Handler", 350) {
+			@Override
+			public String getText(HandlerLatencySnapshot row) {
+				return row.getHandlerClassName();
+			}
+
+			@Override
+			public Comparable<?> getSortKey(HandlerLatencySnapshot row) {
+				return row.getHandlerClassName();
+			}
+		});
+		table.addColumn(new StatisticsTableViewer.Column<HandlerLatencySnapshot>("Topic", 300) {
+			@Override
+			public String getText(HandlerLatencySnapshot row) {
+				return row.getTopic();
+			}
+
+			@Override
+			public Comparable<?> getSortKey(HandlerLatencySnapshot row) {
+				return row.getTopic();
+			}
+		});
+		table.addColumn(new StatisticsTableViewer.Column<HandlerLatencySnapshot>("Dispatch", 70) {
+			@Override
+			public String getText(HandlerLatencySnapshot row) {
+				return row.getDispatch().toString();
+			}
+
+			@Override
+			public Comparable<?> getSortKey(HandlerLatencySnapshot row) {
+				return row.getDispatch();
+			}
+		});
+		table.addColumn(new StatisticsTableViewer.Column<HandlerLatencySnapshot>("Calls", 80) {
+			@Override
+			public String getText(HandlerLatencySnapshot row) {
+				return String.valueOf(row.getCount());
+			}
+
+			@Override
+			public Comparable<?> getSortKey(HandlerLatencySnapshot row) {
+				return Long.valueOf(row.getCount());
+			}
+		});
+		table.addColumn(new NanosColumn("Total (ms)") {
+			@Override
+			protected long getNanos(HandlerLatencySnapshot row) {
+				return row.getTotalNanos();
+			}
+		});
+		table.addColumn(new NanosColumn("Median (ms)") {
+			@Override
+			protected long getNanos(HandlerLatencySnapshot row) {
+				return row.getMedianNanos();
+			}
+		});
+		table.addColumn(new NanosColumn("99th percentile (ms)") {
+			@Override
+			protected long getNanos(HandlerLatencySnapshot row) {
+				return row.getP99Nanos();
+			}
+		});
+		table.addColumn(new NanosColumn("Max (ms)") {
+			@Override
+			protected long getNanos(HandlerLatencySnapshot row) {
+				return row.getMaxNanos();
+			}
+		});
+		// the handlers taking the most time overall first
+		table.sortBy(4, SWT.DOWN);
+		return table;
+	}
+
+	private void startProfiling() {
+		profiler.reset();
+		profiler.start();
+		profiling = true;
+		if (profile()) {
+			scheduleRefresh();
+		}
+	}
+
+	private void stopProfiling() {
+		if (profiling) {
+			profiler.stop();
+			profiling = false;
+		}
+		if (!statusLabel.isDisposed()) {
+			profileLink.setToggled(false);
+		}
+	}
+
+	/**
+	 * Wraps the handlers subscribed since the last call
+	 */
+	private boolean profile() {
+		try {
+			int count = profiler.profile(application.getContext());
+			statusLabel.setText(String.format("Profiled handlers: %d", count));
+			return true;
+		} catch (IllegalStateException exc) {
+			stopProfiling();
+			statusLabel.setText(String.format("Profiling failed: %s", exc.getMessage()));
+			return false;
+		}
+	}
+
+	private void scheduleRefresh() {
+		handlersTable.getTable().getDisplay().timerExec(REFRESH_INTERVAL, new Runnable() {
+			@Override
+			public void run() {
+				if (!profiling || handlersTable.getTable().isDisposed()) {
+					return;
+				}
+				if (profile()) {
+					refresh();
+					scheduleRefresh();
+				}
+			}
+		});
+	}
+
+	private void refresh() {
+		handlersTable.setRows(profiler.getLatencies());
+	}
+
+	private static abstract class NanosColumn extends StatisticsTableViewer.Column<HandlerLatencySnapshot> {
+		NanosColumn(String title) {
+			super(title, 110);
+		}
+
+		protected abstract long getNanos(HandlerLatencySnapshot row);
+
+		@Override
+		public String getText(HandlerLatencySnapshot row) {
+			return String.format("%.3f", getNanos(row) / NANOS_PER_MILLI);
+		}
+
+		@Override
+		public Comparable<?> getSortKey(HandlerLatencySnapshot row) {
+			return Long.valueOf(getNanos(row));
+		}
+	}
+}
@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.tools.event.spy.internal.ui;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jface.viewers.ArrayContentProvider;
+import org.eclipse.jface.viewers.ColumnLabelProvider;
+import org.eclipse.jface.viewers.TableViewer;
+import org.eclipse.jface.viewers.TableViewerColumn;
+import org.eclipse.jface.viewers.Viewer;
+import org.eclipse.jface.viewers.ViewerComparator;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.SelectionAdapter;
+import org.eclipse.swt.events.SelectionEvent;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Table;
+import org.eclipse.swt.widgets.TableColumn;
+
+/**
+ * Table of statistics sorted by the column selected by the user. The rows are
+ * replaced with {@link #setRows(List)} and kept sorted.
+ */
+public class StatisticsTableViewer<T> extends TableViewer {
+	public static abstract class Column<T> {
+		private final String title;
+
+		private final int width;
+
+		public Column(String title, int width) {
+			this.title = title;
+			this.width = width;
+		}
+
+		public abstract String getText(T row);
+
+		public abstract Comparable<?> getSortKey(T row);
+	}
+
+	private final List<Column<T>> columns = new ArrayList<Column<T>>();
+
+	private int sortColumn;
+
+	private int sortDirection = SWT.DOWN;
+
+	public StatisticsTableViewer(Composite parent) {
+		super(parent, SWT.BORDER | SWT.FULL_SELECTION | SWT.H_SCROLL | SWT.V_SCROLL);
+		Table table = getTable();
+		table.setHeaderVisible(true);
+		table.setLinesVisible(true);
+		setContentProvider(ArrayContentProvider.getInstance());
+		setComparator(new ColumnComparator());
+	}
+
+	public void addColumn(final Column<T> column) {
+		final int index = columns.size();
+		columns.add(column);
+
+		TableViewerColumn viewerColumn = new TableViewerColumn(this, index == 0 ? SWT.LEFT : SWT.RIGHT);
+		viewerColumn.getColumn().setText(column.title);
+		viewerColumn.getColumn().setWidth(column.width);
+		viewerColumn.setLabelProvider(new ColumnLabelProvider() {
+			@SuppressWarnings("unchecked")
+			@Override
+			public String getText(Object element) {
+				return column.getText((T) element);
+			}
+		});
+		viewerColumn.getColumn().addSelectionListener(new SelectionAdapter() {
+			@Override
+			public void widgetSelected(SelectionEvent e) {
+				sortBy(index, sortColumn == index && sortDirection == SWT.DOWN ? SWT.UP : SWT.DOWN);
+			}
+		});
+	}
+
+	public void sortBy(int columnIndex, int direction) {
+		sortColumn = columnIndex;
+		sortDirection = direction;
+		TableColumn tableColumn = getTable().getColumn(columnIndex);
+		getTable().setSortColumn(tableColumn);
+		getTable().setSortDirection(direction);
+		refresh();
+	}
+
+	public void setRows(List<T> rows) {
+		setInput(rows);
+	}
+
+	private class ColumnComparator extends ViewerComparator {
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		@Override
+		public int compare(Viewer viewer, Object e1, Object e2) {
+			if (columns.isEmpty()) {
+				return 0;
+			}
+			Column<T> column = columns.get(sortColumn);
+			Comparable key1 = column.getSortKey((T) e1);
+			Comparable key2 = column.getSortKey((T) e2);
+			int result = key1.compareTo(key2);
+			return sortDirection == SWT.UP ? result : -result;
+		}
+	}
+}
@@ -60,6 +60,10 @@ public class ToggleLink {
 		setText(isToggled() ? text[1] : text[0]);
 	}
 
+	public void setToggled(boolean toggled) {
+		setText(toggled ? text[1] : text[0]);
+	}
+
 	public Control getControl() {
 		return link;
 	}
@@ -24,7 +24,7 @@ public class CapturedEventFilterSerializer {
 	}
 
 	public static CapturedEventFilter deserialize(String filterAsText) {
-		String[] filterParams = filterAsText.split(FILTER_PARAM_SEPARATOR);
+		String[] filterParams = filterAsText.split(FILTER_PARAM_SEPARATOR, 3);
 		if (filterParams.length != 3) {
 			return null;
 		}
@@ -11,35 +11,69 @@
  *******************************************************************************/
 package org.eclipse.e4.tools.event.spy.internal.util;
 
-import java.util.HashSet;
-import java.util.Set;
-
+/**
+ * Breaks the long values into lines after the delimiters. Only the beginning
+ * of the values can be formatted, the rest is then replaced by a truncation
+ * marker, and the values are not copied when no line has to be broken.
+ */
 public class MultilineFormatter {
-	@SuppressWarnings("serial")
-	private static Set<Character> LINE_DELIMITERS = new HashSet<Character>() {
-		{
-			add(',');
-			add('(');
-			add(')');
-			add(';');
-			add('-');
-			add('=');
+	public static final int UNLIMITED = -1;
+
+	private static final String TRUNCATED_SUFFIX = "... (%d more characters)";
+
+	private static final boolean[] LINE_DELIMITERS = new boolean[128];
+
+	static {
+		for (char c : ",();-=".toCharArray()) {
+			LINE_DELIMITERS[c] = true;
 		}
-	};
+	}
 
 	public static String format(String value, int lineLength) {
-		StringBuilder result = new StringBuilder();
+		return format(value, lineLength, UNLIMITED);
+	}
+
+	/**
+	 * @param maxLength
+	 *            the number of characters of the value which are formatted,
+	 *            or {@link #UNLIMITED}
+	 */
+	public static String format(CharSequence value, int lineLength, int maxLength) {
+		int length = value.length();
+		int formattedLength = isTruncated(value, maxLength) ? maxLength : length;
+		StringBuilder result = null;
+		int copied = 0;
 		int counter = 0;
 
-		for (int i = 0; i < value.length(); i++) {
+		for (int i = 0; i < formattedLength; i++) {
 			char c = value.charAt(i);
-			result.append(c);
-
-			if (++counter >= lineLength && LINE_DELIMITERS.contains(c)) {
-				result.append('\n');
+			if (c == '\n') {
 				counter = 0;
+			} else if (++counter >= lineLength && c < LINE_DELIMITERS.length && LINE_DELIMITERS[c]) {
+				if (result == null) {
+					result = new StringBuilder(formattedLength + formattedLength / lineLength + TRUNCATED_SUFFIX.length()
+							+ 8);
+				}
+				result.append(value, copied, i + 1).append('\n');
+				copied = i + 1;
+				counter = 0;
+			}
+		}
+
+		if (result == null) {
+			if (formattedLength == length) {
+				return value.toString();
 			}
+			result = new StringBuilder(formattedLength + TRUNCATED_SUFFIX.length() + 8);
+		}
+		result.append(value, copied, formattedLength);
+		if (formattedLength < length) {
+			result.append(String.format(TRUNCATED_SUFFIX, length - formattedLength));
 		}
 		return result.toString();
 	}
+
+	public static boolean isTruncated(CharSequence value, int maxLength) {
+		return maxLength != UNLIMITED && value.length() > maxLength;
+	}
 }
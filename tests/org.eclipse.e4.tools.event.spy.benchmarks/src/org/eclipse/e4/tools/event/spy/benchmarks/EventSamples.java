@@ -0,0 +1,202 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.tools.event.spy.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import org.eclipse.e4.tools.event.spy.internal.model.CapturedEvent;
+import org.eclipse.e4.tools.event.spy.internal.model.CapturedEventFilter;
+import org.eclipse.e4.tools.event.spy.internal.model.ItemToFilter;
+import org.eclipse.e4.tools.event.spy.internal.model.Operator;
+import org.eclipse.e4.tools.event.spy.internal.model.Parameter;
+import org.eclipse.e4.ui.workbench.UIEvents;
+
+/**
+ * A fixed mix of model events similar to the ones published by the workbench,
+ * and the filters derived from them. The samples are generated with a constant
+ * seed, the runs of the benchmarks are therefore reproducible.
+ */
+public class EventSamples {
+	public static final int SAMPLE_COUNT = 256;
+
+	private static final long SEED = 20130601L;
+
+	private static final String[][] ATTRIBUTES = {
+			{ UIEvents.UIElement.TOPIC, UIEvents.UIElement.TOBERENDERED },
+			{ UIEvents.UIElement.TOPIC, UIEvents.UIElement.VISIBLE },
+			{ UIEvents.UIElement.TOPIC, UIEvents.UIElement.WIDGET },
+			{ UIEvents.ElementContainer.TOPIC, UIEvents.ElementContainer.SELECTEDELEMENT },
+			{ UIEvents.ElementContainer.TOPIC, UIEvents.ElementContainer.CHILDREN },
+			{ UIEvents.UILabel.TOPIC, UIEvents.UILabel.LABEL },
+			{ UIEvents.UILabel.TOPIC, UIEvents.UILabel.ICONURI },
+			{ UIEvents.Dirtyable.TOPIC, UIEvents.Dirtyable.DIRTY },
+			{ UIEvents.ApplicationElement.TOPIC, UIEvents.ApplicationElement.TAGS } };
+
+	private static final String[] ELEMENT_TYPES = { "PartImpl", "PartStackImpl", "WindowImpl",
+			"ToolBarImpl", "MenuItemImpl", "HandledToolItemImpl" };
+
+	private static final String ELEMENT_PACKAGE = "org.eclipse.e4.ui.model.application.ui.";
+
+	private static final String[] PUBLISHERS = { "org.eclipse.e4.ui.internal.workbench.swt.PartRenderingEngine",
+			"org.eclipse.e4.ui.workbench.renderers.swt.StackRenderer",
+			"org.eclipse.e4.ui.internal.workbench.PartServiceImpl",
+			"org.eclipse.ui.internal.WorkbenchPage" };
+
+	private final List<String> topics = new ArrayList<String>(SAMPLE_COUNT);
+
+	private final List<Map<String, Object>> eventData = new ArrayList<Map<String, Object>>(SAMPLE_COUNT);
+
+	private final List<CapturedEvent> capturedEvents = new ArrayList<CapturedEvent>(SAMPLE_COUNT);
+
+	public EventSamples() {
+		Random random = new Random(SEED);
+		for (int i = 0; i < SAMPLE_COUNT; i++) {
+			String[] attribute = ATTRIBUTES[random.nextInt(ATTRIBUTES.length)];
+			String type = random.nextInt(8) == 0 ? UIEvents.EventTypes.ADD : UIEvents.EventTypes.SET;
+			String topic = UIEvents.buildTopic(attribute[0], attribute[1], type);
+
+			Map<String, Object> data = new HashMap<String, Object>();
+			data.put(UIEvents.EventTags.ELEMENT, new SampleElement(ELEMENT_TYPES[random.nextInt(ELEMENT_TYPES.length)],
+					"org.eclipse.ui.part." + random.nextInt(64)));
+			data.put(UIEvents.EventTags.ATTNAME, attribute[1]);
+			data.put(UIEvents.EventTags.TYPE, type);
+			data.put(UIEvents.EventTags.OLD_VALUE, Integer.valueOf(random.nextInt(1000)));
+			data.put(UIEvents.EventTags.NEW_VALUE, "label " + Integer.toHexString(random.nextInt()));
+			if (UIEvents.EventTypes.ADD.equals(type)) {
+				data.put(UIEvents.EventTags.POSITION, Integer.valueOf(random.nextInt(16)));
+			}
+			topics.add(topic);
+			eventData.add(data);
+			capturedEvents.add(createCapturedEvent(i, topic, data, PUBLISHERS[random.nextInt(PUBLISHERS.length)]));
+		}
+	}
+
+	public String getTopic(int index) {
+		return topics.get(index % SAMPLE_COUNT);
+	}
+
+	public Map<String, Object> getEventData(int index) {
+		return eventData.get(index % SAMPLE_COUNT);
+	}
+
+	public CapturedEvent getCapturedEvent(int index) {
+		return capturedEvents.get(index % SAMPLE_COUNT);
+	}
+
+	/**
+	 * @return filters comparing the item with texts taken from the samples,
+	 *         some of them match the events and some do not
+	 */
+	public List<CapturedEventFilter> createFilters(ItemToFilter itemToFilter, Operator operator, int count) {
+		List<CapturedEventFilter> filters = new ArrayList<CapturedEventFilter>(count);
+		for (int i = 0; i < count; i++) {
+			CapturedEvent event = capturedEvents.get((i * 7) % SAMPLE_COUNT);
+			filters.add(new CapturedEventFilter(itemToFilter, operator, createValue(event, itemToFilter, operator, i)));
+		}
+		return filters;
+	}
+
+	private String createValue(CapturedEvent event, ItemToFilter itemToFilter, Operator operator, int index) {
+		if (ItemToFilter.ParameterNameAndValue.equals(itemToFilter) && operator.isTextComparison()) {
+			// the compared texts must have the name=value format
+			Parameter parameter = getParameter(event, index);
+			return parameter.getName() + "="
+					+ createValue(event, ItemToFilter.ParameterValue, operator, index);
+		}
+		String text = getItemText(event, itemToFilter, index);
+		String part = text.substring(text.length() / 3, Math.max(text.length() / 3 + 1, 2 * text.length() / 3));
+
+		switch (operator) {
+		case MatchesRegex:
+		case NotMatchesRegex:
+			return ".*" + Pattern.quote(part) + ".*";
+		case MatchesGlob:
+		case NotMatchesGlob:
+			return "*" + part + "*";
+		case InRange:
+		case NotInRange:
+			return String.format("%d..%d", index * 10, index * 10 + 100);
+		case InSet:
+		case NotInSet:
+			return text + "," + getItemText(capturedEvents.get((index * 13) % SAMPLE_COUNT), itemToFilter, index);
+		case StartsWith:
+		case NotStartsWith:
+			return text.substring(0, Math.max(1, 2 * text.length() / 3));
+		case Contains:
+		case NotContains:
+			return part;
+		default:
+			return text;
+		}
+	}
+
+	private String getItemText(CapturedEvent event, ItemToFilter itemToFilter, int index) {
+		Parameter parameter = getParameter(event, index);
+		switch (itemToFilter) {
+		case Topic:
+			return event.getTopic();
+		case Publisher:
+			return event.getPublisherClassName();
+		case ChangedElement:
+			return event.getChangedElementClassName();
+		case ParameterName:
+			return parameter.getName();
+		case ParameterNameAndValue:
+			return parameter.getName() + "=" + parameter.getValue();
+		default:
+			return String.valueOf(parameter.getValue());
+		}
+	}
+
+	private Parameter getParameter(CapturedEvent event, int index) {
+		List<Parameter> parameters = event.getParameters();
+		return parameters.get(index % parameters.size());
+	}
+
+	private CapturedEvent createCapturedEvent(int sequence, String topic, Map<String, Object> data, String publisher) {
+		CapturedEvent event = new CapturedEvent();
+		event.setSequence(sequence);
+		event.setTimestamp(sequence);
+		event.setTopic(topic);
+		event.setPublisherClassName(publisher);
+		for (Map.Entry<String, Object> entry : data.entrySet()) {
+			event.addParameter(entry.getKey(), entry.getValue());
+			if (UIEvents.EventTags.ELEMENT.equals(entry.getKey())) {
+				event.setChangedElementClassName(entry.getValue().getClass().getName());
+			}
+		}
+		return event;
+	}
+
+	/**
+	 * Model element stand-in, the benchmarks do not create EMF objects
+	 */
+	private static class SampleElement {
+		private final String type;
+
+		private final String elementId;
+
+		SampleElement(String type, String elementId) {
+			this.type = type;
+			this.elementId = elementId;
+		}
+
+		@Override
+		public String toString() {
+			return ELEMENT_PACKAGE + type + " (elementId: " + elementId + ")";
+		}
+	}
+}
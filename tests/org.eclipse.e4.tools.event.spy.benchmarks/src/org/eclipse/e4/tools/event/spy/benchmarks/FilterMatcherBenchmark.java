@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.tools.event.spy.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.e4.tools.event.spy.internal.core.CapturedEventFilterMatcher;
+import org.eclipse.e4.tools.event.spy.internal.model.ItemToFilter;
+import org.eclipse.e4.tools.event.spy.internal.model.Operator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of the compiled filters applied by the capture consumer to each
+ * captured event, for each item to filter and operator combination
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class FilterMatcherBenchmark {
+	@Param({ "Topic", "ParameterName", "ParameterNameAndValue", "ParameterValue", "Publisher", "ChangedElement" })
+	public ItemToFilter itemToFilter;
+
+	@Param({ "Equals", "NotEquals", "Contains", "NotContains", "StartsWith", "NotStartsWith", "MatchesRegex",
+			"NotMatchesRegex", "MatchesGlob", "NotMatchesGlob", "InRange", "NotInRange", "InSet", "NotInSet" })
+	public Operator operator;
+
+	@Param({ "1", "10", "100" })
+	public int filterCount;
+
+	private EventSamples samples;
+
+	private CapturedEventFilterMatcher.CompiledFilter compiledFilter;
+
+	private int index;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		samples = new EventSamples();
+		compiledFilter = new CapturedEventFilterMatcher().compile(samples.createFilters(itemToFilter, operator,
+				filterCount));
+	}
+
+	@Benchmark
+	public boolean matches() {
+		return compiledFilter.matches(samples.getCapturedEvent(index++));
+	}
+}
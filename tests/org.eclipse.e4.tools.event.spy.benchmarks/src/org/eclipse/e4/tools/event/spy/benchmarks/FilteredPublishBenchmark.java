@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.tools.event.spy.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.e4.tools.event.spy.internal.core.EventMonitor;
+import org.eclipse.e4.tools.event.spy.internal.model.ItemToFilter;
+import org.eclipse.e4.tools.event.spy.internal.model.Operator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Publish throughput of the broker while the spy captures with filters of each
+ * item to filter and operator combination. Only the topic filters are applied
+ * in the publishing thread, the cost of the other ones is measured by the
+ * {@link FilterMatcherBenchmark}. A combination can be selected with
+ * "-p itemToFilter=Topic -p operator=StartsWith".
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class FilteredPublishBenchmark {
+	@Param({ "Topic", "ParameterName", "ParameterNameAndValue", "ParameterValue", "Publisher", "ChangedElement" })
+	public ItemToFilter itemToFilter;
+
+	@Param({ "Equals", "NotEquals", "Contains", "NotContains", "StartsWith", "NotStartsWith", "MatchesRegex",
+			"NotMatchesRegex", "MatchesGlob", "NotMatchesGlob", "InRange", "NotInRange", "InSet", "NotInSet" })
+	public Operator operator;
+
+	@Param({ "1", "10", "100" })
+	public int filterCount;
+
+	private LocalEventBroker eventBroker;
+
+	private EventSamples samples;
+
+	private EventMonitor eventMonitor;
+
+	private int index;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		eventBroker = new LocalEventBroker();
+		samples = new EventSamples();
+		eventMonitor = PublishBenchmark.startMonitor(eventBroker,
+				samples.createFilters(itemToFilter, operator, filterCount));
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		eventMonitor.stop();
+	}
+
+	@Benchmark
+	public boolean publish() {
+		int i = index++;
+		return eventBroker.send(samples.getTopic(i), samples.getEventData(i));
+	}
+}
@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.tools.event.spy.benchmarks;
+
+import java.util.Dictionary;
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.eclipse.e4.core.services.events.IEventBroker;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventConstants;
+import org.osgi.service.event.EventHandler;
+
+/**
+ * Stand-in for the workbench event broker, without event admin nor OSGi
+ * framework. The events are built like the EventBroker does and both sent and
+ * posted events are delivered synchronously in the publishing thread, so the
+ * measures do not depend on the scheduling of an event admin thread.
+ */
+public class LocalEventBroker implements IEventBroker {
+	private static final String ALL_SUB_TOPICS = "*";
+
+	private final CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<Subscription>();
+
+	@Override
+	public boolean send(String topic, Object data) {
+		Event event = constructEvent(topic, data);
+		for (Subscription subscription : subscriptions) {
+			if (subscription.matches(topic)) {
+				subscription.handler.handleEvent(event);
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public boolean post(String topic, Object data) {
+		return send(topic, data);
+	}
+
+	@Override
+	public boolean subscribe(String topic, EventHandler eventHandler) {
+		subscriptions.add(new Subscription(topic, eventHandler));
+		return true;
+	}
+
+	@Override
+	public boolean subscribe(String topic, String filter, EventHandler eventHandler, boolean headers) {
+		return subscribe(topic, eventHandler);
+	}
+
+	@Override
+	public boolean unsubscribe(EventHandler eventHandler) {
+		boolean removed = false;
+		for (Subscription subscription : subscriptions) {
+			if (subscription.handler == eventHandler) {
+				removed |= subscriptions.remove(subscription);
+			}
+		}
+		return removed;
+	}
+
+	@SuppressWarnings("unchecked")
+	private Event constructEvent(String topic, Object data) {
+		if (data instanceof Dictionary<?, ?>) {
+			return new Event(topic, (Dictionary<String, ?>) data);
+		}
+		if (data instanceof Map<?, ?>) {
+			return new Event(topic, (Map<String, ?>) data);
+		}
+		Dictionary<String, Object> properties = new Hashtable<String, Object>(2);
+		properties.put(EventConstants.EVENT_TOPIC, topic);
+		if (data != null) {
+			properties.put(DATA, data);
+		}
+		return new Event(topic, properties);
+	}
+
+	private static class Subscription {
+		private final String topic;
+
+		private final boolean prefix;
+
+		private final EventHandler handler;
+
+		Subscription(String topic, EventHandler handler) {
+			this.prefix = topic.endsWith(ALL_SUB_TOPICS);
+			this.topic = prefix ? topic.substring(0, topic.length() - ALL_SUB_TOPICS.length()) : topic;
+			this.handler = handler;
+		}
+
+		boolean matches(String eventTopic) {
+			return prefix ? eventTopic.startsWith(topic) : eventTopic.equals(topic);
+		}
+	}
+}
@@ -0,0 +1,65 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.tools.event.spy.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.e4.tools.event.spy.internal.util.MultilineFormatter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Formatting of the parameter values displayed in the captured events tree
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class MultilineFormatterBenchmark {
+	private static final int LINE_LENGTH = 70;
+
+	private static final String[] WORDS = { "org.eclipse.e4.ui.model.application.ui.basic.impl.PartImpl@1b2c3d",
+			"(elementId:", "org.eclipse.ui.editorss,", "tags:", "[active,", "Editor],", "contributorURI:",
+			"platform:/plugin/org.eclipse.ui.workbench)", "label", "=", "Problems;" };
+
+	@Param({ "20", "200", "2000", "20000" })
+	public int valueLength;
+
+	private String value;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		Random random = new Random(valueLength);
+		StringBuilder builder = new StringBuilder(valueLength + 64);
+		while (builder.length() < valueLength) {
+			builder.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+		}
+		value = builder.substring(0, valueLength);
+	}
+
+	@Benchmark
+	public String format() {
+		return MultilineFormatter.format(value, LINE_LENGTH);
+	}
+}
@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.tools.event.spy.benchmarks;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.e4.tools.event.spy.internal.core.EventMonitor;
+import org.eclipse.e4.tools.event.spy.internal.model.CapturedEvent;
+import org.eclipse.e4.tools.event.spy.internal.model.CapturedEventFilter;
+import org.eclipse.e4.ui.workbench.UIEvents;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Publish throughput of the broker without the spy and while the spy captures
+ * all the UI events. The allocation rate is reported with "-prof gc".
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class PublishBenchmark {
+	public static final String BASE_TOPIC = UIEvents.UITopicBase + UIEvents.TOPIC_SEP + UIEvents.ALL_SUB_TOPICS;
+
+	public enum Spy {
+		Off, Capture
+	}
+
+	@Param
+	public Spy spy;
+
+	private LocalEventBroker eventBroker;
+
+	private EventSamples samples;
+
+	private EventMonitor eventMonitor;
+
+	private int index;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		eventBroker = new LocalEventBroker();
+		samples = new EventSamples();
+		if (spy == Spy.Capture) {
+			eventMonitor = startMonitor(eventBroker, Collections.<CapturedEventFilter> emptyList());
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		if (eventMonitor != null) {
+			eventMonitor.stop();
+			eventMonitor = null;
+		}
+	}
+
+	@Benchmark
+	public boolean publish() {
+		int i = index++;
+		return eventBroker.send(samples.getTopic(i), samples.getEventData(i));
+	}
+
+	static EventMonitor startMonitor(LocalEventBroker eventBroker, List<CapturedEventFilter> filters) {
+		EventMonitor eventMonitor = new EventMonitor(eventBroker);
+		eventMonitor.setNewEventListener(new EventMonitor.NewEventListener() {
+			@Override
+			public void newEvent(CapturedEvent event) {
+				// the captured events are dropped, only the capture is measured
+			}
+		});
+		eventMonitor.start(BASE_TOPIC, filters);
+		return eventMonitor;
+	}
+}
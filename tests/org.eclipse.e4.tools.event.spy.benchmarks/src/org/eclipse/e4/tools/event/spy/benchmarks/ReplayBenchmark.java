@@ -0,0 +1,114 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.tools.event.spy.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.e4.tools.event.spy.internal.core.EventMonitor;
+import org.eclipse.e4.tools.event.spy.internal.core.EventReplayer;
+import org.eclipse.e4.tools.event.spy.internal.core.ReplayResult;
+import org.eclipse.e4.tools.event.spy.internal.model.CapturedEvent;
+import org.eclipse.e4.tools.event.spy.internal.model.CapturedEventFilter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventHandler;
+
+/**
+ * Replays a capture of the sample events to a broker with a subscriber, as fast
+ * as possible. The capture is taken by the spy in the setup, keeping the
+ * references to the parameter values or not. Without the references, all the
+ * events are degraded and the replay measures skipping them.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class ReplayBenchmark {
+	public enum References {
+		Kept, Dropped
+	}
+
+	@Param
+	public References references;
+
+	private LocalEventBroker eventBroker;
+
+	private EventSamples samples;
+
+	private EventReplayer replayer;
+
+	private List<CapturedEvent> capture;
+
+	private final EventHandler subscriber = new EventHandler() {
+		@Override
+		public void handleEvent(Event event) {
+			handledCount++;
+		}
+	};
+
+	private int handledCount;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		eventBroker = new LocalEventBroker();
+		samples = new EventSamples();
+		capture = capture(eventBroker, samples, references == References.Kept);
+		eventBroker.subscribe(PublishBenchmark.BASE_TOPIC, subscriber);
+		replayer = new EventReplayer(eventBroker);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		eventBroker.unsubscribe(subscriber);
+	}
+
+	@Benchmark
+	public ReplayResult replay() {
+		return replayer.replay(capture);
+	}
+
+	private static List<CapturedEvent> capture(LocalEventBroker eventBroker, EventSamples samples,
+			boolean keepingReferences) {
+		final List<CapturedEvent> capture = Collections.synchronizedList(new ArrayList<CapturedEvent>());
+		EventMonitor eventMonitor = new EventMonitor(eventBroker);
+		eventMonitor.setKeepingParameterReferences(keepingReferences);
+		eventMonitor.setNewEventListener(new EventMonitor.NewEventListener() {
+			@Override
+			public void newEvent(CapturedEvent event) {
+				capture.add(event);
+			}
+		});
+		eventMonitor.start(PublishBenchmark.BASE_TOPIC, Collections.<CapturedEventFilter> emptyList());
+		for (int i = 0; i < EventSamples.SAMPLE_COUNT; i++) {
+			eventBroker.send(samples.getTopic(i), samples.getEventData(i));
+		}
+		// waits until the published events have been captured
+		eventMonitor.stop();
+		return new ArrayList<CapturedEvent>(capture);
+	}
+}